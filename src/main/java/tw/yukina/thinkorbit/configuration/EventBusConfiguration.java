@@ -0,0 +1,415 @@
+package tw.yukina.thinkorbit.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import tw.yukina.thinkorbit.service.event.DeliveryMode;
+import tw.yukina.thinkorbit.service.event.ReplayLevel;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.store.partition.PartitionPeriod;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Setter
+@Getter
+@Configuration
+@ConfigurationProperties(prefix = "event-bus")
+public class EventBusConfiguration {
+    private Store store = new Store();
+    private Async async = new Async();
+    private GroupCommit groupCommit = new GroupCommit();
+    private Dispatch dispatch = new Dispatch();
+    private HotTail hotTail = new HotTail();
+    private Replay replay = new Replay();
+    private Snapshot snapshot = new Snapshot();
+    private Retention retention = new Retention();
+    private Partitioning partitioning = new Partitioning();
+    private Trace trace = new Trace();
+    private Idempotency idempotency = new Idempotency();
+    private Compression compression = new Compression();
+    private Cluster cluster = new Cluster();
+    private Metrics metrics = new Metrics();
+
+    @Setter
+    @Getter
+    public static class Store {
+        /**
+         * Backend of the event log.
+         */
+        private StoreType type = StoreType.JDBC;
+
+        private Journal journal = new Journal();
+    }
+
+    public enum StoreType {
+        /**
+         * Events are stored in the event_entity table of the relational database.
+         */
+        JDBC,
+
+        /**
+         * Events are stored in memory-mapped segment files on local disk.
+         */
+        JOURNAL
+    }
+
+    @Setter
+    @Getter
+    public static class Journal {
+        /**
+         * Directory holding the journal segment files.
+         */
+        private Path directory = Path.of("data", "journal");
+
+        /**
+         * Size of each segment file. A new segment is started when the current one is full.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Number of records between two entries of a segment's sparse index.
+         */
+        private int indexInterval = 64;
+
+        /**
+         * Whether every append is forced to disk before it completes. When disabled, appends
+         * survive a process crash but not necessarily a power loss.
+         */
+        private boolean forceOnAppend = false;
+    }
+
+    @Setter
+    @Getter
+    public static class Async {
+        /**
+         * Whether publishAsync hands events to the ring buffer pipeline.
+         * When disabled, publishAsync falls back to a synchronous publish.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Number of slots in the ring buffer, rounded up to a power of two.
+         */
+        private int ringBufferSize = 1024;
+    }
+
+    @Setter
+    @Getter
+    public static class Dispatch {
+        /**
+         * Delivery mode of subscriptions that do not choose one. SYNC runs listeners on the
+         * publishing thread; MAILBOX gives every subscription its own queue and virtual thread.
+         */
+        private DeliveryMode defaultDelivery = DeliveryMode.SYNC;
+
+        /**
+         * Capacity of subscriptions' mailboxes that do not set one.
+         */
+        private int mailboxCapacity = 1024;
+
+        /**
+         * Number of events a stream subscriber may fall behind before the oldest are dropped.
+         */
+        private int streamBufferSize = 256;
+    }
+
+    @Setter
+    @Getter
+    public static class GroupCommit {
+        /**
+         * Whether events are written through the group-commit writer instead of one
+         * EventRepository.save transaction per event.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How long a batch keeps waiting for more events once nothing else is queued. Zero
+         * flushes as soon as the queue is drained, so a lone publish is never delayed; events
+         * arriving during a flush still form the next batch.
+         */
+        private Duration window = Duration.ZERO;
+
+        /**
+         * Maximum number of events written in one JDBC batch.
+         */
+        private int maxBatchSize = 256;
+    }
+
+    @Setter
+    @Getter
+    public static class HotTail {
+        /**
+         * Maximum number of recent events kept in memory for replay.
+         */
+        private int maxEvents = 10_000;
+
+        /**
+         * Upper bound on the estimated heap size of the cached events.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(32);
+    }
+
+    @Setter
+    @Getter
+    public static class Replay {
+        /**
+         * Number of events read per keyset page when replaying from the store.
+         */
+        private int pageSize = 1000;
+
+        /**
+         * Number of events each parallel replay worker may have queued before the reader waits.
+         */
+        private int workerQueueCapacity = 1024;
+    }
+
+    @Setter
+    @Getter
+    public static class Snapshot {
+        /**
+         * Whether participants are snapshotted and restored from their latest snapshot. Without
+         * snapshots, and always while the cluster is enabled, they replay every event at startup.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How often every snapshot participant with new events is snapshotted.
+         */
+        private Duration interval = Duration.ofMinutes(5);
+
+        /**
+         * Number of snapshots kept per participant.
+         */
+        private int retain = 3;
+
+        /**
+         * How participants are restored at startup: SNAPSHOT_ONLY restores the latest snapshot
+         * without replaying, any other level also replays the events after it.
+         */
+        private ReplayLevel startupLevel = ReplayLevel.SEMANTIC_REPLAY;
+    }
+
+    @Setter
+    @Getter
+    public static class Retention {
+        private boolean enabled = true;
+
+        /**
+         * Pause between two retention runs.
+         */
+        private Duration interval = Duration.ofMinutes(1);
+
+        /**
+         * Number of events deleted, and rolled up, per transaction.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Retention policies. An event follows the most specific policy matching it, by type and
+         * tier before type alone before tier alone; events no policy matches are kept forever.
+         */
+        private List<RetentionPolicy> policies = new ArrayList<>();
+    }
+
+    @Setter
+    @Getter
+    public static class RetentionPolicy {
+        /**
+         * Event type the policy applies to, or null for every type.
+         */
+        private String type;
+
+        /**
+         * Semantic tier the policy applies to, or null for every tier.
+         */
+        private SemanticTier tier;
+
+        /**
+         * Age after which events are deleted, or null to keep them forever.
+         */
+        private Duration maxAge;
+
+        /**
+         * Whether deleted events are first counted into per-type, per-source rollups.
+         */
+        private boolean rollup = false;
+
+        /**
+         * Width of the time buckets of the rollups.
+         */
+        private Duration rollupInterval = Duration.ofDays(1);
+    }
+
+    @Setter
+    @Getter
+    public static class Partitioning {
+        /**
+         * Whether event_entity is range-partitioned by occurred_at. Enabling it converts an existing
+         * table in place: the table becomes the default partition and new events go to period partitions.
+         */
+        private boolean enabled = false;
+
+        private PartitionPeriod period = PartitionPeriod.DAILY;
+
+        /**
+         * Number of future periods whose partitions are created ahead of time.
+         */
+        private int ahead = 3;
+
+        /**
+         * How often missing partitions are created and expired ones dropped.
+         */
+        private Duration checkInterval = Duration.ofHours(1);
+
+        /**
+         * Age after which a whole partition is dropped, or null to keep partitions forever.
+         * Dropping ignores retention policies, including those keeping events forever.
+         */
+        private Duration dropAfter;
+    }
+
+    @Setter
+    @Getter
+    public static class Trace {
+        /**
+         * Maximum number of recent traces kept in memory for trace and cause queries.
+         */
+        private int maxTraces = 10_000;
+
+        /**
+         * Traces growing beyond this many events are no longer kept in memory and are read from the store.
+         */
+        private int maxEventsPerTrace = 1_000;
+
+        /**
+         * Upper bound on the estimated heap size of the events kept for traces.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(32);
+    }
+
+    @Setter
+    @Getter
+    public static class Idempotency {
+        /**
+         * Whether events published with an idempotency key already used are ignored.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Number of keys each of the two Bloom filter generations is sized for.
+         */
+        private int expectedKeys = 1_000_000;
+
+        private double falsePositiveRate = 0.01;
+
+        /**
+         * Number of recently published keys remembered exactly. Only the keys are kept; a
+         * duplicate that needs the original event loads it from the store.
+         */
+        private int recentKeys = 100_000;
+
+        /**
+         * Age of the stored events whose keys are loaded into the Bloom filter at startup.
+         */
+        private Duration preloadWindow = Duration.ofDays(1);
+    }
+
+    @Setter
+    @Getter
+    public static class Compression {
+        /**
+         * Whether payloads are compressed with dictionaries trained per event type.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Number of payloads of a type sampled to train its dictionary.
+         */
+        private int sampleSize = 500;
+
+        /**
+         * Maximum dictionary size. Deflate only looks back 32 KB, so larger dictionaries are truncated.
+         */
+        private DataSize maxDictionarySize = DataSize.ofKilobytes(16);
+
+        /**
+         * Age after which a type's dictionary is retrained on fresh samples, as a new version.
+         */
+        private Duration retrainAfter = Duration.ofDays(7);
+    }
+
+    @Setter
+    @Getter
+    public static class Cluster {
+        /**
+         * Whether events are exchanged with other nodes sharing the event store.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Name of this node, unique within the cluster. Random unless set.
+         */
+        private String nodeId = UUID.randomUUID().toString();
+
+        /**
+         * Address the node accepts peer connections on.
+         */
+        private String host = "0.0.0.0";
+
+        /**
+         * Port the node accepts peer connections on, 0 for any free port.
+         */
+        private int port = 7400;
+
+        /**
+         * Addresses of the other nodes, as {@code host:port}.
+         */
+        private List<String> peers = new ArrayList<>();
+
+        /**
+         * Maximum number of events sent to a peer in one batch.
+         */
+        private int maxBatchSize = 256;
+
+        /**
+         * How long a batch waits for more events before it is sent.
+         */
+        private Duration batchWindow = Duration.ofMillis(2);
+
+        /**
+         * Number of batches sent to a peer before it must acknowledge one.
+         */
+        private int maxUnackedBatches = 8;
+
+        /**
+         * Events queued for a peer before the connection is dropped; it catches up once reconnected.
+         */
+        private int sendQueueCapacity = 65_536;
+
+        /**
+         * Delay before reconnecting to a peer that could not be reached.
+         */
+        private Duration reconnectDelay = Duration.ofSeconds(1);
+    }
+
+    @Setter
+    @Getter
+    public static class Metrics {
+        /**
+         * Number of distinct event types tagging event bus meters. Meters for further types are not
+         * registered, so an unbounded set of types cannot flood the registry with histograms.
+         */
+        private int maxTypeTags = 100;
+
+        /**
+         * Number of distinct event sources tagging event bus meters, capped like types.
+         */
+        private int maxSourceTags = 100;
+    }
+}
@@ -0,0 +1,133 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.entity.EventContext;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Listener of a subscription that replays history before going live.
+ * <p>
+ * The live subscription is registered before the replay starts, and buffers what it receives
+ * until the replay is done. Every event is therefore either replayed, buffered, or both; the
+ * buffer is then delivered in id order, skipping the events the replay already delivered, and
+ * the subscription switches to delivering live events directly.
+ * <p>
+ * An event can only be both replayed and delivered live if it was still being dispatched when the
+ * subscription was registered, which means it is above the dispatched watermark at that moment.
+ * Only replayed ids above that mark are remembered. Such an event may reach the subscription after
+ * it went live, so they are kept until the watermark passes the highest of them.
+ */
+class CatchUpSubscription implements EventListener {
+
+    private final EventFilter filter;
+    private final EventListener listener;
+    private final long duplicateMark;
+    private final LongSupplier dispatchedWatermark;
+
+    private final Object lock = new Object();
+    private List<EventEntity> buffer = new ArrayList<>();
+    private boolean live = false;
+
+    private long[] replayedIds = new long[64];
+    private int replayedCount;
+
+    /**
+     * @param duplicateMark       only events with a higher id can be delivered by both the replay and
+     *                            the live subscription
+     * @param dispatchedWatermark the id at or below which every event has been dispatched, or null
+     *                            if it is unknown and replayed ids are forgotten once the buffer is delivered
+     */
+    CatchUpSubscription(EventFilter filter, EventListener listener, long duplicateMark,
+                        @Nullable LongSupplier dispatchedWatermark) {
+        this.filter = filter;
+        this.listener = listener;
+        this.duplicateMark = duplicateMark;
+        this.dispatchedWatermark = dispatchedWatermark;
+    }
+
+    /**
+     * Delivers one replayed event. Replayed events arrive in ascending id order.
+     */
+    void onReplayed(EventContext context, EventEntity event) {
+        if (!filter.matches(event)) {
+            return;
+        }
+
+        listener.onEvent(context, event);
+
+        if (event.getId() > duplicateMark) {
+            if (replayedCount == replayedIds.length) {
+                replayedIds = Arrays.copyOf(replayedIds, replayedCount * 2);
+            }
+            replayedIds[replayedCount++] = event.getId();
+        }
+    }
+
+    /**
+     * Delivers the events buffered during the replay, then switches to live delivery.
+     */
+    void goLive() {
+        while (true) {
+            List<EventEntity> pending;
+            synchronized (lock) {
+                if (buffer.isEmpty()) {
+                    live = true;
+                    buffer = null;
+                    if (dispatchedWatermark == null) {
+                        replayedIds = null;
+                    } else {
+                        forgetDispatched();
+                    }
+                    return;
+                }
+                pending = buffer;
+                buffer = new ArrayList<>();
+            }
+
+            pending.sort(Comparator.comparing(EventEntity::getId));
+            for (EventEntity event : pending) {
+                if (!wasReplayed(event.getId())) {
+                    listener.onEvent(EventContext.LIVE, event);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onEvent(EventContext context, EventEntity event) {
+        synchronized (lock) {
+            if (!live) {
+                buffer.add(event);
+                return;
+            }
+            if (replayedIds != null) {
+                // Still being dispatched when the replay read it
+                boolean replayed = wasReplayed(event.getId());
+                forgetDispatched();
+                if (replayed) {
+                    return;
+                }
+            }
+        }
+        listener.onEvent(context, event);
+    }
+
+    /**
+     * Drops the replayed ids once none of them can still be on its way live.
+     */
+    private void forgetDispatched() {
+        if (replayedCount == 0 || dispatchedWatermark.getAsLong() >= replayedIds[replayedCount - 1]) {
+            replayedIds = null;
+        }
+    }
+
+    private boolean wasReplayed(long id) {
+        return id > duplicateMark && Arrays.binarySearch(replayedIds, 0, replayedCount, id) >= 0;
+    }
+}
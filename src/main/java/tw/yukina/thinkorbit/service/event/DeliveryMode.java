@@ -0,0 +1,22 @@
+package tw.yukina.thinkorbit.service.event;
+
+/**
+ * How events reach a subscription's listener.
+ */
+public enum DeliveryMode {
+    /**
+     * Use the bus-wide default, {@code event-bus.dispatch.default-delivery}.
+     */
+    DEFAULT,
+
+    /**
+     * The listener runs on the publishing thread before publish returns.
+     */
+    SYNC,
+
+    /**
+     * Events are queued in the subscription's own bounded mailbox and delivered on its own
+     * virtual thread, so a slow listener only delays itself.
+     */
+    MAILBOX
+}
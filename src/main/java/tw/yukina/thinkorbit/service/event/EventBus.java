@@ -1,23 +1,86 @@
 package tw.yukina.thinkorbit.service.event;
 
 
+import reactor.core.publisher.Flux;
 import tw.yukina.thinkorbit.service.event.entity.EventEntity;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface EventBus {
     /**
-     * Publishes an event to the event bus.
+     * Publishes an event to the event bus. An event whose idempotency key was already published
+     * is ignored, before it is persisted or dispatched.
+     * <p>
+     * Concurrent publishes are persisted concurrently. Those of one source are dispatched one at
+     * a time, in the order they were called, while different sources are dispatched concurrently.
+     * Each dispatched event is numbered within its source in that order, and globally in the order
+     * dispatches began; see {@link SequenceTracker} for detecting missed events. An event published
+     * by a listener during a dispatch is persisted before this returns, but dispatched only after
+     * the current dispatch, breadth-first with the other events published by listeners.
+     * <p>
+     * Inside a transaction, a store that writes in the caller's transaction persists the event
+     * there, and the event is only dispatched once that commits. Until then no listener sees it and
+     * only replays reading through that transaction find it; if the transaction rolls back, it is
+     * as if the event had never been published, and its idempotency key can be used again.
      *
      * @param event the event to publish
      */
     void publish(EventEntity event);
 
+    /**
+     * Publishes an event without waiting for persistence or delivery.
+     * The returned future completes with the persisted event once every matching
+     * listener has been notified, or exceptionally if persisting or dispatching failed.
+     * For an event whose idempotency key was already published, it completes with the event
+     * first published with the key instead.
+     *
+     * @param event the event to publish
+     * @return a future completed after the event has been persisted and dispatched
+     */
+    CompletableFuture<EventEntity> publishAsync(EventEntity event);
+
     /**
      * Subscribes a listener to events matching the specified filter.
      *
      * @param filter   the filter to match events
      * @param listener the listener to notify when events match
      */
-    void subscribe(EventFilter filter, EventListener listener);
+    default void subscribe(EventFilter filter, EventListener listener) {
+        subscribe(filter, listener, SubscriptionOptions.defaults());
+    }
+
+    /**
+     * Subscribes a listener to events matching the specified filter, with the given delivery options.
+     * The listeners of one event are not necessarily called in the order they subscribed.
+     *
+     * @param filter   the filter to match events
+     * @param listener the listener to notify when events match
+     * @param options  how events are delivered to the listener
+     */
+    void subscribe(EventFilter filter, EventListener listener, SubscriptionOptions options);
+
+    /**
+     * Streams live events matching the filter. The subscription is registered when the flux is
+     * subscribed to and removed when it is cancelled. Events are buffered up to
+     * {@code event-bus.dispatch.stream-buffer-size} while the subscriber has no demand; beyond
+     * that the oldest are dropped, so a slow subscriber never holds back publishers.
+     *
+     * @param filter the filter to match events
+     * @return a flux of the matching events
+     */
+    Flux<EventEntity> stream(EventFilter filter);
+
+    /**
+     * Replays the history of a range to a listener, then keeps delivering live events to it.
+     * Events published while the history is replayed are held back and delivered after it,
+     * so the listener sees every matching event exactly once and in id order up to the switch
+     * to live delivery. Returns once the listener is live.
+     *
+     * @param range    where the history starts; it must not have an upper bound
+     * @param filter   the filter to match events, both replayed and live
+     * @param listener the listener to notify
+     */
+    void subscribeFrom(ReplayRange range, EventFilter filter, EventListener listener);
 
     /**
      * Replays events within a specified range to a listener.
@@ -25,7 +88,64 @@ public interface EventBus {
      * @param range    the range of events to replay
      * @param listener the listener to receive the replayed events
      */
-    void replay(ReplayRange range, EventListener listener);
+    default void replay(ReplayRange range, EventListener listener) {
+        replay(range, EventCriteria.any(), listener);
+    }
+
+    /**
+     * Replays the events within a range that match a filter to a listener. The criteria of an
+     * {@link EventCriteria} filter are applied by the event store, so rejected events are not
+     * read; any other filter is called on every event in the range.
+     *
+     * @param range    the range of events to replay
+     * @param filter   the filter to match events
+     * @param listener the listener to receive the replayed events
+     */
+    void replay(ReplayRange range, EventFilter filter, EventListener listener);
+
+    /**
+     * Replays events within a specified range on several workers in the background.
+     * Events are partitioned by the given key; events sharing a key are delivered in id order
+     * by one worker, while different keys are delivered concurrently. The listener must therefore
+     * be thread-safe across keys.
+     *
+     * @param range        the range of events to replay
+     * @param partitionKey the key that decides which events must stay ordered
+     * @param parallelism  the number of workers
+     * @param listener     the listener to receive the replayed events
+     * @return a handle reporting progress and completion
+     */
+    default ReplayHandle replayParallel(ReplayRange range, ReplayPartitionKey partitionKey, int parallelism,
+                                        EventListener listener) {
+        return replayParallel(range, EventCriteria.any(), partitionKey, parallelism, listener);
+    }
+
+    /**
+     * Replays the events within a range that match a filter on several workers in the background,
+     * as {@link #replayParallel(ReplayRange, ReplayPartitionKey, int, EventListener)} does.
+     * The filter is applied as by {@link #replay(ReplayRange, EventFilter, EventListener)}.
+     */
+    ReplayHandle replayParallel(ReplayRange range, EventFilter filter, ReplayPartitionKey partitionKey, int parallelism,
+                                EventListener listener);
+
+    /**
+     * Delivers an event persisted elsewhere, such as by another node sharing the event store,
+     * to the matching local subscribers. The event is neither stored again nor checked for its
+     * idempotency key.
+     *
+     * @param event the persisted event
+     */
+    void dispatchRemote(EventEntity event);
+
+    /**
+     * Returns an event id at or below which every event published through this bus has been
+     * dispatched to its synchronous listeners. Ids are not assigned in dispatch order, so the
+     * highest dispatched id is not such a bound while publishes are in flight. Events dispatched
+     * through {@link #dispatchRemote} and deliveries to mailboxes are not covered.
+     *
+     * @return the watermark, or 0 if nothing has been published yet
+     */
+    long dispatchedWatermark();
 
     /**
      * Closes the event bus and releases resources.
@@ -0,0 +1,164 @@
+package tw.yukina.thinkorbit.service.event;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Declarative event filter: events must have one of the types, one of the sources and one of
+ * the tiers, the trace id, and satisfy every payload condition. An empty set or a null trace id
+ * accepts any value.
+ * <p>
+ * Unlike an opaque {@link EventFilter}, criteria can be evaluated by the event store, so a
+ * replay only reads the events it delivers. Payloads are stored encoded, so payload conditions
+ * are always checked in memory, after the other criteria narrowed the events read. Criteria with
+ * one type, at most one source and no other conditions are also indexed for live dispatch.
+ */
+@Getter
+@Builder
+public final class EventCriteria implements IndexedEventFilter {
+
+    private static final EventCriteria ANY = EventCriteria.builder().build();
+
+    @Singular
+    private final Set<String> types;
+
+    @Singular
+    private final Set<String> sources;
+
+    @Singular
+    private final Set<SemanticTier> tiers;
+
+    @Nullable
+    private final String traceId;
+
+    @Singular
+    private final List<PayloadCondition> payloadConditions;
+
+    /**
+     * @return criteria accepting every event
+     */
+    public static EventCriteria any() {
+        return ANY;
+    }
+
+    public static EventCriteria of(OnEvent annotation) {
+        EventCriteriaBuilder builder = EventCriteria.builder()
+                .type(annotation.type())
+                .tiers(List.of(annotation.tier()));
+        if (!annotation.source().isEmpty()) {
+            builder.source(annotation.source());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean matches(EventEntity event) {
+        if (!types.isEmpty() && (event.getType() == null || !types.contains(event.getType()))) {
+            return false;
+        }
+        if (!sources.isEmpty() && (event.getSource() == null || !sources.contains(event.getSource()))) {
+            return false;
+        }
+        if (!tiers.isEmpty() && (event.getSemanticTier() == null || !tiers.contains(event.getSemanticTier()))) {
+            return false;
+        }
+        if (traceId != null && !traceId.equals(event.traceId())) {
+            return false;
+        }
+
+        // Checked last, since reading the payload decodes it
+        if (!payloadConditions.isEmpty()) {
+            Map<String, Object> payload = event.getPayload();
+            for (PayloadCondition condition : payloadConditions) {
+                if (!condition.matches(payload)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isIndexable() {
+        return types.size() == 1 && sources.size() <= 1 && traceId == null && payloadConditions.isEmpty();
+    }
+
+    @Override
+    public String getType() {
+        return types.size() == 1 ? types.iterator().next() : null;
+    }
+
+    @Override
+    public String getSource() {
+        return sources.size() == 1 ? sources.iterator().next() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "EventCriteria{types=" + types + ", sources=" + sources + ", tiers=" + tiers
+                + ", traceId=" + traceId + ", payload=" + payloadConditions + "}";
+    }
+
+    public static class EventCriteriaBuilder {
+
+        /**
+         * Requires the payload to have the key.
+         */
+        public EventCriteriaBuilder payloadPresent(String key) {
+            return payloadCondition(new PayloadCondition(key, PayloadCondition.Operator.PRESENT, null));
+        }
+
+        /**
+         * Requires the payload value of the key to equal the given value. Numbers are compared
+         * by value, whatever their type.
+         */
+        public EventCriteriaBuilder payloadEquals(String key, Object value) {
+            return payloadCondition(new PayloadCondition(key, PayloadCondition.Operator.EQUALS, value));
+        }
+    }
+
+    /**
+     * Condition on a top-level payload key.
+     */
+    public record PayloadCondition(String key, Operator operator, @Nullable Object value) {
+
+        public enum Operator {
+            PRESENT,
+            EQUALS
+        }
+
+        boolean matches(@Nullable Map<String, Object> payload) {
+            if (payload == null || !payload.containsKey(key)) {
+                return false;
+            }
+
+            return switch (operator) {
+                case PRESENT -> true;
+                case EQUALS -> valueEquals(payload.get(key), value);
+            };
+        }
+
+        private static boolean valueEquals(@Nullable Object actual, @Nullable Object expected) {
+            if (actual instanceof Number a && expected instanceof Number b) {
+                try {
+                    return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+                } catch (NumberFormatException e) {
+                    // NaN and infinities have no decimal form
+                    return a.equals(b);
+                }
+            }
+            return Objects.equals(actual, expected);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams live events to HTTP clients as server-sent events.
+ * <p>
+ * Each connection is a {@link EventBus#stream(EventFilter)} subscription, so a client that
+ * reads slowly only loses its own oldest events and never holds back the bus.
+ */
+@RestController
+@RequestMapping("/api/events")
+public class EventStreamController {
+
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
+    private final EventBus eventBus;
+
+    public EventStreamController(EventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * Stream events, optionally filtered by type, source and tiers
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<StreamedEvent>> stream(
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String source,
+            @RequestParam(name = "tier", required = false) Set<SemanticTier> tiers) {
+
+        EventCriteria.EventCriteriaBuilder criteria = EventCriteria.builder();
+        if (type != null) {
+            criteria.type(type);
+        }
+        if (source != null) {
+            criteria.source(source);
+        }
+        if (tiers != null) {
+            criteria.tiers(tiers);
+        }
+
+        Flux<ServerSentEvent<StreamedEvent>> events = eventBus.stream(criteria.build())
+                .map(event -> ServerSentEvent.builder(StreamedEvent.of(event))
+                        .id(String.valueOf(event.getId()))
+                        .event(event.getType())
+                        .build());
+
+        // Comments keep idle connections from being closed by proxies
+        Flux<ServerSentEvent<StreamedEvent>> heartbeats = Flux.interval(HEARTBEAT_INTERVAL)
+                .map(tick -> ServerSentEvent.<StreamedEvent>builder().comment("heartbeat").build());
+
+        return events.mergeWith(heartbeats);
+    }
+
+    /**
+     * Event as sent to stream clients.
+     */
+    public record StreamedEvent(Long id, Instant occurredAt, String type, String source, SemanticTier semanticTier,
+                                String traceId, String causeId, Map<String, Object> payload) {
+
+        static StreamedEvent of(EventEntity event) {
+            return new StreamedEvent(event.getId(), event.getOccurredAt(), event.getType(), event.getSource(),
+                    event.getSemanticTier(), event.traceId(), event.causeId(),
+                    event.getPayload());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.dispatch.Mailbox;
+
+/**
+ * @param name    name of the subscription, the listener tag of its metrics
+ * @param mailbox the subscription's mailbox, or null if events are delivered synchronously
+ */
+record EventSubscription(String name, EventFilter filter, EventListener listener, @Nullable Mailbox mailbox) {
+}
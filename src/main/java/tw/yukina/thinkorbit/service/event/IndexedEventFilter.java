@@ -0,0 +1,39 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.util.Set;
+
+/**
+ * An {@link EventFilter} whose criteria are exposed so the event bus can index its subscription.
+ * <p>
+ * {@link #matches} must accept exactly the events described by the type, source and tiers,
+ * since indexed subscriptions are delivered without calling it. A filter whose criteria go
+ * beyond those reports itself as not {@link #isIndexable() indexable} and is matched by calling
+ * {@link #matches} instead.
+ */
+public interface IndexedEventFilter extends EventFilter {
+    /**
+     * @return the event type this filter accepts
+     */
+    String getType();
+
+    /**
+     * @return the source this filter accepts, or null to accept any source
+     */
+    @Nullable
+    String getSource();
+
+    /**
+     * @return the semantic tiers this filter accepts, or an empty set to accept any tier
+     */
+    Set<SemanticTier> getTiers();
+
+    /**
+     * @return whether the type, source and tiers fully describe this filter
+     */
+    default boolean isIndexable() {
+        return true;
+    }
+}
@@ -1,22 +1,32 @@
 package tw.yukina.thinkorbit.service.event;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import tw.yukina.thinkorbit.service.event.entity.EventContext;
 import tw.yukina.thinkorbit.service.event.entity.EventEntity;
-import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.lang.reflect.Modifier;
 
+@Slf4j
 @Component
+// After SnapshotService, so @OnEvent listeners only see participants once they are restored
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
 public class ListenerScanner implements ApplicationRunner {
 
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, EventContext.class, EventEntity.class);
+    private static final int CONTEXT_ARGUMENT = 0;
+    private static final int EVENT_ARGUMENT = 1;
+
     private final EventBus eventBus;
     private final ApplicationContext applicationContext;
     private boolean hasScanned = false;
@@ -62,62 +72,107 @@ public class ListenerScanner implements ApplicationRunner {
         EventFilter filter = createEventFilter(onEventAnnotation);
 
         EventListener listener = createEventListener(bean, method);
+        if (listener == null) {
+            log.warn("Event listener method {}.{} has invalid signature. " +
+                            "Expected any of: (), (EventEntity), (EventContext), (EventContext, EventEntity), (EventEntity, EventContext), " +
+                            "where EventView may stand for EventEntity",
+                    method.getDeclaringClass().getSimpleName(), method.getName());
+            return;
+        }
 
-        eventBus.subscribe(filter, listener);
+        String name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        eventBus.subscribe(filter, listener, SubscriptionOptions.of(onEventAnnotation, name));
     }
 
     private EventFilter createEventFilter(OnEvent onEventAnnotation) {
-        return event -> {
-            if (!onEventAnnotation.type().equals(event.getType())) {
-                return false;
-            }
-
-            String sourceFilter = onEventAnnotation.source();
-            if (!sourceFilter.isEmpty() && !sourceFilter.equals(event.getSource())) {
-                return false;
-            }
-
-            SemanticTier[] tierFilters = onEventAnnotation.tier();
-            if (tierFilters.length > 0) {
-                Set<SemanticTier> allowedTiers = new HashSet<>(Arrays.asList(tierFilters));
-                return allowedTiers.contains(event.getSemanticTier());
-            }
-
-            return true;
-        };
+        return EventCriteria.of(onEventAnnotation);
     }
 
     private EventListener createEventListener(Object bean, Method method) {
+        MethodHandle invoker = createInvoker(bean, method);
+        if (invoker == null) {
+            return null;
+        }
+
         return (context, event) -> {
             try {
-                Class<?>[] paramTypes = method.getParameterTypes();
-                method.setAccessible(true);
-
-                // No parameters
-                if (paramTypes.length == 0) {
-                    method.invoke(bean);
-
-                    // One parameter
-                } else if (paramTypes.length == 1) {
-                    if (paramTypes[0].isAssignableFrom(EventEntity.class)) {
-                        method.invoke(bean, event);
-                    } else if (paramTypes[0].isAssignableFrom(EventContext.class)) {
-                        method.invoke(bean, context);
-                    }
-
-                    // Two parameters
-                } else if (paramTypes.length == 2) {
-                    if (paramTypes[0].isAssignableFrom(EventContext.class)
-                            && paramTypes[1].isAssignableFrom(EventEntity.class)) {
-                        method.invoke(bean, context, event);
-                    } else if (paramTypes[0].isAssignableFrom(EventEntity.class)
-                            && paramTypes[1].isAssignableFrom(EventContext.class)) {
-                        method.invoke(bean, event, context);
-                    }
-                }
-            } catch (Exception e) {
+                invoker.invokeExact(context, event);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
                 throw new RuntimeException("Failed to invoke event listener method: " + method.getName(), e);
             }
         };
     }
+
+    /**
+     * Resolves the argument binding of a listener method once and compiles it into a method handle
+     * of type {@code (EventContext, EventEntity) -> void}, bound to the bean.
+     *
+     * @return the invoker, or null if the method signature is not supported
+     */
+    private MethodHandle createInvoker(Object bean, Method method) {
+        Class<?>[] paramTypes = method.getParameterTypes();
+        int[] argumentOrder = resolveArgumentOrder(paramTypes);
+        if (argumentOrder == null) {
+            return null;
+        }
+
+        MethodHandle handle;
+        try {
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalStateException("Cannot access event listener method: " + method.getName(), e);
+        }
+
+        if (!Modifier.isStatic(method.getModifiers())) {
+            handle = handle.bindTo(bean);
+        }
+
+        // Narrow each parameter to the exact argument type it is bound to, and drop the return value
+        Class<?>[] boundTypes = new Class<?>[paramTypes.length];
+        for (int i = 0; i < paramTypes.length; i++) {
+            boundTypes[i] = INVOKER_TYPE.parameterType(argumentOrder[i]);
+        }
+        handle = handle.asType(MethodType.methodType(void.class, boundTypes));
+
+        return MethodHandles.permuteArguments(handle, INVOKER_TYPE, argumentOrder);
+    }
+
+    /**
+     * Maps each listener parameter to the invoker argument it receives. A parameter may be of any
+     * supertype of its argument, {@code Object} included; a single one is bound to the event if it
+     * can take it, and a pair of parameters that could take either is bound to the context first.
+     *
+     * @return the argument indexes, or null if the signature is not supported
+     */
+    private int[] resolveArgumentOrder(Class<?>[] paramTypes) {
+        // No parameters
+        if (paramTypes.length == 0) {
+            return new int[0];
+        }
+
+        // One parameter
+        if (paramTypes.length == 1) {
+            if (paramTypes[0].isAssignableFrom(EventEntity.class)) {
+                return new int[]{EVENT_ARGUMENT};
+            } else if (paramTypes[0].isAssignableFrom(EventContext.class)) {
+                return new int[]{CONTEXT_ARGUMENT};
+            }
+        }
+
+        // Two parameters
+        if (paramTypes.length == 2) {
+            if (paramTypes[0].isAssignableFrom(EventContext.class)
+                    && paramTypes[1].isAssignableFrom(EventEntity.class)) {
+                return new int[]{CONTEXT_ARGUMENT, EVENT_ARGUMENT};
+            } else if (paramTypes[0].isAssignableFrom(EventEntity.class)
+                    && paramTypes[1].isAssignableFrom(EventContext.class)) {
+                return new int[]{EVENT_ARGUMENT, CONTEXT_ARGUMENT};
+            }
+        }
+
+        return null;
+    }
 }
@@ -11,4 +11,16 @@ public @interface OnEvent {
     String type();
     String source() default "";
     SemanticTier[] tier() default {};
+
+    /**
+     * How events reach the listener; {@link DeliveryMode#MAILBOX} isolates a slow listener.
+     */
+    DeliveryMode delivery() default DeliveryMode.DEFAULT;
+
+    /**
+     * Mailbox capacity, or 0 for the bus-wide default.
+     */
+    int capacity() default 0;
+
+    OverflowPolicy overflow() default OverflowPolicy.BLOCK;
 }
@@ -0,0 +1,27 @@
+package tw.yukina.thinkorbit.service.event;
+
+/**
+ * What a full mailbox does with another event.
+ */
+public enum OverflowPolicy {
+    /**
+     * The publisher waits until the mailbox has room.
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued event is discarded to make room.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new event is discarded.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Events are not queued until the mailbox has drained; the listener then receives them by
+     * re-reading their id range from the store. Nothing is lost, and the publisher never waits.
+     */
+    SPILL
+}
@@ -0,0 +1,28 @@
+package tw.yukina.thinkorbit.service.event;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Progress and completion of a replay running in the background.
+ */
+public interface ReplayHandle {
+    /**
+     * @return a future completed once every event has been delivered, or exceptionally if a listener failed
+     */
+    CompletableFuture<Void> completion();
+
+    /**
+     * @return the number of events read from the event log so far
+     */
+    long getEventsRead();
+
+    /**
+     * @return the number of events delivered to the listener so far
+     */
+    long getEventsDelivered();
+
+    /**
+     * @return true once the whole range has been read; delivery may still be in progress
+     */
+    boolean isReadComplete();
+}
@@ -0,0 +1,28 @@
+package tw.yukina.thinkorbit.service.event;
+
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.function.Function;
+
+/**
+ * Key that partitions a parallel replay. Events with the same key are replayed in id order
+ * by a single worker; events with different keys may be replayed concurrently.
+ */
+public enum ReplayPartitionKey {
+    TRACE_ID(EventEntity::traceId),
+    SOURCE(EventEntity::getSource),
+    TYPE(EventEntity::getType);
+
+    private final Function<EventEntity, String> extractor;
+
+    ReplayPartitionKey(Function<EventEntity, String> extractor) {
+        this.extractor = extractor;
+    }
+
+    /**
+     * @return the key of the event, or null if the event has none
+     */
+    public String keyOf(EventEntity event) {
+        return extractor.apply(event);
+    }
+}
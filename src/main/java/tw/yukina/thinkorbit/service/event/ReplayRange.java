@@ -4,18 +4,57 @@ import lombok.Getter;
 import java.time.Instant;
 import java.util.Optional;
 
+/**
+ * Range of events to replay, ordered by event id.
+ * <p>
+ * The lower bounds {@code fromEventId} and {@code fromTime} are inclusive, {@code toEventId} is
+ * inclusive and {@code toTime} is exclusive. When {@code latest} is set, only the latest
+ * {@code latest} events within the bounds are replayed, still in ascending id order.
+ */
 @Getter
 public class ReplayRange {
     private final Long fromEventId;
     private final Instant fromTime;
+    private final Long toEventId;
+    private final Instant toTime;
+    private final Integer latest;
     private final ReplayLevel level;
 
     public ReplayRange(Long fromEventId, Instant fromTime, ReplayLevel level) {
+        this(fromEventId, fromTime, null, null, level);
+    }
+
+    public ReplayRange(Long fromEventId, Instant fromTime, Long toEventId, Instant toTime, ReplayLevel level) {
+        this(fromEventId, fromTime, toEventId, toTime, null, level);
+    }
+
+    private ReplayRange(Long fromEventId, Instant fromTime, Long toEventId, Instant toTime, Integer latest, ReplayLevel level) {
+        if (latest != null && latest < 0) {
+            throw new IllegalArgumentException("latest must not be negative");
+        }
+
         this.fromEventId = fromEventId;
         this.fromTime = fromTime;
+        this.toEventId = toEventId;
+        this.toTime = toTime;
+        this.latest = latest;
         this.level = level;
     }
 
+    /**
+     * Creates a range covering the latest {@code count} events.
+     */
+    public static ReplayRange latest(int count, ReplayLevel level) {
+        return new ReplayRange(null, null, null, null, count, level);
+    }
+
+    /**
+     * Restricts this range to its latest {@code count} events.
+     */
+    public ReplayRange withLatest(int count) {
+        return new ReplayRange(fromEventId, fromTime, toEventId, toTime, count, level);
+    }
+
     public Optional<Long> getFromEventId() {
         return Optional.ofNullable(fromEventId);
     }
@@ -23,4 +62,16 @@ public class ReplayRange {
     public Optional<Instant> getFromTime() {
         return Optional.ofNullable(fromTime);
     }
+
+    public Optional<Long> getToEventId() {
+        return Optional.ofNullable(toEventId);
+    }
+
+    public Optional<Instant> getToTime() {
+        return Optional.ofNullable(toTime);
+    }
+
+    public Optional<Integer> getLatest() {
+        return Optional.ofNullable(latest);
+    }
 }
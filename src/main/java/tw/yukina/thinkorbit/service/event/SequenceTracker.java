@@ -0,0 +1,34 @@
+package tw.yukina.thinkorbit.service.event;
+
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects the events a listener missed, from the per-source sequence numbers assigned when
+ * events are published.
+ * <p>
+ * A listener that subscribes to every event of a source receives their sequence numbers without
+ * gaps, unless events were lost on the way, such as dropped by a mailbox or a stream buffer.
+ * Events read from the store carry no sequence number and are not tracked.
+ */
+public class SequenceTracker {
+
+    private final Map<String, Long> lastSequences = new ConcurrentHashMap<>();
+
+    /**
+     * Records an event received by the listener.
+     *
+     * @return the number of events of its source missed since the last one recorded
+     */
+    public long track(EventEntity event) {
+        long sequence = event.getSourceSequence();
+        if (sequence == 0) {
+            return 0;
+        }
+
+        Long previous = lastSequences.put(event.getSource() != null ? event.getSource() : "", sequence);
+        return previous != null ? Math.max(0, sequence - previous - 1) : 0;
+    }
+}
@@ -1,34 +1,122 @@
 package tw.yukina.thinkorbit.service.event;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Page;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.cache.HotTailCache;
+import tw.yukina.thinkorbit.service.event.dispatch.DispatchWatermark;
+import tw.yukina.thinkorbit.service.event.dispatch.EventSequencer;
+import tw.yukina.thinkorbit.service.event.dispatch.Mailbox;
 import tw.yukina.thinkorbit.service.event.entity.EventContext;
 import tw.yukina.thinkorbit.service.event.entity.EventEntity;
-import tw.yukina.thinkorbit.service.event.entity.EventRepository;
+import tw.yukina.thinkorbit.service.event.idempotency.IdempotencyGuard;
+import tw.yukina.thinkorbit.service.event.idempotency.IdempotencyKeysReleased;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.pipeline.AsyncPublishPipeline;
+import tw.yukina.thinkorbit.service.event.replay.ParallelReplay;
+import tw.yukina.thinkorbit.service.event.store.DuplicateEventException;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.time.Duration;
 import java.time.Instant;
 
 @Slf4j
 @Service
 public class StandardEventBus implements EventBus {
 
-    private static final int PAGE_SIZE = 1000;
+    private static final String UNNAMED_SUBSCRIPTION = "unnamed";
+    private static final String CATCH_UP_SUBSCRIPTION = "catch-up";
+    private static final String STREAM_SUBSCRIPTION = "stream";
+    private static final int WATERMARK_SLOTS = 1024;
 
-    private final EventRepository eventRepository;
-    private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
-    private final List<EventEntity> eventHistory = new ArrayList<>();
-    private boolean isClosed = false;
+    private final EventStore eventStore;
+    private final EventBusMetrics metrics;
+    private final SubscriptionIndex subscriptions = new SubscriptionIndex();
+    private final HotTailCache hotTail;
+    private final AsyncPublishPipeline publishPipeline;
+    private final IdempotencyGuard idempotency;
+    private final Duration idempotencyPreloadWindow;
+    private final int replayWorkerQueueCapacity;
+    private final EventBusConfiguration.Dispatch dispatchConfiguration;
+    private final Set<FluxSink<EventEntity>> streams = ConcurrentHashMap.newKeySet();
+    private final EventSequencer sequencer = new EventSequencer();
+    private final DispatchWatermark watermark = new DispatchWatermark(WATERMARK_SLOTS);
+
+    // Created once, so dispatching an event allocates no lambdas
+    private final Consumer<EventEntity> dispatcher = this::dispatch;
+    private final BiConsumer<EventSubscription, EventEntity> deliverer = this::deliver;
+
+    /**
+     * Id of this node stamped on published events in cluster mode, null otherwise.
+     */
+    private final String nodeId;
+
+    /**
+     * Whether the hot tail holds every event above its floor. Not so in cluster mode, where
+     * other nodes store events this node may not have received yet.
+     */
+    private final boolean hotTailComplete;
+
+    private volatile boolean isClosed = false;
+
+    /**
+     * Latest occurrence time stored before this bus started, i.e. before the hot tail began filling.
+     */
+    private Instant storedMaxOccurredAt;
 
     @Autowired
-    public StandardEventBus(EventRepository eventRepository) {
-        this.eventRepository = eventRepository;
+    public StandardEventBus(EventStore eventStore, EventBusMetrics metrics, EventBusConfiguration configuration) {
+        this.eventStore = eventStore;
+        this.metrics = metrics;
+
+        EventBusConfiguration.HotTail hotTailConfiguration = configuration.getHotTail();
+        this.hotTail = new HotTailCache(hotTailConfiguration.getMaxEvents(), hotTailConfiguration.getMaxSize().toBytes());
+        metrics.bindHotTail(hotTail);
+        this.replayWorkerQueueCapacity = configuration.getReplay().getWorkerQueueCapacity();
+        this.dispatchConfiguration = configuration.getDispatch();
+
+        EventBusConfiguration.Cluster cluster = configuration.getCluster();
+        this.nodeId = cluster.isEnabled() ? cluster.getNodeId() : null;
+        this.hotTailComplete = !cluster.isEnabled();
+
+        EventBusConfiguration.Idempotency idempotencyConfiguration = configuration.getIdempotency();
+        this.idempotency = idempotencyConfiguration.isEnabled()
+                ? new IdempotencyGuard(eventStore, idempotencyConfiguration.getExpectedKeys(),
+                        idempotencyConfiguration.getFalsePositiveRate(), idempotencyConfiguration.getRecentKeys())
+                : null;
+        this.idempotencyPreloadWindow = idempotencyConfiguration.getPreloadWindow();
+
+        EventBusConfiguration.Async async = configuration.getAsync();
+        this.publishPipeline = async.isEnabled()
+                ? new AsyncPublishPipeline(async.getRingBufferSize(), this::persistAsync,
+                        event -> sequencer.dispatch(event, dispatcher))
+                : null;
+    }
+
+    @PostConstruct
+    void loadStoreState() {
+        storedMaxOccurredAt = eventStore.findMaxOccurredAt();
+        if (idempotency != null) {
+            idempotency.preload(Instant.now().minus(idempotencyPreloadWindow));
+        }
     }
 
     @Override
@@ -37,72 +125,542 @@ public class StandardEventBus implements EventBus {
             throw new IllegalStateException("EventBus is closed");
         }
 
-        event = eventRepository.save(event);
+        IdempotencyGuard.Claim claim = claimSettled(event);
+        if (claim.isDuplicate()) {
+            log.debug("Ignoring event {} with the already published idempotency key {}", event.getType(),
+                    event.getIdempotencyKey());
+            return;
+        }
+        event.setOrigin(nodeId);
+
+        int slot = watermark.begin();
+        if (joinsTransaction()) {
+            try {
+                publishInTransaction(event, claim, slot);
+            } catch (DuplicateEventException e) {
+                if (settleStoredDuplicate(claim, e).isCompletedExceptionally()) {
+                    throw e;
+                }
+            }
+            return;
+        }
 
-        eventHistory.add(event);
+        long ticket = sequencer.ticket(event);
+        long start = System.nanoTime();
+        EventEntity persisted;
+        try {
+            persisted = persist(event);
+        } catch (DuplicateEventException e) {
+            sequencer.skip(ticket, event);
+            watermark.complete(slot, null);
+            if (settleStoredDuplicate(claim, e).isCompletedExceptionally()) {
+                throw e;
+            }
+            return;
+        } catch (Throwable e) {
+            // Errors too, or the ticket would hold up every later publisher of the source
+            sequencer.skip(ticket, event);
+            watermark.complete(slot, null);
+            claim.fail(e);
+            throw e;
+        }
+        hotTail.add(persisted);
+        claim.complete(persisted);
 
-        for (EventSubscription subscription : subscriptions) {
-            if (subscription.filter().matches(event)) {
-                EventContext context = new EventContext();
-                subscription.listener().onEvent(context, event);
+        if (ticket == EventSequencer.NESTED) {
+            // Only queued here, so the watermark passes the event once it is actually dispatched
+            sequencer.dispatch(ticket, persisted, queued -> {
+                try {
+                    dispatch(queued);
+                } finally {
+                    watermark.complete(slot, queued.getId());
+                }
+            });
+        } else {
+            try {
+                sequencer.dispatch(ticket, persisted, dispatcher);
+            } finally {
+                watermark.complete(slot, persisted.getId());
             }
         }
+        metrics.recordPublish(persisted, System.nanoTime() - start);
     }
 
     @Override
-    public void subscribe(EventFilter filter, EventListener listener) {
+    public CompletableFuture<EventEntity> publishAsync(EventEntity event) {
         if (isClosed) {
-            throw new IllegalStateException("EventBus is closed");
+            return CompletableFuture.failedFuture(new IllegalStateException("EventBus is closed"));
+        }
+
+        IdempotencyGuard.Claim claim = claim(event);
+        if (claim.isDuplicate()) {
+            log.debug("Ignoring event {} with the already published idempotency key {}", event.getType(),
+                    event.getIdempotencyKey());
+            // Published again if the original fails, which releases the key
+            return claim.getOriginal().exceptionallyCompose(failure -> publishAsync(event));
+        }
+        event.setOrigin(nodeId);
+
+        int slot = watermark.begin();
+        // A listener on the dispatch thread publishes inline, as waiting for a ring slot would
+        // wait for that very thread
+        boolean inline = publishPipeline == null || publishPipeline.isDispatchThread();
+        if (inline && joinsTransaction()) {
+            try {
+                return publishInTransaction(event, claim, slot);
+            } catch (DuplicateEventException e) {
+                return settleStoredDuplicate(claim, e);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (inline) {
+            long ticket = sequencer.ticket(event);
+            long start = System.nanoTime();
+            EventEntity persisted;
+            try {
+                persisted = persist(event);
+            } catch (DuplicateEventException e) {
+                sequencer.skip(ticket, event);
+                watermark.complete(slot, null);
+                return settleStoredDuplicate(claim, e);
+            } catch (RuntimeException e) {
+                sequencer.skip(ticket, event);
+                watermark.complete(slot, null);
+                claim.fail(e);
+                return CompletableFuture.failedFuture(e);
+            } catch (Throwable e) {
+                sequencer.skip(ticket, event);
+                watermark.complete(slot, null);
+                claim.fail(e);
+                throw e;
+            }
+            hotTail.add(persisted);
+            claim.complete(persisted);
+
+            // Completed within the call, unless published by a listener and so dispatched later
+            CompletableFuture<EventEntity> dispatched = new CompletableFuture<>();
+            try {
+                sequencer.dispatch(ticket, persisted, queued -> {
+                    try {
+                        dispatch(queued);
+                    } catch (RuntimeException e) {
+                        dispatched.completeExceptionally(e);
+                        throw e;
+                    } finally {
+                        watermark.complete(slot, queued.getId());
+                    }
+                    metrics.recordPublish(queued, System.nanoTime() - start);
+                    dispatched.complete(queued);
+                });
+            } catch (RuntimeException e) {
+                dispatched.completeExceptionally(e);
+            }
+            return dispatched;
+        }
+
+        long start = System.nanoTime();
+        return publishPipeline.submit(event).handle((persisted, failure) -> {
+            // Handled on the dispatch thread once the event is dispatched, or failed
+            watermark.complete(slot, failure == null ? persisted.getId() : null);
+            if (failure == null) {
+                claim.complete(persisted);
+                metrics.recordPublish(persisted, System.nanoTime() - start);
+                return CompletableFuture.completedFuture(persisted);
+            }
+
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            if (cause instanceof DuplicateEventException duplicate) {
+                return settleStoredDuplicate(claim, duplicate);
+            }
+            claim.fail(cause);
+            return CompletableFuture.<EventEntity>failedFuture(cause);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Claims the idempotency key of an event. A key held by a publish still in flight is waited
+     * for, so a duplicate returns only once the original is persisted, and claimed again if that
+     * publish fails and releases it.
+     */
+    private IdempotencyGuard.Claim claimSettled(EventEntity event) {
+        IdempotencyGuard.Claim claim = claim(event);
+        while (claim.getResult() == IdempotencyGuard.Result.RECENT) {
+            try {
+                claim.awaitOriginal();
+                return claim;
+            } catch (CompletionException | CancellationException e) {
+                claim = claim(event);
+            }
+        }
+        return claim;
+    }
+
+    /**
+     * Settles the claim of an event the store refused because its key is already stored, which
+     * the guard misses once the key has aged out of its filter. The event is dropped like any
+     * other duplicate.
+     *
+     * @return the stored original, or a failure if it can no longer be found
+     */
+    private CompletableFuture<EventEntity> settleStoredDuplicate(IdempotencyGuard.Claim claim,
+                                                                 DuplicateEventException duplicate) {
+        log.debug("Ignoring event with the already stored idempotency key {}", duplicate.getIdempotencyKey());
+
+        Optional<EventEntity> original;
+        try {
+            original = eventStore.findByIdempotencyKey(duplicate.getIdempotencyKey());
+        } catch (RuntimeException e) {
+            original = Optional.empty();
         }
 
-        log.info("Subscribing events to {}", filter);
+        if (original.isEmpty()) {
+            claim.fail(duplicate);
+            return CompletableFuture.failedFuture(duplicate);
+        }
+        claim.complete(original.get());
+        return CompletableFuture.completedFuture(original.get());
+    }
 
-        subscriptions.add(new EventSubscription(filter, listener));
+    /**
+     * Forgets idempotency keys released with their events, so they can be published again.
+     */
+    // Qualified, as this package has an EventListener of its own
+    @org.springframework.context.event.EventListener
+    public void onIdempotencyKeysReleased(IdempotencyKeysReleased released) {
+        if (idempotency != null) {
+            idempotency.forget(released.keys());
+        }
     }
 
     @Override
-    public void replay(ReplayRange range, EventListener listener) {
+    public long dispatchedWatermark() {
+        return watermark.get();
+    }
+
+    private IdempotencyGuard.Claim claim(EventEntity event) {
+        if (idempotency == null || event.getIdempotencyKey() == null) {
+            return IdempotencyGuard.Claim.unkeyed();
+        }
+
+        IdempotencyGuard.Claim claim = idempotency.claim(event);
+        metrics.countIdempotencyCheck(claim.getResult());
+        return claim;
+    }
+
+    private EventEntity persist(EventEntity event) {
+        long start = System.nanoTime();
+        event = eventStore.append(event);
+        metrics.recordPersist(event, System.nanoTime() - start);
+        return event;
+    }
+
+    /**
+     * @return whether a synchronous append would write inside the caller's transaction
+     */
+    private boolean joinsTransaction() {
+        return eventStore.joinsTransactions()
+                && TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * Persists an event inside the caller's transaction and dispatches it once that commits.
+     * Until then the event is neither cached nor dispatched, its key stays claimed, and the
+     * dispatched watermark stays below it; if the transaction rolls back, the key is released as
+     * if the event had never been published. Events published in one transaction are dispatched
+     * in publishing order, each in a turn of its source taken at commit.
+     *
+     * @return a future completing once the event is dispatched, or failing if it rolls back
+     * @throws DuplicateEventException if the event's key is already stored
+     */
+    private CompletableFuture<EventEntity> publishInTransaction(EventEntity event, IdempotencyGuard.Claim claim,
+                                                                int slot) {
+        long start = System.nanoTime();
+        EventEntity persisted;
+        try {
+            persisted = persist(event);
+        } catch (DuplicateEventException e) {
+            watermark.complete(slot, null);
+            throw e;
+        } catch (Throwable e) {
+            watermark.complete(slot, null);
+            claim.fail(e);
+            throw e;
+        }
+
+        CompletableFuture<EventEntity> dispatched = new CompletableFuture<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                hotTail.add(persisted);
+                claim.complete(persisted);
+                sequencer.dispatch(persisted, queued -> {
+                    try {
+                        dispatch(queued);
+                    } catch (RuntimeException e) {
+                        dispatched.completeExceptionally(e);
+                        throw e;
+                    } finally {
+                        watermark.complete(slot, queued.getId());
+                    }
+                    metrics.recordPublish(queued, System.nanoTime() - start);
+                    dispatched.complete(queued);
+                });
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    IllegalStateException failure = new IllegalStateException(
+                            "Transaction holding event " + persisted.getId() + " did not commit");
+                    watermark.complete(slot, null);
+                    claim.fail(failure);
+                    dispatched.completeExceptionally(failure);
+                }
+            }
+        });
+        return dispatched;
+    }
+
+    private CompletableFuture<EventEntity> persistAsync(EventEntity event) {
+        long start = System.nanoTime();
+        return eventStore.appendAsync(event).thenApply(persisted -> {
+            metrics.recordPersist(persisted, System.nanoTime() - start);
+            hotTail.add(persisted);
+            if (idempotency != null) {
+                // Before dispatch, so a listener publishing the key again does not wait on itself
+                idempotency.persisted(persisted);
+            }
+            return persisted;
+        });
+    }
+
+    private void dispatch(EventEntity event) {
+        subscriptions.forEachMatching(event, deliverer);
+    }
+
+    private void deliver(EventSubscription subscription, EventEntity event) {
+        if (subscription.mailbox() != null) {
+            subscription.mailbox().offer(event);
+        } else {
+            deliver(subscription.name(), subscription.listener(), event);
+        }
+    }
+
+    @Override
+    public void dispatchRemote(EventEntity event) {
+        if (isClosed) {
+            return;
+        }
+        sequencer.dispatch(event, dispatcher);
+    }
+
+    private void deliver(String name, EventListener listener, EventEntity event) {
+        long start = System.nanoTime();
+        listener.onEvent(EventContext.LIVE, event);
+        metrics.recordDelivery(name, event, System.nanoTime() - start);
+    }
+
+    @Override
+    public void subscribe(EventFilter filter, EventListener listener, SubscriptionOptions options) {
         if (isClosed) {
             throw new IllegalStateException("EventBus is closed");
         }
 
-        EventContext replayContext = new EventContext();
-        replayContext.setReplay(true);
-        replayContext.setReplayLevel(range.getLevel());
+        DeliveryMode delivery = options.delivery() == DeliveryMode.DEFAULT
+                ? dispatchConfiguration.getDefaultDelivery()
+                : options.delivery();
 
-        Long fromEventId = range.getFromEventId().orElse(null);
-        Instant fromTime = range.getFromTime().orElse(null);
+        String name = options.name() != null ? options.name() : UNNAMED_SUBSCRIPTION;
+        Mailbox mailbox = null;
+        if (delivery == DeliveryMode.MAILBOX) {
+            int capacity = options.capacity() > 0 ? options.capacity() : dispatchConfiguration.getMailboxCapacity();
+            mailbox = new Mailbox(name, capacity, options.overflow(),
+                    event -> deliver(name, listener, event),
+                    (scan, consumer) -> readEvents(narrow(scan, filter), consumer));
+            metrics.bindMailbox(mailbox);
+        }
+
+        log.info("Subscribing events to {} with {} delivery", filter, delivery);
 
-        int pageNumber = 0;
-        boolean hasMore = true;
+        subscriptions.add(new EventSubscription(name, filter, listener, mailbox));
+    }
 
-        while (hasMore) {
-            Pageable pageable = PageRequest.of(pageNumber, PAGE_SIZE);
-            Page<EventEntity> page;
-            if (fromEventId != null && fromTime != null) {
-                page = eventRepository.findByIdGreaterThanEqualAndOccurredAtGreaterThanEqual(fromEventId, fromTime, pageable);
-            } else if (fromEventId != null) {
-                page = eventRepository.findByIdGreaterThanEqual(fromEventId, pageable);
-            } else if (fromTime != null) {
-                page = eventRepository.findByOccurredAtGreaterThanEqual(fromTime, pageable);
-            } else {
-                page = eventRepository.findAll(pageable);
+    @Override
+    public Flux<EventEntity> stream(EventFilter filter) {
+        Flux<EventEntity> events = Flux.create(sink -> {
+            if (isClosed) {
+                sink.error(new IllegalStateException("EventBus is closed"));
+                return;
             }
 
-            page.getContent().forEach(event -> listener.onEvent(replayContext, event));
+            EventSubscription subscription = new EventSubscription(STREAM_SUBSCRIPTION, filter,
+                    (context, event) -> sink.next(event), null);
+            streams.add(sink);
+            subscriptions.add(subscription);
+            sink.onDispose(() -> {
+                subscriptions.remove(subscription);
+                streams.remove(sink);
+            });
+        }, FluxSink.OverflowStrategy.IGNORE);
 
-            hasMore = page.hasNext();
-            pageNumber++;
+        // Without demand, events wait in a bounded buffer instead of reaching the subscriber
+        return events.onBackpressureBuffer(Math.max(1, dispatchConfiguration.getStreamBufferSize()),
+                dropped -> metrics.countStreamDropped(), BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    @Override
+    public void subscribeFrom(ReplayRange range, EventFilter filter, EventListener listener) {
+        if (isClosed) {
+            throw new IllegalStateException("EventBus is closed");
+        }
+        if (range.getToEventId().isPresent() || range.getToTime().isPresent()) {
+            throw new IllegalArgumentException("A catch-up subscription cannot have an upper bound");
+        }
+
+        // Events still being dispatched when the live subscription starts are above the dispatched
+        // watermark, whatever the order their ids were assigned in; remote events may be in flight
+        // at any id, and the watermark does not cover them
+        CatchUpSubscription catchUp = hotTailComplete
+                ? new CatchUpSubscription(filter, listener, watermark.get(), watermark::get)
+                : new CatchUpSubscription(filter, listener, Long.MIN_VALUE, null);
+        EventSubscription subscription = new EventSubscription(CATCH_UP_SUBSCRIPTION, filter, catchUp, null);
+
+        log.info("Subscribing events to {} with catch-up from event {} and time {}", filter,
+                range.getFromEventId().orElse(null), range.getFromTime().orElse(null));
+        subscriptions.add(subscription);
+
+        EventContext replayContext = createReplayContext(range);
+        metrics.replayStarted();
+        try {
+            replayEvents(range, filter, event -> {
+                metrics.countReplayed("catch-up");
+                catchUp.onReplayed(replayContext, event);
+            });
+            catchUp.goLive();
+        } catch (RuntimeException e) {
+            subscriptions.remove(subscription);
+            throw e;
+        } finally {
+            metrics.replayFinished();
         }
     }
 
     @Override
-    public void close() {
-        isClosed = true;
-        subscriptions.clear();
-        eventHistory.clear();
+    public void replay(ReplayRange range, EventFilter filter, EventListener listener) {
+        if (isClosed) {
+            throw new IllegalStateException("EventBus is closed");
+        }
+
+        EventContext replayContext = createReplayContext(range);
+        metrics.replayStarted();
+        try {
+            replayEvents(range, filter, event -> {
+                metrics.countReplayed("sequential");
+                listener.onEvent(replayContext, event);
+            });
+        } finally {
+            metrics.replayFinished();
+        }
+    }
+
+    @Override
+    public ReplayHandle replayParallel(ReplayRange range, EventFilter filter, ReplayPartitionKey partitionKey,
+                                       int parallelism, EventListener listener) {
+        if (isClosed) {
+            throw new IllegalStateException("EventBus is closed");
+        }
+
+        ParallelReplay parallelReplay = new ParallelReplay(partitionKey, parallelism, replayWorkerQueueCapacity,
+                createReplayContext(range), listener);
+        ReplayHandle handle = parallelReplay.start(consumer -> replayEvents(range, filter, event -> {
+            metrics.countReplayed("parallel");
+            consumer.accept(event);
+        }));
+        metrics.trackReplay(handle);
+        return handle;
+    }
+
+    private EventContext createReplayContext(ReplayRange range) {
+        return EventContext.replay(range.getLevel());
+    }
+
+    /**
+     * Feeds the events of a range matching the filter to the consumer in ascending id order.
+     * The latest events of a range are counted before the filter applies.
+     */
+    private void replayEvents(ReplayRange range, EventFilter filter, Consumer<EventEntity> consumer) {
+        EventScan scan = EventScan.of(range);
+        if (range.getLatest().isPresent()) {
+            scan = eventStore.latest(scan, range.getLatest().get());
+        }
+        if (scan.isEmpty()) {
+            return;
+        }
+
+        if (filter instanceof EventCriteria) {
+            readEvents(narrow(scan, filter), consumer);
+        } else {
+            readEvents(scan, event -> {
+                if (filter.matches(event)) {
+                    consumer.accept(event);
+                }
+            });
+        }
     }
 
-    private record EventSubscription(EventFilter filter, EventListener listener) {
+    /**
+     * Adds the filter to a scan if it is declarative, so the store applies it.
+     */
+    private static EventScan narrow(EventScan scan, EventFilter filter) {
+        return filter instanceof EventCriteria criteria && criteria != EventCriteria.any()
+                ? scan.withCriteria(criteria)
+                : scan;
+    }
+
+    /**
+     * Feeds the events within the scan bounds to the consumer in ascending id order.
+     */
+    private void readEvents(EventScan scan, Consumer<EventEntity> consumer) {
+        if (!hotTailComplete) {
+            eventStore.scan(scan, consumer);
+            return;
+        }
+
+        // Recent ranges are served from the hot tail; only the part below its floor needs the store
+        HotTailCache.Tail tail = hotTail.snapshot();
+        boolean readStore;
+        if (scan.afterId() >= tail.floorId()) {
+            readStore = false;
+        } else if (scan.hasLowerIdBound()) {
+            readStore = true;
+        } else {
+            readStore = scan.fromTime() == null || tail.needsStoreFrom(scan.fromTime(), storedMaxOccurredAt);
+        }
+
+        if (readStore) {
+            eventStore.scan(scan.withMaxId(Math.min(scan.maxId(), tail.floorId())), consumer);
+        }
+
+        tail.events(readStore ? tail.floorId() : Long.MIN_VALUE, scan).forEach(consumer);
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        isClosed = true;
+        if (publishPipeline != null) {
+            publishPipeline.shutdown();
+        }
+        streams.forEach(FluxSink::complete);
+        subscriptions.clear().forEach(subscription -> {
+            if (subscription.mailbox() != null) {
+                subscription.mailbox().close();
+                metrics.unbindMailbox(subscription.mailbox());
+            }
+        });
+        hotTail.clear();
     }
 }
@@ -0,0 +1,165 @@
+package tw.yukina.thinkorbit.service.event;
+
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Subscriptions indexed by event type, then source and semantic tier.
+ * <p>
+ * Subscriptions with an indexable {@link IndexedEventFilter} are looked up directly, so dispatch cost
+ * depends on the number of matching listeners rather than the total number of subscribers.
+ * Subscriptions with any other filter stay in a fallback list that is scanned for every event.
+ * <p>
+ * Each matching subscription is called exactly once per event, but not in overall subscription
+ * order: first those of the event's type for any source, then those for its source, then the
+ * matching fallback subscriptions, each group in subscription order.
+ * <p>
+ * The lookup structure is immutable and rebuilt on every change, which keeps dispatch lock-free
+ * at the price of slower subscription, the rare operation.
+ */
+class SubscriptionIndex {
+
+    private static final EventSubscription[] NONE = new EventSubscription[0];
+
+    private final List<EventSubscription> subscriptions = new ArrayList<>();
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), NONE);
+
+    synchronized void add(EventSubscription subscription) {
+        subscriptions.add(subscription);
+        snapshot = Snapshot.build(subscriptions);
+    }
+
+    synchronized boolean remove(EventSubscription subscription) {
+        boolean removed = subscriptions.remove(subscription);
+        if (removed) {
+            snapshot = Snapshot.build(subscriptions);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every subscription.
+     *
+     * @return the removed subscriptions
+     */
+    synchronized List<EventSubscription> clear() {
+        List<EventSubscription> removed = List.copyOf(subscriptions);
+        subscriptions.clear();
+        snapshot = Snapshot.build(subscriptions);
+        return removed;
+    }
+
+    /**
+     * Calls the action for every subscription whose filter accepts the event. The event is passed
+     * along, so the action need not capture it and can be created once.
+     */
+    void forEachMatching(EventEntity event, BiConsumer<EventSubscription, EventEntity> action) {
+        Snapshot current = snapshot;
+
+        String type = event.getType();
+        TypeBucket typeBucket = type != null ? current.byType().get(type) : null;
+        if (typeBucket != null) {
+            SemanticTier tier = event.getSemanticTier();
+            typeBucket.anySource().forEach(tier, event, action);
+
+            String source = event.getSource();
+            TierBucket sourceBucket = source != null ? typeBucket.bySource().get(source) : null;
+            if (sourceBucket != null) {
+                sourceBucket.forEach(tier, event, action);
+            }
+        }
+
+        for (EventSubscription subscription : current.fallback()) {
+            if (subscription.filter().matches(event)) {
+                action.accept(subscription, event);
+            }
+        }
+    }
+
+    private record Snapshot(Map<String, TypeBucket> byType, EventSubscription[] fallback) {
+
+        static Snapshot build(List<EventSubscription> subscriptions) {
+            Map<String, List<EventSubscription>> anySourceByType = new HashMap<>();
+            Map<String, Map<String, List<EventSubscription>>> bySourceByType = new HashMap<>();
+            List<EventSubscription> fallback = new ArrayList<>();
+
+            for (EventSubscription subscription : subscriptions) {
+                if (!(subscription.filter() instanceof IndexedEventFilter filter) || !filter.isIndexable()) {
+                    fallback.add(subscription);
+                    continue;
+                }
+
+                bySourceByType.computeIfAbsent(filter.getType(), key -> new HashMap<>());
+                if (filter.getSource() == null) {
+                    anySourceByType.computeIfAbsent(filter.getType(), key -> new ArrayList<>()).add(subscription);
+                } else {
+                    bySourceByType.get(filter.getType())
+                            .computeIfAbsent(filter.getSource(), key -> new ArrayList<>())
+                            .add(subscription);
+                }
+            }
+
+            Map<String, TypeBucket> byType = new HashMap<>();
+            bySourceByType.forEach((type, bySource) -> {
+                Map<String, TierBucket> sourceBuckets = new HashMap<>();
+                bySource.forEach((source, list) -> sourceBuckets.put(source, TierBucket.build(list)));
+
+                TierBucket anySource = TierBucket.build(anySourceByType.getOrDefault(type, List.of()));
+                byType.put(type, new TypeBucket(anySource, Map.copyOf(sourceBuckets)));
+            });
+
+            return new Snapshot(Map.copyOf(byType), fallback.toArray(NONE));
+        }
+    }
+
+    private record TypeBucket(TierBucket anySource, Map<String, TierBucket> bySource) {
+    }
+
+    /**
+     * Subscriptions of one type and source, pre-split by the tier they accept.
+     */
+    private record TierBucket(EnumMap<SemanticTier, EventSubscription[]> byTier, EventSubscription[] anyTier) {
+
+        static TierBucket build(List<EventSubscription> subscriptions) {
+            EnumMap<SemanticTier, EventSubscription[]> byTier = new EnumMap<>(SemanticTier.class);
+            List<EventSubscription> anyTier = new ArrayList<>();
+
+            for (SemanticTier tier : SemanticTier.values()) {
+                List<EventSubscription> matching = new ArrayList<>();
+                for (EventSubscription subscription : subscriptions) {
+                    Set<SemanticTier> tiers = ((IndexedEventFilter) subscription.filter()).getTiers();
+                    if (tiers.isEmpty() || tiers.contains(tier)) {
+                        matching.add(subscription);
+                    }
+                }
+                byTier.put(tier, matching.toArray(NONE));
+            }
+
+            for (EventSubscription subscription : subscriptions) {
+                if (((IndexedEventFilter) subscription.filter()).getTiers().isEmpty()) {
+                    anyTier.add(subscription);
+                }
+            }
+
+            return new TierBucket(byTier, anyTier.toArray(NONE));
+        }
+
+        /**
+         * Events without a tier only reach subscriptions that accept any tier.
+         */
+        void forEach(SemanticTier tier, EventEntity event, BiConsumer<EventSubscription, EventEntity> action) {
+            EventSubscription[] matching = tier != null ? byTier.get(tier) : anyTier;
+            for (EventSubscription subscription : matching) {
+                action.accept(subscription, event);
+            }
+        }
+    }
+}
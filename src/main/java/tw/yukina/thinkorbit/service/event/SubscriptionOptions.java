@@ -0,0 +1,22 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Delivery options of a subscription.
+ *
+ * @param name     name of the subscription, used for its mailbox thread and in logs, or null
+ * @param delivery how events are delivered
+ * @param capacity mailbox capacity, or 0 for {@code event-bus.dispatch.mailbox-capacity}
+ * @param overflow what a full mailbox does with another event
+ */
+public record SubscriptionOptions(@Nullable String name, DeliveryMode delivery, int capacity, OverflowPolicy overflow) {
+
+    public static SubscriptionOptions defaults() {
+        return new SubscriptionOptions(null, DeliveryMode.DEFAULT, 0, OverflowPolicy.BLOCK);
+    }
+
+    public static SubscriptionOptions of(OnEvent annotation, String name) {
+        return new SubscriptionOptions(name, annotation.delivery(), annotation.capacity(), annotation.overflow());
+    }
+}
@@ -0,0 +1,192 @@
+package tw.yukina.thinkorbit.service.event.cache;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the most recently persisted events.
+ * <p>
+ * Events are evicted oldest-first once either the event count or the estimated heap size
+ * exceeds its limit. The cache remembers the highest id and occurrence time it has evicted,
+ * which tells a replay which part of a range it can serve from memory and which part must
+ * still be read from the store.
+ * <p>
+ * Events and their sizes are kept in parallel ring arrays, so adding an event allocates nothing.
+ */
+public class HotTailCache {
+
+    private static final long EVENT_OVERHEAD_BYTES = 96;
+    private static final long ENTRY_OVERHEAD_BYTES = 48;
+
+    private final int maxEvents;
+    private final long maxBytes;
+
+    private final EventEntity[] events;
+    private final long[] sizes;
+    private int head;
+    private int count;
+    private long bytes;
+    private long evictedMaxId = Long.MIN_VALUE;
+    private Instant evictedMaxOccurredAt;
+
+    public HotTailCache(int maxEvents, long maxBytes) {
+        this.maxEvents = Math.max(0, maxEvents);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.events = new EventEntity[Math.max(1, this.maxEvents)];
+        this.sizes = new long[events.length];
+    }
+
+    /**
+     * Adds a persisted event, evicting the oldest events if a limit is exceeded.
+     */
+    public synchronized void add(EventEntity event) {
+        if (event.getId() == null) {
+            return;
+        }
+
+        if (count == events.length) {
+            evictOldest();
+        }
+
+        long size = estimateSize(event);
+        int slot = (head + count) % events.length;
+        events[slot] = event;
+        sizes[slot] = size;
+        count++;
+        bytes += size;
+
+        while (count > 0 && (count > maxEvents || bytes > maxBytes)) {
+            evictOldest();
+        }
+    }
+
+    public synchronized void clear() {
+        while (count > 0) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * Takes a consistent view of the cache for one replay.
+     */
+    public synchronized Tail snapshot() {
+        EventEntity[] cached = new EventEntity[count];
+        long minCachedId = Long.MAX_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            cached[i] = events[(head + i) % events.length];
+            minCachedId = Math.min(minCachedId, cached[i].getId());
+        }
+
+        long floorId = count == 0 ? Long.MAX_VALUE : Math.max(evictedMaxId, minCachedId - 1);
+        return new Tail(cached, floorId, evictedMaxOccurredAt);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long estimatedBytes() {
+        return bytes;
+    }
+
+    private void evictOldest() {
+        EventEntity event = events[head];
+        bytes -= sizes[head];
+        events[head] = null;
+        head = (head + 1) % events.length;
+        count--;
+
+        evictedMaxId = Math.max(evictedMaxId, event.getId());
+
+        Instant occurredAt = event.getOccurredAt();
+        if (occurredAt != null && (evictedMaxOccurredAt == null || occurredAt.isAfter(evictedMaxOccurredAt))) {
+            evictedMaxOccurredAt = occurredAt;
+        }
+    }
+
+    /**
+     * Rough heap footprint of an event, good enough to bound the cache by size.
+     */
+    public static long estimateSize(EventEntity event) {
+        return EVENT_OVERHEAD_BYTES
+                + estimateSize(event.getType())
+                + estimateSize(event.getSource())
+                + estimateSize(event.traceId())
+                + estimateSize(event.causeId())
+                + estimateSize(event.getIdempotencyKey())
+                + estimateSize(event.getOrigin())
+                + (event.isPayloadDecoded() ? estimateSize(event.getPayload()) : estimateEncodedSize(event));
+    }
+
+    private static long estimateEncodedSize(EventEntity event) {
+        byte[] payloadData = event.getPayloadData();
+        return payloadData != null ? 16 + payloadData.length : 0;
+    }
+
+    private static long estimateSize(@Nullable Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence text) {
+            return 40 + text.length();
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = 64;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += ENTRY_OVERHEAD_BYTES + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = 40;
+            for (Object element : collection) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+        return 24;
+    }
+
+    /**
+     * Snapshot of the cache.
+     *
+     * @param events                the cached events in insertion order
+     * @param floorId               every event with a higher id is in {@code events}; lower ids must be read from the store
+     * @param evictedMaxOccurredAt  the latest occurrence time among evicted events, or null if nothing was evicted
+     */
+    public record Tail(EventEntity[] events, long floorId, @Nullable Instant evictedMaxOccurredAt) {
+
+        /**
+         * Whether the store may hold events at or after the given time that this tail does not.
+         *
+         * @param storedMaxOccurredAt the latest occurrence time in the store before the cache started filling
+         */
+        public boolean needsStoreFrom(Instant fromTime, @Nullable Instant storedMaxOccurredAt) {
+            return (evictedMaxOccurredAt != null && !fromTime.isAfter(evictedMaxOccurredAt))
+                    || (storedMaxOccurredAt != null && !fromTime.isAfter(storedMaxOccurredAt));
+        }
+
+        /**
+         * Returns the cached events within the scan bounds, ordered by id.
+         *
+         * @param aboveId only events with a higher id are returned; pass {@link #floorId()} when the
+         *                store part of the range is read separately, or {@link Long#MIN_VALUE} when it is not
+         */
+        public List<EventEntity> events(long aboveId, EventScan scan) {
+            return Arrays.stream(events)
+                    .filter(event -> event.getId() > aboveId)
+                    .filter(scan::includes)
+                    .sorted(Comparator.comparing(EventEntity::getId))
+                    .toList();
+        }
+    }
+}
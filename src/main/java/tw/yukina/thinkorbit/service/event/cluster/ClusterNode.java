@@ -0,0 +1,262 @@
+package tw.yukina.thinkorbit.service.event.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * One node of a cluster sharing an event store, exchanging the events each node publishes.
+ * <p>
+ * The node accepts connections from its peers and streams its own events to each of them, and
+ * connects to every configured peer to receive theirs. Events are only persisted by the node
+ * publishing them, so received events are handed to the local subscribers without storing them.
+ * <p>
+ * Events are sent in dispatch order, which is not id order, so a peer's highest id received
+ * does not tell which of its events were missed. For every peer the node keeps
+ * {@link ReceivedIds}: a low watermark at or below which every event of the peer was received,
+ * and the ids received above it. The watermark follows the peer's dispatched watermark, which
+ * it reports on connecting and with batches. After a reconnect the peer's events between the
+ * watermark and the last one it published that were not received are read from the shared
+ * store. The received ids survive reconnects but not restarts. A peer restarting under a new id
+ * is a new peer, so nodes should be given stable ids.
+ */
+@Slf4j
+public class ClusterNode implements AutoCloseable {
+
+    private final Options options;
+    private final EventStore eventStore;
+    private final EventBusMetrics metrics;
+    private final PayloadCodecs payloadCodecs;
+    private final Consumer<EventEntity> remoteSink;
+    private final LongSupplier dispatchedWatermark;
+
+    private final Set<PeerSession> sessions = ConcurrentHashMap.newKeySet();
+    private final List<PeerLink> links = new ArrayList<>();
+    private final Map<String, ReceivedIds> receivedIds = new ConcurrentHashMap<>();
+    private final AtomicLong lastPublishedId = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Highest id stored when the node started; every event it published before is dispatched.
+     */
+    private long storedWatermark = Long.MIN_VALUE;
+
+    private volatile boolean closed = false;
+    private ServerSocket serverSocket;
+
+    /**
+     * @param remoteSink          receives the events published by other nodes
+     * @param dispatchedWatermark an id at or below which every event this node published has been
+     *                            handed to {@link #publishLocal}, see
+     *                            {@link tw.yukina.thinkorbit.service.event.EventBus#dispatchedWatermark}
+     */
+    public ClusterNode(Options options, EventStore eventStore, EventBusMetrics metrics,
+                       PayloadCodecs payloadCodecs, Consumer<EventEntity> remoteSink,
+                       LongSupplier dispatchedWatermark) {
+        this.options = options;
+        this.eventStore = eventStore;
+        this.metrics = metrics;
+        this.payloadCodecs = payloadCodecs;
+        this.remoteSink = remoteSink;
+        this.dispatchedWatermark = dispatchedWatermark;
+    }
+
+    /**
+     * Starts accepting peers and connecting to the configured ones.
+     */
+    public void start() throws IOException {
+        // Every event this node published before starting is in the store, at or below its highest id
+        EventScan all = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+        EventScan newest = eventStore.latest(all, 1);
+        if (newest.afterId() != Long.MIN_VALUE) {
+            lastPublishedId.set(newest.afterId() + 1);
+            storedWatermark = newest.afterId() + 1;
+        }
+
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(options.host(), options.port()));
+        Thread.ofVirtual().name("event-cluster-accept").start(this::accept);
+        log.info("Cluster node {} listening on port {}", options.nodeId(), getPort());
+
+        for (String peer : options.peers()) {
+            PeerLink link = new PeerLink(this, peer);
+            links.add(link);
+            link.start();
+        }
+    }
+
+    /**
+     * @return the port the node accepts peers on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getNodeId() {
+        return options.nodeId();
+    }
+
+    Options getOptions() {
+        return options;
+    }
+
+    /**
+     * Sends an event published by this node to every connected peer.
+     */
+    public void publishLocal(EventEntity event) {
+        // Raised before the sessions are read, so a peer connecting concurrently either gets the
+        // event live or below the last published id it is told, or both
+        lastPublishedId.accumulateAndGet(event.getId(), Math::max);
+        for (PeerSession session : sessions) {
+            session.offer(event);
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed || serverSocket.isClosed()) {
+                    return;
+                }
+                log.error("Failed to accept a peer connection", e);
+                continue;
+            }
+            Thread.ofVirtual().name("event-cluster-handshake").start(() -> open(socket));
+        }
+    }
+
+    private void open(Socket socket) {
+        PeerSession[] holder = new PeerSession[1];
+        try {
+            socket.setTcpNoDelay(true);
+            PeerSession session = new PeerSession(socket, options, this::watermark,
+                    count -> metrics.countClusterEvents("sent", count),
+                    () -> sessions.remove(holder[0]));
+            holder[0] = session;
+
+            String peerId = session.handshake();
+            sessions.add(session);
+            // Read before the last published id, which is at least as high
+            long watermark = watermark();
+            session.start(options.nodeId(), lastPublishedId.get(), watermark);
+            log.info("Cluster node {} connected from {}", peerId, socket.getRemoteSocketAddress());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Rejected peer connection from {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            if (holder[0] != null) {
+                holder[0].close();
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException closeFailure) {
+                    log.debug("Failed to close peer connection", closeFailure);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return an id at or below which every event this node published has been offered to the
+     * sessions connected at the time
+     */
+    private long watermark() {
+        return Math.max(storedWatermark, dispatchedWatermark.getAsLong());
+    }
+
+    /**
+     * Delivers the events a peer published up to the last one before the connection was made
+     * that were not received yet. Those up to the peer's watermark were stored before it answered,
+     * so the watermark is passed afterwards; the others are in flight or already received. When
+     * first connecting to a peer, only the events above its watermark are delivered.
+     */
+    void catchUp(String peerId, long peerLastId, long peerWatermark) {
+        ReceivedIds received = receivedIds.computeIfAbsent(peerId, id -> new ReceivedIds(peerWatermark));
+        long afterId = received.low();
+        if (afterId >= peerLastId) {
+            received.advance(peerWatermark);
+            return;
+        }
+
+        long start = System.nanoTime();
+        int[] count = {0};
+        eventStore.scan(new EventScan(afterId, peerLastId, null, null), event -> {
+            if (peerId.equals(event.getOrigin()) && received.add(event.getId())) {
+                remoteSink.accept(event);
+                count[0]++;
+            }
+        });
+        received.advance(peerWatermark);
+
+        metrics.countClusterEvents("caught-up", count[0]);
+        log.info("Caught up {} events of cluster node {} in {} ms", count[0], peerId,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Delivers an event received live from a peer, unless it was received before.
+     */
+    void deliver(String peerId, EventEntity event) {
+        if (!receivedIds.get(peerId).add(event.getId())) {
+            return;
+        }
+        event.setPayloadCodecs(payloadCodecs);
+        remoteSink.accept(event);
+    }
+
+    /**
+     * Records a batch received from a peer, with the peer's watermark if it sent one.
+     */
+    void received(String peerId, int count, long watermark) {
+        metrics.countClusterEvents("received", count);
+        if (watermark != ClusterWire.NO_WATERMARK) {
+            receivedIds.get(peerId).advance(watermark);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        links.forEach(PeerLink::close);
+        sessions.forEach(PeerSession::close);
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the cluster server socket", e);
+            }
+        }
+    }
+
+    /**
+     * Settings of a node, see {@link EventBusConfiguration.Cluster}.
+     */
+    public record Options(String nodeId, String host, int port, List<String> peers, int maxBatchSize,
+                          Duration batchWindow, int maxUnackedBatches, int sendQueueCapacity,
+                          Duration reconnectDelay) {
+
+        public static Options of(EventBusConfiguration.Cluster cluster) {
+            return new Options(cluster.getNodeId(), cluster.getHost(), cluster.getPort(), List.copyOf(cluster.getPeers()),
+                    cluster.getMaxBatchSize(), cluster.getBatchWindow(), cluster.getMaxUnackedBatches(),
+                    cluster.getSendQueueCapacity(), cluster.getReconnectDelay());
+        }
+    }
+}
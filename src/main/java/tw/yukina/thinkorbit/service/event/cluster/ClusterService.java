@@ -0,0 +1,64 @@
+package tw.yukina.thinkorbit.service.event.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.DeliveryMode;
+import tw.yukina.thinkorbit.service.event.EventBus;
+import tw.yukina.thinkorbit.service.event.OverflowPolicy;
+import tw.yukina.thinkorbit.service.event.SubscriptionOptions;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Runs this application as a {@link ClusterNode}: events published here are sent to the peers,
+ * and events published by the peers are dispatched to the local subscribers.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "event-bus.cluster.enabled", havingValue = "true")
+public class ClusterService {
+
+    private static final String CLUSTER_SUBSCRIPTION = "cluster";
+
+    private final EventBus eventBus;
+    private final ClusterNode node;
+
+    public ClusterService(EventBus eventBus, EventStore eventStore, EventBusMetrics metrics,
+                          PayloadCodecs payloadCodecs, EventBusConfiguration configuration) {
+        this.eventBus = eventBus;
+        this.node = new ClusterNode(ClusterNode.Options.of(configuration.getCluster()), eventStore, metrics,
+                payloadCodecs, eventBus::dispatchRemote, eventBus::dispatchedWatermark);
+
+        if (configuration.getStore().getType() != EventBusConfiguration.StoreType.JDBC) {
+            log.warn("The cluster needs an event store shared by its nodes to catch up after disconnects, "
+                    + "but the {} store is local", configuration.getStore().getType());
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        try {
+            node.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start cluster node " + node.getNodeId(), e);
+        }
+
+        // Only events published here; those received from peers carry their node's id
+        String nodeId = node.getNodeId();
+        eventBus.subscribe(event -> nodeId.equals(event.getOrigin()), (context, event) -> node.publishLocal(event),
+                new SubscriptionOptions(CLUSTER_SUBSCRIPTION, DeliveryMode.SYNC, 0, OverflowPolicy.BLOCK));
+    }
+
+    @PreDestroy
+    void stop() {
+        node.close();
+    }
+}
@@ -0,0 +1,181 @@
+package tw.yukina.thinkorbit.service.event.cluster;
+
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.EventStrings;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messages exchanged between cluster nodes over a plain TCP connection.
+ * <p>
+ * The connecting node sends {@link #HELLO} with its id; the accepting node answers
+ * {@link #WELCOME} with its own id, the id of the last event it published and its dispatched
+ * watermark, then streams the events it publishes as {@link #BATCH} messages. A batch carries the
+ * watermark too when every event at or below it was sent in that batch or an earlier one, and
+ * {@link #NO_WATERMARK} otherwise. Each batch is answered with an {@link #ACK}. Events travel as
+ * stored, with their payload still encoded.
+ */
+final class ClusterWire {
+
+    static final byte HELLO = 'H';
+    static final byte WELCOME = 'W';
+    static final byte BATCH = 'B';
+    static final byte ACK = 'A';
+
+    static final long NO_WATERMARK = Long.MIN_VALUE;
+
+    private static final int MAX_STRING_BYTES = 64 * 1024;
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+
+    private ClusterWire() {
+    }
+
+    static void writeHello(DataOutputStream out, String nodeId) throws IOException {
+        out.writeByte(HELLO);
+        writeString(out, nodeId);
+        out.flush();
+    }
+
+    static void writeWelcome(DataOutputStream out, String nodeId, long lastPublishedId, long watermark)
+            throws IOException {
+        out.writeByte(WELCOME);
+        writeString(out, nodeId);
+        out.writeLong(lastPublishedId);
+        out.writeLong(watermark);
+        out.flush();
+    }
+
+    static void writeBatch(DataOutputStream out, long watermark, List<EventEntity> events) throws IOException {
+        out.writeByte(BATCH);
+        out.writeLong(watermark);
+        out.writeInt(events.size());
+        for (EventEntity event : events) {
+            writeEvent(out, event);
+        }
+        out.flush();
+    }
+
+    static void writeAck(DataOutputStream out, long lastId) throws IOException {
+        out.writeByte(ACK);
+        out.writeLong(lastId);
+        out.flush();
+    }
+
+    /**
+     * Reads the type of the next message and checks it is the expected one.
+     */
+    static void expect(DataInputStream in, byte type) throws IOException {
+        byte actual = in.readByte();
+        if (actual != type) {
+            throw new IOException("Expected message " + (char) type + " but received " + (char) actual);
+        }
+    }
+
+    static Batch readBatch(DataInputStream in) throws IOException {
+        long watermark = in.readLong();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid batch size " + count);
+        }
+
+        List<EventEntity> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(readEvent(in));
+        }
+        return new Batch(watermark, events);
+    }
+
+    private static void writeEvent(DataOutputStream out, EventEntity event) throws IOException {
+        out.writeLong(event.getId());
+        Instant occurredAt = event.getOccurredAt();
+        out.writeBoolean(occurredAt != null);
+        if (occurredAt != null) {
+            out.writeLong(occurredAt.getEpochSecond());
+            out.writeInt(occurredAt.getNano());
+        }
+        writeString(out, event.getType());
+        writeString(out, event.getSource());
+        writeString(out, event.getSemanticTier() != null ? event.getSemanticTier().name() : null);
+        writeString(out, event.traceId());
+        writeString(out, event.causeId());
+        writeString(out, event.getIdempotencyKey());
+        writeString(out, event.getOrigin());
+        writeBytes(out, event.getPayloadData(), MAX_PAYLOAD_BYTES);
+    }
+
+    private static EventEntity readEvent(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        Instant occurredAt = in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+        String type = readString(in);
+        String source = readString(in);
+        String tier = readString(in);
+        String traceId = readString(in);
+        String causeId = readString(in);
+        String idempotencyKey = readString(in);
+        String origin = readString(in);
+        byte[] payloadData = readBytes(in, MAX_PAYLOAD_BYTES);
+
+        return EventEntity.builder()
+                .id(id)
+                .occurredAt(occurredAt)
+                .type(EventStrings.intern(type))
+                .source(EventStrings.intern(source))
+                .semanticTier(tier != null ? SemanticTier.valueOf(tier) : null)
+                .traceId(traceId)
+                .causeId(causeId)
+                .idempotencyKey(idempotencyKey)
+                .origin(EventStrings.intern(origin))
+                .payloadData(payloadData)
+                .build();
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null, MAX_STRING_BYTES);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in, MAX_STRING_BYTES);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Writes a length-prefixed byte string, where a length of -1 stands for null.
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes, int maxLength) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        if (bytes.length > maxLength) {
+            throw new IOException("Field of " + bytes.length + " bytes exceeds " + maxLength);
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid field length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param watermark the sender's dispatched watermark, or {@link #NO_WATERMARK}
+     */
+    record Batch(long watermark, List<EventEntity> events) {
+    }
+}
@@ -0,0 +1,125 @@
+package tw.yukina.thinkorbit.service.event.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Connection to one peer, receiving the events it publishes.
+ * <p>
+ * The link keeps reconnecting until closed. After each handshake the events the peer published
+ * that were not received yet are read from the shared event store, then the live batches are
+ * delivered, skipping those already received.
+ */
+@Slf4j
+class PeerLink implements AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+
+    private final ClusterNode node;
+    private final String address;
+    private final String host;
+    private final int port;
+
+    private volatile boolean closed = false;
+    private volatile Socket socket;
+    private Thread thread;
+
+    PeerLink(ClusterNode node, String address) {
+        this.node = node;
+        this.address = address;
+
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Peer address " + address + " is not host:port");
+        }
+        this.host = address.substring(0, separator);
+        this.port = Integer.parseInt(address.substring(separator + 1));
+    }
+
+    void start() {
+        thread = Thread.ofVirtual().name("event-cluster-link-" + address).start(this::run);
+    }
+
+    private void run() {
+        while (!closed) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                if (!receive(connection)) {
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    log.debug("Connection to peer {} failed: {}", address, e.getMessage());
+                }
+            }
+
+            try {
+                Thread.sleep(node.getOptions().reconnectDelay());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Receives events until the connection fails.
+     *
+     * @return false if the link should not reconnect
+     */
+    private boolean receive(Socket connection) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+        ClusterWire.writeHello(out, node.getNodeId());
+        ClusterWire.expect(in, ClusterWire.WELCOME);
+        String peerId = ClusterWire.readString(in);
+        long peerLastId = in.readLong();
+        long peerWatermark = in.readLong();
+        if (node.getNodeId().equals(peerId)) {
+            log.warn("Peer {} is this node, not connecting to it", address);
+            return false;
+        }
+        log.info("Connected to cluster node {} at {}", peerId, address);
+
+        node.catchUp(peerId, peerLastId, peerWatermark);
+        while (!closed) {
+            ClusterWire.expect(in, ClusterWire.BATCH);
+            ClusterWire.Batch batch = ClusterWire.readBatch(in);
+
+            long lastId = Long.MIN_VALUE;
+            for (EventEntity event : batch.events()) {
+                lastId = Math.max(lastId, event.getId());
+                node.deliver(peerId, event);
+            }
+            node.received(peerId, batch.events().size(), batch.watermark());
+            ClusterWire.writeAck(out, lastId);
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Socket connection = socket;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                log.debug("Failed to close connection to peer {}", address, e);
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package tw.yukina.thinkorbit.service.event.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Streams the events published by this node to one connected peer.
+ * <p>
+ * Events are queued by the publishing thread and sent in batches by a writer thread, which
+ * waits up to the batch window for a batch to fill. At most {@code max-unacked-batches} batches
+ * are sent ahead of the peer's acknowledgements. A peer too slow to keep up overflows the queue
+ * and is disconnected; it catches up from the shared event store once it reconnects.
+ */
+@Slf4j
+class PeerSession implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final BlockingQueue<EventEntity> queue;
+    private final Semaphore unacked;
+    private final int maxBatchSize;
+    private final long batchWindowNanos;
+    private final LongSupplier watermark;
+    private final Consumer<Integer> sentCounter;
+    private final Runnable onClose;
+
+    private volatile String peerId = "unknown";
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param watermark the node's dispatched watermark
+     */
+    PeerSession(Socket socket, ClusterNode.Options options, LongSupplier watermark, Consumer<Integer> sentCounter,
+                Runnable onClose) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, options.sendQueueCapacity()));
+        this.unacked = new Semaphore(Math.max(1, options.maxUnackedBatches()));
+        this.maxBatchSize = Math.max(1, options.maxBatchSize());
+        this.batchWindowNanos = options.batchWindow().toNanos();
+        this.watermark = watermark;
+        this.sentCounter = sentCounter;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Reads the peer's hello.
+     *
+     * @return the id of the peer
+     */
+    String handshake() throws IOException {
+        ClusterWire.expect(in, ClusterWire.HELLO);
+        peerId = ClusterWire.readString(in);
+        return peerId;
+    }
+
+    /**
+     * Answers the hello and starts streaming the queued events.
+     */
+    void start(String nodeId, long lastPublishedId, long watermark) throws IOException {
+        ClusterWire.writeWelcome(out, nodeId, lastPublishedId, watermark);
+        Thread.ofVirtual().name("event-cluster-send-" + peerId).start(this::send);
+        Thread.ofVirtual().name("event-cluster-ack-" + peerId).start(this::receiveAcks);
+    }
+
+    /**
+     * Queues an event for the peer, disconnecting it if the queue is full.
+     */
+    void offer(EventEntity event) {
+        if (!closed.get() && !queue.offer(event)) {
+            log.warn("Peer {} fell {} events behind, disconnecting it", peerId, queue.size());
+            close();
+        }
+    }
+
+    private void send() {
+        List<EventEntity> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed.get()) {
+                EventEntity first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    EventEntity next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                // Events up to the watermark were offered before it was read, so with the queue
+                // drained afterwards they are all in this batch or an earlier one
+                long dispatched = watermark.getAsLong();
+                long batchWatermark = queue.isEmpty() ? dispatched : ClusterWire.NO_WATERMARK;
+
+                unacked.acquire();
+                ClusterWire.writeBatch(out, batchWatermark, batch);
+                sentCounter.accept(batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (!closed.get()) {
+                log.info("Lost connection to peer {}: {}", peerId, e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void receiveAcks() {
+        try {
+            while (!closed.get()) {
+                ClusterWire.expect(in, ClusterWire.ACK);
+                in.readLong();
+                unacked.release();
+            }
+        } catch (IOException e) {
+            if (!closed.get()) {
+                log.debug("Peer {} stopped acknowledging: {}", peerId, e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        // Wakes a writer waiting for acknowledgements
+        unacked.release(Integer.MAX_VALUE / 2);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Failed to close connection to peer {}", peerId, e);
+        }
+        onClose.run();
+    }
+}
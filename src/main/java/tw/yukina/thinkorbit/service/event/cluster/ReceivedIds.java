@@ -0,0 +1,48 @@
+package tw.yukina.thinkorbit.service.event.cluster;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Ids of the events received from one peer.
+ * <p>
+ * A peer's events are not sent in id order, so the highest id received does not tell which
+ * were missed. Instead every event at or below a low watermark has been received, and the ids
+ * received above it are kept individually. The watermark only advances to a point the peer
+ * reports as dispatched, pruning the ids it passes.
+ */
+class ReceivedIds {
+
+    private final NavigableSet<Long> above = new TreeSet<>();
+    private long low;
+
+    ReceivedIds(long low) {
+        this.low = low;
+    }
+
+    /**
+     * Records an event as received.
+     *
+     * @return false if it was received before
+     */
+    synchronized boolean add(long id) {
+        return id > low && above.add(id);
+    }
+
+    /**
+     * @return an id at or below which every event has been received
+     */
+    synchronized long low() {
+        return low;
+    }
+
+    /**
+     * Records that every event at or below the watermark has been received.
+     */
+    synchronized void advance(long watermark) {
+        if (watermark > low) {
+            low = watermark;
+            above.headSet(watermark, true).clear();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import org.springframework.lang.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Payloads encoded by another codec and compressed with Deflate, optionally primed with a
+ * {@link PayloadDictionary preset dictionary}.
+ * <p>
+ * Small payloads barely compress on their own, but a dictionary holding the keys and values
+ * their type keeps repeating lets Deflate refer back to it from the first byte. The body is
+ * the dictionary id, 0 for none, and the uncompressed size as unsigned varints, followed by
+ * the raw Deflate stream.
+ */
+public class DeflatePayloadCodec implements PayloadCodec {
+
+    private static final int MAX_POOLED = 16;
+
+    private final byte marker;
+    private final PayloadCodec inner;
+    private final LongFunction<PayloadDictionary> dictionaries;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param dictionaries looks up the dictionary a payload was compressed with by its id
+     */
+    public DeflatePayloadCodec(byte marker, PayloadCodec inner, LongFunction<PayloadDictionary> dictionaries) {
+        this.marker = marker;
+        this.inner = inner;
+        this.dictionaries = dictionaries;
+    }
+
+    @Override
+    public byte getMarker() {
+        return marker;
+    }
+
+    @Override
+    public byte[] encode(Map<String, Object> payload) {
+        return compress(inner.encode(payload), null);
+    }
+
+    /**
+     * Compresses a payload already encoded by the inner codec.
+     *
+     * @param dictionary the dictionary to prime Deflate with, or null for none
+     */
+    public byte[] compress(byte[] encoded, @Nullable PayloadDictionary dictionary) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary.data());
+            }
+            deflater.setInput(encoded);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length / 2 + 16);
+            writeVarint(out, dictionary != null ? dictionary.id() : 0);
+            writeVarint(out, encoded.length);
+
+            byte[] buffer = new byte[Math.max(64, encoded.length)];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+            release(deflaters, deflater, deflater::end);
+        }
+    }
+
+    @Override
+    public Map<String, Object> decode(byte[] data, int offset, int length) {
+        int[] position = {offset};
+        long dictionaryId = readVarint(data, position);
+        int encodedLength = (int) readVarint(data, position);
+
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+
+        try {
+            if (dictionaryId != 0) {
+                inflater.setDictionary(dictionaries.apply(dictionaryId).data());
+            }
+            inflater.setInput(data, position[0], offset + length - position[0]);
+
+            byte[] encoded = new byte[encodedLength];
+            int inflated = 0;
+            while (inflated < encodedLength) {
+                int count = inflater.inflate(encoded, inflated, encodedLength - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed payload");
+                }
+                inflated += count;
+            }
+            return inner.decode(encoded, 0, encodedLength);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Could not inflate payload", e);
+        } finally {
+            inflater.reset();
+            release(inflaters, inflater, inflater::end);
+        }
+    }
+
+    /**
+     * Returns a (de)compressor to the pool, or frees its native memory if the pool is full.
+     */
+    private static <T> void release(Queue<T> pool, T instance, Runnable end) {
+        if (pool.size() < MAX_POOLED) {
+            pool.offer(instance);
+        } else {
+            end.run();
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in compressed payload");
+    }
+}
@@ -0,0 +1,114 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a preset dictionary from sample payloads, after the cover algorithm of zstd's trainer.
+ * <p>
+ * Every 8-byte sequence is scored by the number of samples it occurs in. The dictionary is then
+ * assembled from the 64-byte segments with the highest total score; the sequences of a chosen
+ * segment stop counting, so later segments cover other content. Deflate finds matches near the
+ * end of its window most cheaply, so the best segments are placed last.
+ */
+final class DictionaryTrainer {
+
+    private static final int GRAM_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 64;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * @return the dictionary, at most {@code maxSize} bytes, or an empty array if the samples
+     * share nothing worth keeping
+     */
+    static byte[] train(List<byte[]> samples, int maxSize) {
+        Map<Long, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + GRAM_LENGTH <= sample.length; i++) {
+                long gram = gram(sample, i);
+                if (seen.add(gram)) {
+                    frequency.merge(gram, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<byte[]> segments = new ArrayList<>();
+        int size = 0;
+        while (size < maxSize) {
+            byte[] bestSample = null;
+            int bestStart = 0;
+            int bestEnd = 0;
+            long bestScore = 0;
+
+            for (byte[] sample : samples) {
+                if (sample.length < GRAM_LENGTH) {
+                    continue;
+                }
+
+                // Slide a segment-long window over the sample, keeping the sum of its gram scores
+                int window = Math.min(SEGMENT_LENGTH, sample.length) - GRAM_LENGTH + 1;
+                long score = 0;
+                for (int i = 0; i < window; i++) {
+                    score += usefulness(frequency, gram(sample, i));
+                }
+                for (int start = 0; ; start++) {
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestSample = sample;
+                        bestStart = start;
+                        bestEnd = start + window + GRAM_LENGTH - 1;
+                    }
+                    int next = start + window;
+                    if (next + GRAM_LENGTH > sample.length) {
+                        break;
+                    }
+                    score += usefulness(frequency, gram(sample, next)) - usefulness(frequency, gram(sample, start));
+                }
+            }
+
+            if (bestSample == null) {
+                break;
+            }
+
+            int length = Math.min(bestEnd - bestStart, maxSize - size);
+            byte[] segment = new byte[length];
+            System.arraycopy(bestSample, bestStart, segment, 0, length);
+            segments.add(segment);
+            size += length;
+
+            for (int i = bestStart; i + GRAM_LENGTH <= bestEnd; i++) {
+                frequency.remove(gram(bestSample, i));
+            }
+        }
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            dictionary.writeBytes(segments.get(i));
+        }
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * Sequences found in a single sample cannot help compress another payload.
+     */
+    private static int usefulness(Map<Long, Integer> frequency, long gram) {
+        int count = frequency.getOrDefault(gram, 0);
+        return count > 1 ? count : 0;
+    }
+
+    private static long gram(byte[] data, int offset) {
+        long gram = 0;
+        for (int i = 0; i < GRAM_LENGTH; i++) {
+            gram = (gram << 8) | (data[offset + i] & 0xFF);
+        }
+        return gram;
+    }
+}
@@ -0,0 +1,47 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Payload codec backed by a Jackson object mapper, for JSON or any binary Jackson format.
+ */
+public class JacksonPayloadCodec implements PayloadCodec {
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
+
+    private final byte marker;
+    private final ObjectMapper objectMapper;
+
+    public JacksonPayloadCodec(byte marker, ObjectMapper objectMapper) {
+        this.marker = marker;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte getMarker() {
+        return marker;
+    }
+
+    @Override
+    public byte[] encode(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not serialize map", e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> decode(byte[] data, int offset, int length) {
+        try {
+            return objectMapper.readValue(data, offset, length, PAYLOAD_TYPE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not deserialize map", e);
+        }
+    }
+}
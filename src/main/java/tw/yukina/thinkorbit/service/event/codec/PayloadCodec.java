@@ -0,0 +1,24 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import java.util.Map;
+
+/**
+ * Encodes event payloads to bytes. Every encoded payload starts with the codec's format marker,
+ * so payloads written by different codecs can live side by side.
+ */
+public interface PayloadCodec {
+    /**
+     * @return the first byte of every payload this codec writes
+     */
+    byte getMarker();
+
+    /**
+     * Encodes the payload, without the marker.
+     */
+    byte[] encode(Map<String, Object> payload);
+
+    /**
+     * Decodes a payload body, the bytes following the marker.
+     */
+    Map<String, Object> decode(byte[] data, int offset, int length);
+}
@@ -0,0 +1,97 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Registry of payload codecs, looked up by the marker byte that starts every encoded payload.
+ * <p>
+ * New payloads are written with Smile, a binary JSON encoding that is smaller and faster to
+ * parse than JSON text. Payloads of an event type with a {@link PayloadDictionaries registered
+ * dictionary} are Smile compressed with that dictionary instead, when that makes them smaller.
+ * Payloads written by any registered codec stay readable.
+ * <p>
+ * Event stores encode payloads with this bean before writing them, and attach it to the events
+ * they read so payloads can be decoded lazily.
+ */
+@Component
+public class PayloadCodecs {
+
+    public static final byte JSON_MARKER = 1;
+    public static final byte SMILE_MARKER = 2;
+    public static final byte DEFLATE_MARKER = 3;
+
+    public static final PayloadCodec JSON = new JacksonPayloadCodec(JSON_MARKER, new ObjectMapper());
+    public static final PayloadCodec SMILE = new JacksonPayloadCodec(SMILE_MARKER, new ObjectMapper(
+            SmileFactory.builder()
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                    .build()));
+
+    private final PayloadCodec[] codecs = new PayloadCodec[256];
+    private final PayloadDictionaries dictionaries;
+    private final DeflatePayloadCodec deflate;
+
+    public PayloadCodecs(PayloadDictionaries dictionaries) {
+        this.dictionaries = dictionaries;
+        this.deflate = new DeflatePayloadCodec(DEFLATE_MARKER, SMILE, dictionaries::require);
+        register(JSON);
+        register(SMILE);
+        register(deflate);
+    }
+
+    /**
+     * Makes payloads written by the codec readable.
+     */
+    public synchronized void register(PayloadCodec codec) {
+        codecs[codec.getMarker() & 0xFF] = codec;
+    }
+
+    public DeflatePayloadCodec getDeflate() {
+        return deflate;
+    }
+
+    /**
+     * Encodes a payload of the given event type, prefixed with its marker, with the type's
+     * dictionary if it has one.
+     */
+    public byte[] encode(@Nullable String type, Map<String, Object> payload) {
+        PayloadDictionary dictionary = type != null ? dictionaries.active(type) : null;
+        byte[] smile = SMILE.encode(payload);
+        if (dictionary == null) {
+            return withMarker(SMILE_MARKER, smile);
+        }
+
+        byte[] compressed = deflate.compress(smile, dictionary);
+        return compressed.length < smile.length
+                ? withMarker(DEFLATE_MARKER, compressed)
+                : withMarker(SMILE_MARKER, smile);
+    }
+
+    private static byte[] withMarker(byte marker, byte[] body) {
+        byte[] data = new byte[body.length + 1];
+        data[0] = marker;
+        System.arraycopy(body, 0, data, 1, body.length);
+        return data;
+    }
+
+    /**
+     * Decodes a payload written by any registered codec.
+     */
+    public Map<String, Object> decode(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Empty payload");
+        }
+
+        PayloadCodec codec = codecs[data[0] & 0xFF];
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown payload format marker: " + data[0]);
+        }
+        return codec.decode(data, 1, data.length - 1);
+    }
+}
@@ -0,0 +1,56 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of payload dictionaries: every known version by id for decoding, and the latest
+ * version of each event type for encoding.
+ * <p>
+ * Dictionaries missing from the registry, e.g. those created by another process sharing the
+ * store, are loaded from the repository on first use, so compressed payloads stay readable
+ * even while training is disabled.
+ */
+@Component
+public class PayloadDictionaries {
+
+    private final PayloadDictionaryRepository repository;
+    private final Map<Long, PayloadDictionary> byId = new ConcurrentHashMap<>();
+    private final Map<String, PayloadDictionary> activeByType = new ConcurrentHashMap<>();
+
+    public PayloadDictionaries(PayloadDictionaryRepository repository) {
+        this.repository = repository;
+    }
+
+    public void register(PayloadDictionary dictionary) {
+        byId.put(dictionary.id(), dictionary);
+        activeByType.merge(dictionary.type(), dictionary,
+                (current, candidate) -> candidate.id() > current.id() ? candidate : current);
+    }
+
+    /**
+     * @return the dictionary new payloads of the type are compressed with, or null if none
+     */
+    @Nullable
+    public PayloadDictionary active(String type) {
+        return activeByType.get(type);
+    }
+
+    /**
+     * @return the dictionary with the given id
+     * @throws IllegalArgumentException if it is neither registered nor stored
+     */
+    public PayloadDictionary require(long id) {
+        PayloadDictionary dictionary = byId.get(id);
+        if (dictionary == null) {
+            dictionary = repository.findById(id)
+                    .map(PayloadDictionaryEntity::toDictionary)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown payload dictionary: " + id));
+            byId.put(id, dictionary);
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,11 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import java.time.Instant;
+
+/**
+ * Preset compression dictionary trained on the payloads of one event type.
+ * Each retraining creates a new dictionary with a higher id, and payloads record the id of the
+ * dictionary they were compressed with, so every version stays readable.
+ */
+public record PayloadDictionary(long id, String type, byte[] data, Instant createdAt) {
+}
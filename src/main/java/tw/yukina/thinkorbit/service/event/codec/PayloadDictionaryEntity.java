@@ -0,0 +1,33 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Stored version of a {@link PayloadDictionary}. Dictionaries are never deleted, since stored
+ * payloads may refer to any version.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString(exclude = "data")
+public class PayloadDictionaryEntity {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    private String type;
+
+    private Instant createdAt;
+
+    private byte[] data;
+
+    public PayloadDictionary toDictionary() {
+        return new PayloadDictionary(id, type, data, createdAt);
+    }
+}
@@ -0,0 +1,8 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PayloadDictionaryRepository extends JpaRepository<PayloadDictionaryEntity, Long> {
+}
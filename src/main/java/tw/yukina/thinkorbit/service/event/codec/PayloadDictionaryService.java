@@ -0,0 +1,125 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.DeliveryMode;
+import tw.yukina.thinkorbit.service.event.EventBus;
+import tw.yukina.thinkorbit.service.event.OverflowPolicy;
+import tw.yukina.thinkorbit.service.event.SubscriptionOptions;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trains a payload dictionary for every event type and keeps them versioned in the database.
+ * <p>
+ * Published payloads are sampled through a mailbox that drops samples rather than slowing
+ * publishers down. Once enough payloads of a type without a dictionary, or with one older than
+ * {@code retrain-after}, have been sampled, a dictionary is trained from them, stored, and used
+ * for new payloads of the type from then on. Earlier versions stay registered for decoding.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "event-bus.compression.enabled", havingValue = "true", matchIfMissing = true)
+public class PayloadDictionaryService {
+
+    private static final String SAMPLER_SUBSCRIPTION = "payload-dictionary";
+    private static final int SAMPLER_CAPACITY = 1024;
+
+    private final EventBus eventBus;
+    private final PayloadDictionaryRepository repository;
+    private final PayloadCodecs codecs;
+    private final PayloadDictionaries dictionaries;
+    private final int sampleSize;
+    private final int maxDictionarySize;
+    private final Duration retrainAfter;
+
+    /**
+     * Samples per type, only touched by the sampler's mailbox thread.
+     */
+    private final Map<String, List<byte[]>> samples = new HashMap<>();
+
+    public PayloadDictionaryService(EventBus eventBus, PayloadDictionaryRepository repository,
+                                    PayloadCodecs codecs, PayloadDictionaries dictionaries,
+                                    EventBusConfiguration configuration) {
+        this.eventBus = eventBus;
+        this.repository = repository;
+        this.codecs = codecs;
+        this.dictionaries = dictionaries;
+
+        EventBusConfiguration.Compression compression = configuration.getCompression();
+        this.sampleSize = Math.max(1, compression.getSampleSize());
+        this.maxDictionarySize = (int) Math.min(32 * 1024, compression.getMaxDictionarySize().toBytes());
+        this.retrainAfter = compression.getRetrainAfter();
+    }
+
+    @PostConstruct
+    void start() {
+        List<PayloadDictionaryEntity> stored = repository.findAll();
+        stored.forEach(entity -> dictionaries.register(entity.toDictionary()));
+        log.info("Loaded {} payload dictionaries", stored.size());
+
+        eventBus.subscribe(event -> event.getType() != null, (context, event) -> sample(event),
+                new SubscriptionOptions(SAMPLER_SUBSCRIPTION, DeliveryMode.MAILBOX, SAMPLER_CAPACITY,
+                        OverflowPolicy.DROP_NEWEST));
+    }
+
+    private void sample(EventEntity event) {
+        String type = event.getType();
+        PayloadDictionary active = dictionaries.active(type);
+        if (active != null && active.createdAt().plus(retrainAfter).isAfter(Instant.now())) {
+            return;
+        }
+
+        Map<String, Object> payload = event.getPayload();
+        if (payload == null || payload.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> typeSamples = samples.computeIfAbsent(type, key -> new ArrayList<>(sampleSize));
+        typeSamples.add(PayloadCodecs.SMILE.encode(payload));
+        if (typeSamples.size() >= sampleSize) {
+            samples.remove(type);
+            try {
+                train(type, typeSamples);
+            } catch (RuntimeException e) {
+                log.error("Failed to train a payload dictionary for {}", type, e);
+            }
+        }
+    }
+
+    private void train(String type, List<byte[]> typeSamples) {
+        long start = System.nanoTime();
+        byte[] data = DictionaryTrainer.train(typeSamples, maxDictionarySize);
+        if (data.length == 0) {
+            log.debug("Payloads of {} share too little for a dictionary", type);
+            return;
+        }
+
+        PayloadDictionary dictionary = repository.save(PayloadDictionaryEntity.builder()
+                .type(type)
+                .createdAt(Instant.now())
+                .data(data)
+                .build()).toDictionary();
+
+        long raw = 0;
+        long compressed = 0;
+        for (byte[] sample : typeSamples) {
+            raw += sample.length;
+            compressed += codecs.getDeflate().compress(sample, dictionary).length;
+        }
+
+        // Registered only once stored, so no payload refers to a dictionary that could be lost
+        dictionaries.register(dictionary);
+        log.info("Trained payload dictionary {} of {} bytes for {} in {} ms, samples compress from {} to {} bytes",
+                dictionary.id(), data.length, type, (System.nanoTime() - start) / 1_000_000, raw, compressed);
+    }
+}
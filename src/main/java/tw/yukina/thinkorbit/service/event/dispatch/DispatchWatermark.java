@@ -0,0 +1,94 @@
+package tw.yukina.thinkorbit.service.event.dispatch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the highest event id at or below which every event published in this process has been
+ * dispatched.
+ * <p>
+ * Ids are not assigned in dispatch order, so the highest dispatched id is no such bound: an event
+ * with a lower id may still be on its way. But the store assigns ids in increasing order within a
+ * process, so an event whose publish begins now gets an id above every id already assigned. Each
+ * publish in flight therefore holds a floor, one above the highest id its predecessors completed
+ * with, which its own id cannot be below. The watermark is one below the lowest floor in flight,
+ * or the highest completed id when nothing is in flight.
+ * <p>
+ * Floors are kept in a fixed table of slots claimed with a compare-and-set, so tracking a publish
+ * allocates nothing. Should every slot be taken, the watermark stays where it was until the
+ * publishes that found none complete.
+ */
+public class DispatchWatermark {
+
+    /**
+     * Slot of a publish that found the table full.
+     */
+    public static final int NO_SLOT = -1;
+
+    private static final long FREE = 0;
+
+    private final AtomicLongArray floors;
+    private final int mask;
+    private final AtomicLong maxCompletedId = new AtomicLong();
+    private final AtomicInteger untracked = new AtomicInteger();
+    private final AtomicLong watermark = new AtomicLong();
+
+    /**
+     * @param slots the number of publishes tracked at once, rounded up to a power of two
+     */
+    public DispatchWatermark(int slots) {
+        int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.floors = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Registers a publish about to persist its event.
+     *
+     * @return the slot to pass to {@link #complete}
+     */
+    public int begin() {
+        long floor = maxCompletedId.get() + 1;
+        int start = (int) Thread.currentThread().threadId() & mask;
+        for (int i = 0; i <= mask; i++) {
+            int slot = (start + i) & mask;
+            if (floors.get(slot) == FREE && floors.compareAndSet(slot, FREE, floor)) {
+                return slot;
+            }
+        }
+        untracked.incrementAndGet();
+        return NO_SLOT;
+    }
+
+    /**
+     * Records that a publish was dispatched, or failed.
+     *
+     * @param id the id of the dispatched event, or null if it was not persisted
+     */
+    public void complete(int slot, Long id) {
+        if (id != null) {
+            maxCompletedId.accumulateAndGet(id, Math::max);
+        }
+        if (slot == NO_SLOT) {
+            untracked.decrementAndGet();
+        } else {
+            floors.set(slot, FREE);
+        }
+    }
+
+    /**
+     * @return an id at or below which every event published in this process has been dispatched
+     */
+    public long get() {
+        long bound = maxCompletedId.get();
+        for (int slot = 0; slot <= mask; slot++) {
+            long floor = floors.get(slot);
+            if (floor != FREE) {
+                bound = Math.min(bound, floor - 1);
+            }
+        }
+        // A publish without a slot may hold any floor, so only a bound computed without one is kept
+        return untracked.get() == 0 ? watermark.accumulateAndGet(bound, Math::max) : watermark.get();
+    }
+}
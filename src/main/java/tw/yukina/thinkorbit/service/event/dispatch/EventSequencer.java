@@ -0,0 +1,232 @@
+package tw.yukina.thinkorbit.service.event.dispatch;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Numbers events and dispatches those of each source one at a time, in the order their
+ * publishers took tickets. Events of different sources are dispatched concurrently.
+ * <p>
+ * Each source has its own line of tickets. A publisher takes a ticket with a single atomic
+ * increment, persists its event concurrently with the others, and then waits for the ticket's
+ * turn to dispatch it. Turns are handed on through a volatile counter; a waiter spins briefly and
+ * then parks until its predecessor wakes it, so no lock is involved. Parked waiters register in
+ * a fixed ring of slots indexed by ticket, so handing on a turn allocates nothing; a waiter
+ * whose slot another ticket holds polls instead. The holder of a source's
+ * turn is the only thread assigning that source's sequence numbers, which keeps them consistent
+ * with its dispatch order. The global sequence number is taken from a shared counter as an event
+ * is dispatched, so it orders events of one source but interleaves sources arbitrarily.
+ * <p>
+ * A publisher whose event cannot be persisted must {@link #skip} its ticket, whatever it
+ * failed with, or later publishers of the source wait forever. The skipped number leaves no
+ * gap in the source sequence, which is only assigned at dispatch.
+ * <p>
+ * Events published by a listener while its thread holds a turn would deadlock waiting for it.
+ * They are queued instead. Those of the same source are dispatched breadth-first within the same
+ * turn, once the event being dispatched has reached every listener: the events its listeners
+ * published first, then the events their listeners published, and so on. Those of other sources
+ * are dispatched by the same thread after it has passed the turn on, each in a turn of its own
+ * source taken at that point, so a thread never holds two turns and two sources never wait on
+ * each other. Causal chains of any depth thus run in constant stack space, and the listener's
+ * publish returns without waiting for the dispatch. A listener must not block on an event
+ * dispatched by another thread, and a full mailbox with the {@code BLOCK} policy holds up every
+ * publisher of the source until it drains.
+ */
+@Slf4j
+public class EventSequencer {
+
+    /**
+     * Ticket of an event published by a thread holding a turn.
+     */
+    public static final long NESTED = -1;
+
+    /**
+     * Parked waiters a line can wake directly, a power of two.
+     */
+    static final int WAITER_SLOTS = 64;
+
+    private static final int SPIN_LIMIT = 128;
+    private static final long POLL_NANOS = 100_000;
+    private static final String NO_SOURCE = "";
+
+    private final Map<String, Line> lines = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadLocal<Turn> turns = ThreadLocal.withInitial(Turn::new);
+
+    /**
+     * Takes the next ticket of the event's source, fixing its place in the source's dispatch order.
+     */
+    public long ticket(EventEntity event) {
+        return turns.get().line != null ? NESTED : line(event).nextTicket.getAndIncrement();
+    }
+
+    /**
+     * Waits for the ticket's turn, numbers the event and dispatches it along with the events
+     * published meanwhile by its listeners, then passes the turn on. The event of a
+     * {@link #NESTED} ticket is only queued, to be dispatched later by the current thread.
+     */
+    public void dispatch(long ticket, EventEntity event, Consumer<EventEntity> dispatcher) {
+        Turn turn = turns.get();
+        if (ticket == NESTED) {
+            (line(event) == turn.line ? turn.nested : turn.deferred).add(new Pending(event, dispatcher));
+            return;
+        }
+
+        try {
+            dispatchInTurn(turn, line(event), ticket, event, dispatcher);
+        } finally {
+            dispatchDeferred(turn);
+        }
+    }
+
+    /**
+     * Takes a ticket and dispatches the event in its turn.
+     */
+    public void dispatch(EventEntity event, Consumer<EventEntity> dispatcher) {
+        dispatch(ticket(event), event, dispatcher);
+    }
+
+    /**
+     * Gives up the turn of a ticket whose event could not be published.
+     */
+    public void skip(long ticket, EventEntity event) {
+        if (ticket == NESTED) {
+            return;
+        }
+        Line line = line(event);
+        line.await(ticket);
+        line.advance(ticket);
+    }
+
+    private void dispatchInTurn(Turn turn, Line line, long ticket, EventEntity event, Consumer<EventEntity> dispatcher) {
+        line.await(ticket);
+        turn.line = line;
+        try {
+            number(line, event);
+            dispatcher.accept(event);
+        } finally {
+            try {
+                drainNested(turn, line);
+            } finally {
+                turn.line = null;
+                line.advance(ticket);
+            }
+        }
+    }
+
+    /**
+     * Dispatches the queued events of the current source in the order they were published.
+     * Their publishers have returned already, so a failure is only logged.
+     */
+    private void drainNested(Turn turn, Line line) {
+        Pending pending;
+        while ((pending = turn.nested.poll()) != null) {
+            try {
+                number(line, pending.event());
+                pending.dispatcher().accept(pending.event());
+            } catch (RuntimeException e) {
+                log.error("Failed to dispatch event {} published by a listener", pending.event().getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Dispatches the events listeners published for other sources, each in a new turn of its
+     * source. Called without holding a turn.
+     */
+    private void dispatchDeferred(Turn turn) {
+        Pending pending;
+        while ((pending = turn.deferred.poll()) != null) {
+            Line line = line(pending.event());
+            try {
+                dispatchInTurn(turn, line, line.nextTicket.getAndIncrement(), pending.event(), pending.dispatcher());
+            } catch (RuntimeException e) {
+                log.error("Failed to dispatch event {} published by a listener", pending.event().getId(), e);
+            }
+        }
+    }
+
+    private void number(Line line, EventEntity event) {
+        event.setSequence(sequence.incrementAndGet());
+        event.setSourceSequence(++line.sourceSequence);
+    }
+
+    private Line line(EventEntity event) {
+        String source = event.getSource() != null ? event.getSource() : NO_SOURCE;
+        Line line = lines.get(source);
+        return line != null ? line : lines.computeIfAbsent(source, key -> new Line());
+    }
+
+    /**
+     * Tickets and turn of one source.
+     */
+    private static final class Line {
+
+        private final AtomicLong nextTicket = new AtomicLong();
+        private final AtomicLong turn = new AtomicLong();
+        private final AtomicReferenceArray<Thread> waiters = new AtomicReferenceArray<>(WAITER_SLOTS);
+
+        /**
+         * Only accessed by the holder of the turn.
+         */
+        private long sourceSequence;
+
+        private void await(long ticket) {
+            for (int i = 0; i < SPIN_LIMIT; i++) {
+                if (turn.get() == ticket) {
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+
+            int slot = (int) (ticket & (WAITER_SLOTS - 1));
+            if (!waiters.compareAndSet(slot, null, Thread.currentThread())) {
+                // Held by a ticket a multiple of the slot count away, so this one polls its turn
+                while (turn.get() != ticket) {
+                    LockSupport.parkNanos(this, POLL_NANOS);
+                }
+                return;
+            }
+
+            // Registered before checking again, so a predecessor finishing in between still wakes us
+            try {
+                while (turn.get() != ticket) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                waiters.set(slot, null);
+            }
+        }
+
+        private void advance(long ticket) {
+            turn.set(ticket + 1);
+            // May wake a ticket sharing the slot instead, which checks its turn and parks again
+            Thread next = waiters.get((int) ((ticket + 1) & (WAITER_SLOTS - 1)));
+            if (next != null) {
+                LockSupport.unpark(next);
+            }
+        }
+    }
+
+    /**
+     * Dispatch state of one thread: the line whose turn it holds, if any, and the events its
+     * listeners published meanwhile.
+     */
+    private static final class Turn {
+
+        private Line line;
+        private final ArrayDeque<Pending> nested = new ArrayDeque<>();
+        private final ArrayDeque<Pending> deferred = new ArrayDeque<>();
+    }
+
+    private record Pending(EventEntity event, Consumer<EventEntity> dispatcher) {
+    }
+}
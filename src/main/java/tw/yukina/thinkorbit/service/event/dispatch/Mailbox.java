@@ -0,0 +1,215 @@
+package tw.yukina.thinkorbit.service.event.dispatch;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.service.event.OverflowPolicy;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of events for one subscription, drained by its own virtual thread.
+ * <p>
+ * Offering an event never runs the listener, so a slow listener only falls behind on its own
+ * mailbox. When the mailbox is full, the {@link OverflowPolicy} decides whether the publisher
+ * waits, an event is dropped, or the mailbox spills. A spilling mailbox only remembers the ids
+ * of the events it did not queue. Once the queued events are delivered, it reads the id range
+ * they span back from the store, delivers exactly those events, in id order, and then resumes
+ * queueing. Ids are not assigned in dispatch order, so the range may hold events that were queued
+ * or never offered, and the spilled ids need not start at its low end.
+ */
+@Slf4j
+public class Mailbox {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final int INITIAL_SPILL_CAPACITY = 64;
+
+    private final String name;
+    private final OverflowPolicy overflow;
+    private final BlockingQueue<EventEntity> queue;
+    private final Consumer<EventEntity> delivery;
+    private final SpillSource spillSource;
+    private final Thread drainer;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+
+    private final Object spillLock = new Object();
+    private long[] spilledIds = new long[INITIAL_SPILL_CAPACITY];
+    private int spilledCount = 0;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param delivery    runs the listener for one event
+     * @param spillSource reads spilled events back from the store
+     */
+    public Mailbox(String name, int capacity, OverflowPolicy overflow, Consumer<EventEntity> delivery,
+                   SpillSource spillSource) {
+        this.name = name;
+        this.overflow = overflow;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.delivery = delivery;
+        this.spillSource = spillSource;
+        this.drainer = Thread.ofVirtual().name("event-mailbox-" + name).start(this::drain);
+    }
+
+    /**
+     * Queues an event, applying the overflow policy if the mailbox is full.
+     */
+    public void offer(EventEntity event) {
+        if (closed) {
+            return;
+        }
+
+        switch (overflow) {
+            case BLOCK -> {
+                try {
+                    queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                    log.warn("Interrupted while waiting for mailbox {}, event {} dropped", name, event.getId());
+                }
+            }
+            case DROP_NEWEST -> {
+                if (!queue.offer(event)) {
+                    dropped.increment();
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(event)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+            }
+            case SPILL -> offerOrSpill(event);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        drainer.interrupt();
+
+        int undelivered = queue.size();
+        if (undelivered > 0) {
+            log.warn("Mailbox {} closed with {} undelivered events", name, undelivered);
+        }
+        queue.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    private void offerOrSpill(EventEntity event) {
+        synchronized (spillLock) {
+            // Once spilling, keep spilling until the spill is read back, or events would overtake it
+            if (spilledCount == 0 && queue.offer(event)) {
+                return;
+            }
+            if (spilledCount == spilledIds.length) {
+                spilledIds = Arrays.copyOf(spilledIds, spilledCount * 2);
+            }
+            spilledIds[spilledCount++] = event.getId();
+            spilled.increment();
+        }
+    }
+
+    private void drain() {
+        while (!closed) {
+            try {
+                EventEntity event = queue.poll();
+                if (event == null) {
+                    if (drainSpill()) {
+                        continue;
+                    }
+                    event = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        continue;
+                    }
+                }
+                deliver(event);
+            } catch (InterruptedException e) {
+                // Only close interrupts the drainer
+            }
+        }
+    }
+
+    /**
+     * Delivers the spilled events, if any. Called with an empty queue, which while spilling means
+     * every event queued before the spill has been delivered.
+     */
+    private boolean drainSpill() {
+        long[] ids;
+        synchronized (spillLock) {
+            if (spilledCount == 0) {
+                return false;
+            }
+            ids = Arrays.copyOf(spilledIds, spilledCount);
+            spilledCount = 0;
+            if (spilledIds.length > INITIAL_SPILL_CAPACITY) {
+                spilledIds = new long[INITIAL_SPILL_CAPACITY];
+            }
+        }
+
+        Arrays.sort(ids);
+        int[] found = {0};
+        try {
+            spillSource.read(new EventScan(ids[0] - 1, ids[ids.length - 1], null, null), event -> {
+                if (!closed && Arrays.binarySearch(ids, event.getId()) >= 0) {
+                    found[0]++;
+                    deliver(event);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Mailbox {} failed to read back spilled events {} to {}", name, ids[0], ids[ids.length - 1], e);
+            return true;
+        }
+
+        if (found[0] < ids.length && !closed) {
+            log.warn("Mailbox {} found only {} of {} spilled events in the store", name, found[0], ids.length);
+        }
+        return true;
+    }
+
+    private void deliver(EventEntity event) {
+        try {
+            delivery.accept(event);
+            delivered.increment();
+        } catch (Throwable e) {
+            log.error("Listener of mailbox {} failed on event {}", name, event.getId(), e);
+        }
+    }
+
+    /**
+     * Reads events back from the store, in id order.
+     */
+    @FunctionalInterface
+    public interface SpillSource {
+        void read(EventScan scan, Consumer<EventEntity> consumer);
+    }
+}
@@ -1,19 +1,52 @@
 package tw.yukina.thinkorbit.service.event.entity;
 
 import lombok.Getter;
-import lombok.Setter;
 import tw.yukina.thinkorbit.service.event.ReplayLevel;
 
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * How an event reaches a listener. Immutable, with one shared instance per mode, so a delivery
+ * allocates no context.
+ */
 @Getter
-@Setter
-public class EventContext {
-    private boolean replay;
-    private boolean dryRun;
-    private ReplayLevel replayLevel;
-
-    public EventContext() {
-        this.replay = false;
-        this.dryRun = false;
-        this.replayLevel = null;
+public final class EventContext {
+
+    /**
+     * Context of a live event, delivered as it is published.
+     */
+    public static final EventContext LIVE = new EventContext(false, false, null);
+
+    /**
+     * Context of a live event delivered during a dry run, whose side effects listeners must
+     * suppress.
+     */
+    public static final EventContext DRY_RUN = new EventContext(false, true, null);
+
+    private static final EventContext UNLEVELED_REPLAY = new EventContext(true, false, null);
+    private static final Map<ReplayLevel, EventContext> REPLAYS = new EnumMap<>(ReplayLevel.class);
+
+    static {
+        for (ReplayLevel level : ReplayLevel.values()) {
+            REPLAYS.put(level, new EventContext(true, false, level));
+        }
+    }
+
+    private final boolean replay;
+    private final boolean dryRun;
+    private final ReplayLevel replayLevel;
+
+    private EventContext(boolean replay, boolean dryRun, ReplayLevel replayLevel) {
+        this.replay = replay;
+        this.dryRun = dryRun;
+        this.replayLevel = replayLevel;
+    }
+
+    /**
+     * @return the context of an event replayed at the given level, which may be null
+     */
+    public static EventContext replay(ReplayLevel level) {
+        return level != null ? REPLAYS.get(level) : UNLEVELED_REPLAY;
     }
 }
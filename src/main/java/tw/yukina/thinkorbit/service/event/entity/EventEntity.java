@@ -2,21 +2,34 @@ package tw.yukina.thinkorbit.service.event.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
 
 import java.time.Instant;
 import java.util.Map;
 import java.util.Optional;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "event_entity_occurred_at_idx", columnList = "occurred_at"),
+        @Index(name = "event_entity_trace_id_idx", columnList = "trace_id"),
+        @Index(name = "event_entity_cause_id_idx", columnList = "cause_id"),
+        @Index(name = "event_entity_idempotency_key_idx", columnList = "idempotency_key")
+})
 @Getter
 @Setter
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
 @ToString
-public class EventEntity {
+public class EventEntity implements EventView {
+    public static final String ID_SEQUENCE = "event_entity_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    private static final JsonMapConverter LEGACY_PAYLOAD_CONVERTER = new JsonMapConverter();
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     private Instant occurredAt;
@@ -32,9 +45,122 @@ public class EventEntity {
 
     private String causeId;
 
-    @Column(columnDefinition = "TEXT")
-    @Convert(converter = JsonMapConverter.class)
-    private Map<String, Object> payload;
+    /**
+     * Key identifying the logical event, so that publishing it again is a no-op, or null.
+     */
+    private String idempotencyKey;
+
+    /**
+     * Id of the cluster node that published the event, or null outside cluster mode.
+     */
+    private String origin;
+
+    /**
+     * Encoded payload as stored. Decoding is deferred until {@link #getPayload()} is first called,
+     * so events rejected by a filter on type, source or tier are never decoded.
+     */
+    @Column(name = "payload_data")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private byte[] payloadData;
+
+    /**
+     * JSON payload of rows written before payloads were stored in binary form. Read-only.
+     */
+    @Column(name = "payload", columnDefinition = "TEXT", insertable = false, updatable = false)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private String legacyPayload;
+
+    /**
+     * Decoded payload, cached on first access.
+     */
+    @Transient
+    private volatile Map<String, Object> payload;
+
+    /**
+     * Codecs the stored payload is decoded with, attached by the store or mapper that produced
+     * the encoded payload.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private PayloadCodecs payloadCodecs;
+
+    /**
+     * Position of the event in this process's dispatch order, assigned when it is published,
+     * or 0 for an event read from the store. Numbers restart with every process. Events of
+     * different sources are dispatched concurrently, so only those of one source are dispatched
+     * strictly in this order.
+     */
+    @Transient
+    private long sequence;
+
+    /**
+     * Position of the event among those of its source in this process's dispatch order,
+     * or 0 for an event read from the store.
+     */
+    @Transient
+    private long sourceSequence;
+
+    public Map<String, Object> getPayload() {
+        Map<String, Object> decoded = payload;
+        if (decoded == null && (payloadData != null || legacyPayload != null)) {
+            decoded = payloadData != null
+                    ? requirePayloadCodecs().decode(payloadData)
+                    : LEGACY_PAYLOAD_CONVERTER.convertToEntityAttribute(legacyPayload);
+            payload = decoded;
+        }
+        return decoded;
+    }
+
+    public void setPayload(Map<String, Object> payload) {
+        this.payload = payload;
+        this.payloadData = null;
+        this.legacyPayload = null;
+    }
+
+    /**
+     * @return the encoded payload, or null if a store has not encoded it yet
+     */
+    public byte[] getPayloadData() {
+        return payloadData;
+    }
+
+    /**
+     * Encodes the payload unless it already is, so the event can be stored, and keeps the
+     * codecs for decoding. The payload is treated as immutable once encoded.
+     */
+    public void encodePayload(PayloadCodecs codecs) {
+        if (payloadData == null && payload != null) {
+            payloadData = codecs.encode(type, payload);
+        }
+        payloadCodecs = codecs;
+    }
+
+    private PayloadCodecs requirePayloadCodecs() {
+        if (payloadCodecs == null) {
+            throw new IllegalStateException("No payload codecs attached to event " + id);
+        }
+        return payloadCodecs;
+    }
+
+    /**
+     * @return true if the payload is available without decoding
+     */
+    public boolean isPayloadDecoded() {
+        return payload != null || (payloadData == null && legacyPayload == null);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void checkPayloadEncoded() {
+        if (payloadData == null && payload != null) {
+            throw new IllegalStateException("Payload of event " + id + " must be encoded by the event store before it is saved");
+        }
+    }
 
     public Optional<String> getTraceId() {
         return Optional.ofNullable(traceId);
@@ -43,4 +169,54 @@ public class EventEntity {
     public Optional<String> getCauseId() {
         return Optional.ofNullable(causeId);
     }
+
+    @Override
+    public Long id() {
+        return id;
+    }
+
+    @Override
+    public Instant occurredAt() {
+        return occurredAt;
+    }
+
+    @Override
+    public String type() {
+        return type;
+    }
+
+    @Override
+    public String source() {
+        return source;
+    }
+
+    @Override
+    public SemanticTier semanticTier() {
+        return semanticTier;
+    }
+
+    @Override
+    public String traceId() {
+        return traceId;
+    }
+
+    @Override
+    public String causeId() {
+        return causeId;
+    }
+
+    @Override
+    public Map<String, Object> payload() {
+        return getPayload();
+    }
+
+    @Override
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public long sourceSequence() {
+        return sourceSequence;
+    }
 }
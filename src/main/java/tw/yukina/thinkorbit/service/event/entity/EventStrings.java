@@ -0,0 +1,44 @@
+package tw.yukina.thinkorbit.service.event.entity;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of the strings events repeat, such as their type and source.
+ * <p>
+ * Events read from the store each come with fresh copies of these strings. Interning them lets
+ * the events share one instance, and lets the subscription lookup compare them by reference.
+ * Types and sources form a small set, so the table is bounded; beyond the limit, strings are
+ * returned as they are.
+ */
+public final class EventStrings {
+
+    private static final int MAX_ENTRIES = 16_384;
+
+    private static final Map<String, String> CANONICAL = new ConcurrentHashMap<>();
+
+    private EventStrings() {
+    }
+
+    /**
+     * @return the canonical instance equal to the value, or null for null
+     */
+    public static String intern(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String canonical = CANONICAL.get(value);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (CANONICAL.size() >= MAX_ENTRIES) {
+            return value;
+        }
+
+        canonical = CANONICAL.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
+}
@@ -0,0 +1,54 @@
+package tw.yukina.thinkorbit.service.event.entity;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Read-only view of a dispatched event, which listeners may declare instead of {@link EventEntity}.
+ * <p>
+ * The view is the event itself, so it costs no allocation. Being read-only is therefore a
+ * convention, not a guarantee: the view can be cast back to the entity, and the payload map is
+ * the one every listener shares. Listeners must modify neither. Unlike the entity's getters,
+ * missing values are returned as null rather than wrapped in an {@code Optional}. The type and
+ * source of events read from the store or received from other nodes are
+ * {@link EventStrings interned}.
+ */
+public interface EventView {
+
+    /**
+     * @return the id assigned when the event was persisted
+     */
+    Long id();
+
+    Instant occurredAt();
+
+    String type();
+
+    String source();
+
+    @Nullable
+    SemanticTier semanticTier();
+
+    @Nullable
+    String traceId();
+
+    @Nullable
+    String causeId();
+
+    /**
+     * @return the payload, decoded on first access
+     */
+    Map<String, Object> payload();
+
+    /**
+     * @return the position in this process's dispatch order, see {@link EventEntity#getSequence()}
+     */
+    long sequence();
+
+    /**
+     * @return the position among the events of its source, see {@link EventEntity#getSourceSequence()}
+     */
+    long sourceSequence();
+}
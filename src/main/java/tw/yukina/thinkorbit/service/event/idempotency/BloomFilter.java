@@ -0,0 +1,79 @@
+package tw.yukina.thinkorbit.service.event.idempotency;
+
+/**
+ * Fixed-size Bloom filter over strings. Not thread-safe.
+ * <p>
+ * The bit positions of a key are derived from one 64-bit hash by double hashing, so adding or
+ * testing a key hashes it once however many positions it sets.
+ */
+class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private int size;
+
+    /**
+     * @param capacity          number of keys the filter is sized for
+     * @param falsePositiveRate false positive rate once {@code capacity} keys were added
+     */
+    BloomFilter(int capacity, double falsePositiveRate) {
+        this.capacity = Math.max(1, capacity);
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+
+        long optimalBits = (long) Math.ceil(-this.capacity * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.max(1, (optimalBits + 63) / 64)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * Math.log(2)));
+    }
+
+    void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        size++;
+    }
+
+    /**
+     * @return false if the key was certainly never added
+     */
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether as many keys were added as the filter is sized for
+     */
+    boolean isFull() {
+        return size >= capacity;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, with a final avalanche so both halves are usable.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,326 @@
+package tw.yukina.thinkorbit.service.event.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Detects events published again under an idempotency key that was already used.
+ * <p>
+ * Keys are checked in three tiers. A Bloom filter answers most keys, the new ones, without
+ * touching anything else. A key it may have seen is looked up among the recently published
+ * keys, and only if it is not there in the store, which also weeds out the filter's false
+ * positives. A new key is reserved among the recent keys before its event is persisted, so a
+ * duplicate published concurrently waits for the original instead of being written twice, and
+ * publishes it after all if the original fails. Once its event is persisted, a recent key holds
+ * nothing else, so the recent keys are bounded in bytes as well as in number; the event is loaded
+ * from the store if a duplicate asks for it. Keys released by retention or a dropped partition
+ * are {@link #forget forgotten}.
+ * <p>
+ * The filter holds the keys published since startup and those stored within the preload window.
+ * It has two generations of {@code expected-keys} each; once the current one is full, the older
+ * is discarded, so keys beyond that are no longer caught here and only the store rejects them,
+ * with a {@link tw.yukina.thinkorbit.service.event.store.DuplicateEventException}.
+ */
+@Slf4j
+public class IdempotencyGuard {
+
+    private final EventStore eventStore;
+    private final int expectedKeys;
+    private final double falsePositiveRate;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Reservation> recent;
+    private BloomFilter current;
+    private BloomFilter previous;
+
+    public IdempotencyGuard(EventStore eventStore, int expectedKeys, double falsePositiveRate, int recentKeys) {
+        this.eventStore = eventStore;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.current = new BloomFilter(expectedKeys, falsePositiveRate);
+
+        int maxRecent = Math.max(1, recentKeys);
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Reservation> eldest) {
+                return size() > maxRecent;
+            }
+        };
+    }
+
+    /**
+     * Adds the keys of the events stored since the given time to the filter.
+     */
+    public void preload(Instant since) {
+        long start = System.nanoTime();
+        int[] count = {0};
+        eventStore.forEachIdempotencyKey(since, key -> {
+            synchronized (lock) {
+                remember(key);
+            }
+            count[0]++;
+        });
+        log.info("Loaded {} idempotency keys of events since {} in {} ms", count[0], since,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Claims the idempotency key of an event about to be published.
+     *
+     * @return the claim, a duplicate if the key was published before
+     */
+    public Claim claim(EventEntity event) {
+        String key = event.getIdempotencyKey();
+        if (key == null) {
+            return Claim.UNKEYED;
+        }
+
+        CompletableFuture<EventEntity> original = new CompletableFuture<>();
+        boolean maybeSeen;
+        synchronized (lock) {
+            Reservation known = recent.get(key);
+            if (known != null) {
+                return known.inFlight != null
+                        ? new Claim(this, key, known.inFlight, Result.RECENT)
+                        : new Claim(this, key, null, Result.RECENT);
+            }
+
+            maybeSeen = current.mightContain(key) || (previous != null && previous.mightContain(key));
+            recent.put(key, new Reservation(original));
+            if (!maybeSeen) {
+                remember(key);
+            }
+        }
+
+        if (maybeSeen) {
+            Optional<EventEntity> stored;
+            try {
+                stored = eventStore.findByIdempotencyKey(key);
+            } catch (RuntimeException e) {
+                log.warn("Failed to look up idempotency key {}, publishing event", key, e);
+                stored = Optional.empty();
+            }
+
+            if (stored.isPresent()) {
+                settle(key, original, stored.get());
+                return new Claim(this, key, original, Result.STORED);
+            }
+        }
+
+        return new Claim(this, key, original, maybeSeen ? Result.FALSE_POSITIVE : Result.NEW);
+    }
+
+    /**
+     * Adds a key to the current filter generation. Called with the lock held.
+     */
+    private void remember(String key) {
+        if (current.isFull()) {
+            previous = current;
+            current = new BloomFilter(expectedKeys, falsePositiveRate);
+        }
+        current.add(key);
+    }
+
+    /**
+     * Completes the reservation of a persisted event's key ahead of its publisher, which may only
+     * complete its claim once the event is dispatched, so duplicates waiting on the key are
+     * released as soon as it is stored.
+     */
+    public void persisted(EventEntity event) {
+        String key = event.getIdempotencyKey();
+        if (key == null) {
+            return;
+        }
+
+        CompletableFuture<EventEntity> inFlight;
+        synchronized (lock) {
+            Reservation reservation = recent.get(key);
+            inFlight = reservation != null ? reservation.inFlight : null;
+        }
+        if (inFlight != null) {
+            settle(key, inFlight, event);
+        }
+    }
+
+    /**
+     * Forgets keys whose events are gone from the store, so they can be published again. Keys
+     * being published again already are left alone.
+     */
+    public void forget(Collection<String> keys) {
+        synchronized (lock) {
+            for (String key : keys) {
+                Reservation reservation = recent.get(key);
+                if (reservation != null && reservation.inFlight == null) {
+                    recent.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the key of a persisted event as such, unless its reservation was replaced meanwhile,
+     * and completes the publish's future.
+     */
+    private void settle(String key, CompletableFuture<EventEntity> original, EventEntity persisted) {
+        synchronized (lock) {
+            Reservation reservation = recent.get(key);
+            if (reservation != null && reservation.inFlight == original) {
+                recent.put(key, Reservation.PERSISTED);
+            }
+        }
+        original.complete(persisted);
+    }
+
+    private void release(String key, CompletableFuture<EventEntity> original) {
+        synchronized (lock) {
+            Reservation reservation = recent.get(key);
+            if (reservation != null && reservation.inFlight == original) {
+                recent.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Loads the event a recent key was persisted with. An event no longer stored has had its key
+     * released, which is then forgotten.
+     */
+    private CompletableFuture<EventEntity> load(String key) {
+        Optional<EventEntity> stored;
+        try {
+            stored = eventStore.findByIdempotencyKey(key);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (stored.isEmpty()) {
+            forget(List.of(key));
+            return CompletableFuture.failedFuture(new NoSuchElementException("No event stored with idempotency key " + key));
+        }
+        return CompletableFuture.completedFuture(stored.get());
+    }
+
+    /**
+     * How a key was classified.
+     */
+    public enum Result {
+        /**
+         * The event has no idempotency key.
+         */
+        UNKEYED,
+        /**
+         * The filter has never seen the key.
+         */
+        NEW,
+        /**
+         * The filter may have seen the key, but the store does not have it.
+         */
+        FALSE_POSITIVE,
+        /**
+         * The key was published recently, or is being published.
+         */
+        RECENT,
+        /**
+         * The key was found in the store.
+         */
+        STORED
+    }
+
+    /**
+     * Outcome of claiming a key. The publisher of a claim that is not a duplicate must
+     * {@link #complete} or {@link #fail} it.
+     */
+    public static final class Claim {
+
+        private static final Claim UNKEYED = new Claim(null, null, null, Result.UNKEYED);
+
+        private final IdempotencyGuard guard;
+        private final String key;
+        private final CompletableFuture<EventEntity> original;
+        private final Result result;
+
+        private Claim(IdempotencyGuard guard, String key, CompletableFuture<EventEntity> original, Result result) {
+            this.guard = guard;
+            this.key = key;
+            this.original = original;
+            this.result = result;
+        }
+
+        /**
+         * @return the claim of an event without idempotency key, which is never a duplicate
+         */
+        public static Claim unkeyed() {
+            return UNKEYED;
+        }
+
+        public Result getResult() {
+            return result;
+        }
+
+        public boolean isDuplicate() {
+            return result == Result.RECENT || result == Result.STORED;
+        }
+
+        /**
+         * @return the event first published with the key, completing once it is persisted. Loaded
+         * from the store if the key was published recently and is no longer in flight.
+         */
+        public CompletableFuture<EventEntity> getOriginal() {
+            return original != null ? original : guard.load(key);
+        }
+
+        /**
+         * Waits for the event first published with the key to be persisted, without loading it.
+         *
+         * @throws java.util.concurrent.CompletionException if its publish failed
+         */
+        public void awaitOriginal() {
+            if (original != null) {
+                original.join();
+            }
+        }
+
+        /**
+         * Records that the event holding the key was persisted.
+         */
+        public void complete(EventEntity persisted) {
+            if (!isDuplicate() && original != null) {
+                guard.settle(key, original, persisted);
+            }
+        }
+
+        /**
+         * Releases the key after its event failed to publish, so it can be published again.
+         */
+        public void fail(Throwable failure) {
+            if (!isDuplicate() && original != null) {
+                guard.release(key, original);
+                original.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Reservation of a recent key: the future of its publish while in flight, then a shared
+     * marker that it was persisted.
+     */
+    private static final class Reservation {
+
+        private static final Reservation PERSISTED = new Reservation(null);
+
+        private final CompletableFuture<EventEntity> inFlight;
+
+        private Reservation(CompletableFuture<EventEntity> inFlight) {
+            this.inFlight = inFlight;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package tw.yukina.thinkorbit.service.event.idempotency;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Owner of an idempotency key. The primary key makes this table the store's authority on
+ * which event holds a key, whatever the layout of the event table, and reserving a key commits
+ * or rolls back together with the event written in the same transaction.
+ */
+@Entity
+@Table(name = "event_idempotency_key", indexes = {
+        @Index(name = "event_idempotency_key_occurred_at_idx", columnList = "occurred_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class IdempotencyKeyEntity {
+    @Id
+    private String idempotencyKey;
+
+    private Long eventId;
+
+    private Instant occurredAt;
+}
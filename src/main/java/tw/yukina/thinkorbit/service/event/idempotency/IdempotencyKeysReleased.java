@@ -0,0 +1,10 @@
+package tw.yukina.thinkorbit.service.event.idempotency;
+
+import java.util.List;
+
+/**
+ * Application event announcing that idempotency keys were released along with their events,
+ * by retention or by dropping a partition, so they can be published again.
+ */
+public record IdempotencyKeysReleased(List<String> keys) {
+}
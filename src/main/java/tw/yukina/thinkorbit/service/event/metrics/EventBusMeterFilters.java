@@ -0,0 +1,29 @@
+package tw.yukina.thinkorbit.service.event.metrics;
+
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+
+/**
+ * Caps the number of event types and sources tagging {@code eventbus.*} meters. Types and sources
+ * come from publishers, so without a cap every new one would add a histogram per timer. Meters
+ * beyond the cap are denied and record nothing.
+ */
+@Configuration
+public class EventBusMeterFilters {
+
+    private static final String PREFIX = "eventbus";
+
+    @Bean
+    public MeterFilter eventBusTypeTagLimit(EventBusConfiguration configuration) {
+        return MeterFilter.maximumAllowableTags(PREFIX, "type", configuration.getMetrics().getMaxTypeTags(),
+                MeterFilter.deny());
+    }
+
+    @Bean
+    public MeterFilter eventBusSourceTagLimit(EventBusConfiguration configuration) {
+        return MeterFilter.maximumAllowableTags(PREFIX, "source", configuration.getMetrics().getMaxSourceTags(),
+                MeterFilter.deny());
+    }
+}
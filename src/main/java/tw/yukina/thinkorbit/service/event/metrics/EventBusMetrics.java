@@ -0,0 +1,244 @@
+package tw.yukina.thinkorbit.service.event.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import tw.yukina.thinkorbit.service.event.ReplayHandle;
+import tw.yukina.thinkorbit.service.event.cache.HotTailCache;
+import tw.yukina.thinkorbit.service.event.dispatch.Mailbox;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.idempotency.IdempotencyGuard;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters of the event bus, all named {@code eventbus.*}.
+ * <p>
+ * Publish and persist latencies are tagged by event type and source, dispatch latency by the
+ * listener alone, and event counts by semantic tier and, for deliveries, the listener. Every
+ * latency publishes a percentile histogram, so no timer is tagged by both listener and type: their
+ * product times the histogram buckets would grow the series without bound. The number of types
+ * and sources is capped by {@link EventBusMeterFilters}. Meters are cached per tag combination so
+ * the hot path does not rebuild meter ids; those recorded for every published and delivered event
+ * are looked up without allocating.
+ */
+@Component
+public class EventBusMetrics {
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+    private final Map<MeterKey, Counter> counters = new ConcurrentHashMap<>();
+    private final MeterTable<Timer> publishTimers = new MeterTable<>((type, source, unused) ->
+            eventTimer("eventbus.publish", "Time to persist and dispatch a published event", type, source));
+    private final MeterTable<Timer> persistTimers = new MeterTable<>((type, source, unused) ->
+            eventTimer("eventbus.persist", "Time to persist an event", type, source));
+    private final MeterTable<Counter> publishedCounters = new MeterTable<>((tier, unused, unusedToo) ->
+            Counter.builder("eventbus.events.published").tag("tier", tier).register(registry));
+    private final MeterTable<Timer> deliveryTimers = new MeterTable<>((listener, unused, unusedToo) ->
+            Timer.builder("eventbus.dispatch")
+                    .description("Time a listener spent handling an event")
+                    .tag("listener", listener)
+                    .publishPercentileHistogram()
+                    .register(registry));
+    private final MeterTable<Counter> deliveredCounters = new MeterTable<>((listener, tier, unused) ->
+            Counter.builder("eventbus.events.delivered")
+                    .description("Events delivered to listeners")
+                    .tags("listener", listener, "tier", tier)
+                    .register(registry));
+    private final Map<Mailbox, List<Meter>> mailboxMeters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeReplays = new AtomicInteger();
+    private final Set<ReplayHandle> activeParallelReplays = ConcurrentHashMap.newKeySet();
+
+    public EventBusMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        Gauge.builder("eventbus.replay.active", activeReplays, AtomicInteger::get)
+                .description("Number of replays in progress")
+                .register(registry);
+        Gauge.builder("eventbus.replay.backlog", activeParallelReplays, EventBusMetrics::replayBacklog)
+                .description("Events read but not yet delivered by parallel replays in progress")
+                .register(registry);
+    }
+
+    /**
+     * Time from publish until the event was persisted and dispatched.
+     */
+    public void recordPublish(EventEntity event, long nanos) {
+        publishTimers.get(value(event.getType()), value(event.getSource()), NONE).record(nanos, TimeUnit.NANOSECONDS);
+        publishedCounters.get(tier(event), NONE, NONE).increment();
+    }
+
+    /**
+     * Time until the event store acknowledged the event.
+     */
+    public void recordPersist(EventEntity event, long nanos) {
+        persistTimers.get(value(event.getType()), value(event.getSource()), NONE).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time one listener spent on an event.
+     */
+    public void recordDelivery(String listener, EventEntity event, long nanos) {
+        deliveryTimers.get(listener, NONE, NONE).record(nanos, TimeUnit.NANOSECONDS);
+        deliveredCounters.get(listener, tier(event), NONE).increment();
+    }
+
+    /**
+     * Counts an idempotency key check by its outcome.
+     */
+    public void countIdempotencyCheck(IdempotencyGuard.Result result) {
+        counter("eventbus.idempotency.checks", "result", result.name().toLowerCase()).increment();
+    }
+
+    /**
+     * Counts events exchanged with other cluster nodes.
+     *
+     * @param direction {@code sent}, {@code received} or {@code caught-up}
+     */
+    public void countClusterEvents(String direction, int count) {
+        counter("eventbus.cluster.events", "direction", direction).increment(count);
+    }
+
+    /**
+     * Counts an event dropped because a stream subscriber had no demand and its buffer was full.
+     */
+    public void countStreamDropped() {
+        counter("eventbus.stream.dropped", "listener", "stream").increment();
+    }
+
+    /**
+     * Counts an event read by a replay.
+     */
+    public void countReplayed(String mode) {
+        counter("eventbus.replay.events", "mode", mode).increment();
+    }
+
+    public void replayStarted() {
+        activeReplays.incrementAndGet();
+    }
+
+    public void replayFinished() {
+        activeReplays.decrementAndGet();
+    }
+
+    /**
+     * Tracks a parallel replay's backlog until it completes.
+     */
+    public void trackReplay(ReplayHandle handle) {
+        activeReplays.incrementAndGet();
+        activeParallelReplays.add(handle);
+        handle.completion().whenComplete((ignored, failure) -> {
+            activeParallelReplays.remove(handle);
+            activeReplays.decrementAndGet();
+        });
+    }
+
+    public void bindHotTail(HotTailCache hotTail) {
+        Gauge.builder("eventbus.hottail.events", hotTail, HotTailCache::size)
+                .description("Events held in the hot tail cache")
+                .register(registry);
+        Gauge.builder("eventbus.hottail.bytes", hotTail, HotTailCache::estimatedBytes)
+                .description("Estimated heap size of the hot tail cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public void bindMailbox(Mailbox mailbox) {
+        String listener = mailbox.getName();
+        mailboxMeters.put(mailbox, List.of(
+                Gauge.builder("eventbus.mailbox.queued", mailbox, Mailbox::getQueued)
+                        .description("Events waiting in a subscription's mailbox")
+                        .tag("listener", listener)
+                        .register(registry),
+                FunctionCounter.builder("eventbus.mailbox.dropped", mailbox, Mailbox::getDropped)
+                        .description("Events a full mailbox discarded")
+                        .tag("listener", listener)
+                        .register(registry),
+                FunctionCounter.builder("eventbus.mailbox.spilled", mailbox, Mailbox::getSpilled)
+                        .description("Events a full mailbox left in the store to read back later")
+                        .tag("listener", listener)
+                        .register(registry)));
+    }
+
+    public void unbindMailbox(Mailbox mailbox) {
+        List<Meter> meters = mailboxMeters.remove(mailbox);
+        if (meters != null) {
+            meters.forEach(registry::remove);
+        }
+    }
+
+    private Timer eventTimer(String name, String description, String type, String source) {
+        return Timer.builder(name)
+                .description(description)
+                .tags("type", type, "source", source)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter counter(String name, String tag, String value) {
+        return counters.computeIfAbsent(new MeterKey(name, value),
+                key -> Counter.builder(key.name()).tag(tag, key.value()).register(registry));
+    }
+
+    private static String tier(EventEntity event) {
+        return event.getSemanticTier() != null ? event.getSemanticTier().getTier() : NONE;
+    }
+
+    private static String value(String tagValue) {
+        return tagValue != null ? tagValue : NONE;
+    }
+
+    private static double replayBacklog(Set<ReplayHandle> replays) {
+        long backlog = 0;
+        for (ReplayHandle replay : replays) {
+            backlog += replay.getEventsRead() - replay.getEventsDelivered();
+        }
+        return backlog;
+    }
+
+    private record MeterKey(String name, String value) {
+    }
+
+    @FunctionalInterface
+    private interface MeterFactory<M> {
+        M create(String first, String second, String third);
+    }
+
+    /**
+     * Meters of one name by up to three tag values. A registered meter is found by walking
+     * nested maps keyed by the values themselves, so looking it up allocates no key.
+     */
+    private static final class MeterTable<M> {
+
+        private final MeterFactory<M> factory;
+        private final Map<String, Map<String, Map<String, M>>> meters = new ConcurrentHashMap<>();
+
+        MeterTable(MeterFactory<M> factory) {
+            this.factory = factory;
+        }
+
+        M get(String first, String second, String third) {
+            Map<String, Map<String, M>> byFirst = meters.get(first);
+            Map<String, M> bySecond = byFirst != null ? byFirst.get(second) : null;
+            M meter = bySecond != null ? bySecond.get(third) : null;
+            return meter != null ? meter : register(first, second, third);
+        }
+
+        private M register(String first, String second, String third) {
+            return meters.computeIfAbsent(first, key -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(second, key -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(third, key -> factory.create(first, second, third));
+        }
+    }
+}
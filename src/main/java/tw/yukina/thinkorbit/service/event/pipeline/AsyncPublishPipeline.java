@@ -0,0 +1,266 @@
+package tw.yukina.thinkorbit.service.event.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.DuplicateEventException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Asynchronous publish pipeline.
+ * <p>
+ * Publishers only claim a ring buffer slot and return. A persist stage hands every available
+ * event to the persister before waiting on any of them, so a group-commit writer can store them
+ * together. A dispatch stage, gated on the persist stage, delivers them to the subscribers and
+ * completes the publisher's future.
+ * <p>
+ * An idle stage spins briefly and then parks until a producer or the stage before it signals new
+ * work, so an idle pipeline costs no CPU.
+ */
+@Slf4j
+public class AsyncPublishPipeline {
+
+    private static final int IDLE_SPINS = 256;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5_000;
+
+    private final EventRingBuffer ringBuffer;
+    private final Function<EventEntity, CompletableFuture<EventEntity>> persister;
+    private final Consumer<EventEntity> dispatcher;
+
+    private final AtomicLong persistedSequence = new AtomicLong(-1);
+    private final AtomicLong dispatchedSequence = new AtomicLong(-1);
+    private final AtomicInteger activeProducers = new AtomicInteger();
+
+    private final Thread persistThread;
+    private final Thread dispatchThread;
+    private final IdleStage persistIdle;
+    private final IdleStage dispatchIdle;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param ringBufferSize number of slots, rounded up to a power of two
+     * @param persister      starts storing an event and completes with the persisted instance
+     * @param dispatcher     delivers a persisted event to the subscribers
+     */
+    public AsyncPublishPipeline(int ringBufferSize,
+                                Function<EventEntity, CompletableFuture<EventEntity>> persister,
+                                Consumer<EventEntity> dispatcher) {
+        this.ringBuffer = new EventRingBuffer(ringBufferSize);
+        this.persister = persister;
+        this.dispatcher = dispatcher;
+
+        // The dispatch stage always trails the persist stage, so it is the only gate producers need
+        ringBuffer.addGatingSequence(dispatchedSequence);
+
+        this.persistThread = new Thread(this::runPersistStage, "event-pipeline-persist");
+        this.dispatchThread = new Thread(this::runDispatchStage, "event-pipeline-dispatch");
+        this.persistIdle = new IdleStage(persistThread);
+        this.dispatchIdle = new IdleStage(dispatchThread);
+        persistThread.setDaemon(true);
+        dispatchThread.setDaemon(true);
+        persistThread.start();
+        dispatchThread.start();
+    }
+
+    /**
+     * Enqueues an event. The returned future completes on the dispatch thread once the event
+     * has been persisted and delivered to every matching subscriber.
+     * <p>
+     * On the dispatch thread itself, a full buffer could only drain by that thread moving on, so
+     * instead of waiting the future fails with a {@link RejectedExecutionException}.
+     */
+    public CompletableFuture<EventEntity> submit(EventEntity event) {
+        // Registering before the running check keeps both stages alive until this claim is drained
+        activeProducers.incrementAndGet();
+        try {
+            if (!running) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Publish pipeline is stopped"));
+            }
+
+            CompletableFuture<EventEntity> future = new CompletableFuture<>();
+
+            long sequence = isDispatchThread() ? ringBuffer.tryNext() : ringBuffer.next();
+            if (sequence < 0) {
+                return CompletableFuture.failedFuture(
+                        new RejectedExecutionException("Publish pipeline is full and submitted to from its dispatch thread"));
+            }
+            EventRingBuffer.Slot slot = ringBuffer.get(sequence);
+            slot.event = event;
+            slot.future = future;
+            slot.failure = null;
+            ringBuffer.publish(sequence);
+            persistIdle.signal();
+
+            return future;
+        } finally {
+            activeProducers.decrementAndGet();
+            if (!running) {
+                persistIdle.signal();
+                dispatchIdle.signal();
+            }
+        }
+    }
+
+    /**
+     * Whether the current thread is the dispatch thread, so a listener delivered by this pipeline.
+     */
+    public boolean isDispatchThread() {
+        return Thread.currentThread() == dispatchThread;
+    }
+
+    /**
+     * Stops accepting events, drains everything already claimed and stops both stages.
+     */
+    public void shutdown() {
+        running = false;
+        persistIdle.signal();
+        dispatchIdle.signal();
+
+        try {
+            persistThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+            dispatchThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (persistThread.isAlive() || dispatchThread.isAlive()) {
+            log.warn("Publish pipeline did not drain within {} ms", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * A stage keeps running while the pipeline accepts events, while a producer that passed the
+     * running check may still claim a slot, and until it has handled every claimed sequence.
+     */
+    private boolean hasWork(long next) {
+        return running || activeProducers.get() > 0 || next <= ringBuffer.getClaimedSequence();
+    }
+
+    private void runPersistStage() {
+        long next = 0;
+
+        while (hasWork(next)) {
+            long available = ringBuffer.highestPublished(next, ringBuffer.getClaimedSequence());
+            if (available < next) {
+                long from = next;
+                persistIdle.await(() -> ringBuffer.isAvailable(from) || !hasWork(from));
+                continue;
+            }
+
+            CompletableFuture<?>[] writes = new CompletableFuture<?>[(int) (available - next + 1)];
+            for (long sequence = next; sequence <= available; sequence++) {
+                EventRingBuffer.Slot slot = ringBuffer.get(sequence);
+                try {
+                    writes[(int) (sequence - next)] = persister.apply(slot.event);
+                } catch (Throwable e) {
+                    writes[(int) (sequence - next)] = CompletableFuture.failedFuture(e);
+                }
+            }
+
+            for (long sequence = next; sequence <= available; sequence++) {
+                EventRingBuffer.Slot slot = ringBuffer.get(sequence);
+                try {
+                    slot.event = (EventEntity) writes[(int) (sequence - next)].join();
+                } catch (CompletionException e) {
+                    slot.failure = e.getCause() != null ? e.getCause() : e;
+                } catch (Throwable e) {
+                    slot.failure = e;
+                }
+            }
+
+            persistedSequence.set(available);
+            dispatchIdle.signal();
+            next = available + 1;
+        }
+    }
+
+    private void runDispatchStage() {
+        long next = 0;
+
+        while (hasWork(next)) {
+            long available = persistedSequence.get();
+            if (available < next) {
+                long from = next;
+                dispatchIdle.await(() -> persistedSequence.get() >= from || !hasWork(from));
+                continue;
+            }
+
+            for (long sequence = next; sequence <= available; sequence++) {
+                EventRingBuffer.Slot slot = ringBuffer.get(sequence);
+                complete(slot);
+                slot.clear();
+            }
+
+            dispatchedSequence.set(available);
+            next = available + 1;
+        }
+    }
+
+    private void complete(EventRingBuffer.Slot slot) {
+        if (slot.failure != null) {
+            if (slot.failure instanceof DuplicateEventException) {
+                log.debug("Event store refused duplicate event {}", slot.event);
+            } else {
+                log.error("Failed to persist event {}", slot.event, slot.failure);
+            }
+            slot.future.completeExceptionally(slot.failure);
+            return;
+        }
+
+        try {
+            dispatcher.accept(slot.event);
+            slot.future.complete(slot.event);
+        } catch (Throwable e) {
+            log.error("Failed to dispatch event {}", slot.event, e);
+            slot.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Blocking wait strategy for one stage thread. The waiter publishes that it is about to park
+     * and re-checks its condition, and signallers only unpark a thread that announced itself, so
+     * a wake-up is never lost and a busy pipeline does not pay for unpark calls.
+     */
+    private static final class IdleStage {
+
+        private final Thread thread;
+        private volatile boolean waiting;
+
+        IdleStage(Thread thread) {
+            this.thread = thread;
+        }
+
+        void await(BooleanSupplier ready) {
+            for (int i = 0; i < IDLE_SPINS; i++) {
+                if (ready.getAsBoolean()) {
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+
+            waiting = true;
+            try {
+                while (!ready.getAsBoolean()) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                waiting = false;
+            }
+        }
+
+        void signal() {
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package tw.yukina.thinkorbit.service.event.pipeline;
+
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-producer ring buffer of pre-allocated slots.
+ * <p>
+ * Producers claim a sequence with a single CAS, fill the slot and publish it.
+ * Consumers track their own sequence and producers never overtake the slowest
+ * registered consumer, so a slot is only reused once every stage has released it.
+ */
+public class EventRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final Slot[] slots;
+    private final AtomicLongArray published;
+    private final AtomicLong claimSequence = new AtomicLong(-1);
+    private final List<AtomicLong> gatingSequences = new CopyOnWriteArrayList<>();
+
+    public EventRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive");
+        }
+
+        this.capacity = ceilingPowerOfTwo(requestedCapacity);
+        this.mask = capacity - 1;
+        this.slots = new Slot[capacity];
+        this.published = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    /**
+     * Registers the sequence of a consuming stage. Producers wait for it before wrapping.
+     */
+    public void addGatingSequence(AtomicLong sequence) {
+        gatingSequences.add(sequence);
+    }
+
+    /**
+     * Claims the next sequence, waiting while the buffer is full.
+     */
+    public long next() {
+        long sequence = claimSequence.incrementAndGet();
+        long wrapPoint = sequence - capacity;
+
+        while (wrapPoint > minimumGatingSequence()) {
+            LockSupport.parkNanos(1_000);
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Claims the next sequence if a slot is free.
+     *
+     * @return the claimed sequence, or -1 when the buffer is full
+     */
+    public long tryNext() {
+        while (true) {
+            long current = claimSequence.get();
+            long sequence = current + 1;
+            if (sequence - capacity > minimumGatingSequence()) {
+                return -1;
+            }
+            if (claimSequence.compareAndSet(current, sequence)) {
+                return sequence;
+            }
+        }
+    }
+
+    public Slot get(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    /**
+     * Makes a filled slot visible to consumers.
+     */
+    public void publish(long sequence) {
+        published.set((int) (sequence & mask), sequence);
+    }
+
+    public boolean isAvailable(long sequence) {
+        return published.get((int) (sequence & mask)) == sequence;
+    }
+
+    /**
+     * Returns the highest sequence in [from, to] such that every sequence up to it is published,
+     * or from - 1 when from itself is not yet published.
+     */
+    public long highestPublished(long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            if (!isAvailable(sequence)) {
+                return sequence - 1;
+            }
+        }
+        return to;
+    }
+
+    public long getClaimedSequence() {
+        return claimSequence.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private long minimumGatingSequence() {
+        long minimum = Long.MAX_VALUE;
+        for (AtomicLong sequence : gatingSequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum == Long.MAX_VALUE ? claimSequence.get() : minimum;
+    }
+
+    /**
+     * A reusable ring buffer entry. Fields are written by the owning producer or stage and
+     * made visible to the next stage through the published flag or the stage sequence.
+     */
+    public static class Slot {
+        EventEntity event;
+        CompletableFuture<EventEntity> future;
+        Throwable failure;
+
+        void clear() {
+            event = null;
+            future = null;
+            failure = null;
+        }
+    }
+}
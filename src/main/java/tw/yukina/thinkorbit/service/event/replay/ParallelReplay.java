@@ -0,0 +1,197 @@
+package tw.yukina.thinkorbit.service.event.replay;
+
+import lombok.extern.slf4j.Slf4j;
+import tw.yukina.thinkorbit.service.event.EventListener;
+import tw.yukina.thinkorbit.service.event.ReplayHandle;
+import tw.yukina.thinkorbit.service.event.ReplayPartitionKey;
+import tw.yukina.thinkorbit.service.event.entity.EventContext;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Replay that reads the event log on one thread and delivers on several workers.
+ * <p>
+ * Every event is hashed by its partition key to one worker queue, so events sharing a key keep
+ * their id order while different keys proceed concurrently. Events without a key all go to the
+ * first worker. Worker queues are bounded, which throttles the reader to the pace of the slowest
+ * worker. The first listener failure aborts the replay.
+ */
+@Slf4j
+public class ParallelReplay implements ReplayHandle {
+
+    private static final EventEntity END_OF_REPLAY = new EventEntity();
+
+    private final ReplayPartitionKey partitionKey;
+    private final EventContext context;
+    private final EventListener listener;
+    private final List<BlockingQueue<EventEntity>> queues = new ArrayList<>();
+
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final AtomicLong eventsRead = new AtomicLong();
+    private final LongAdder eventsDelivered = new LongAdder();
+    private volatile boolean readComplete = false;
+    private volatile boolean aborted = false;
+
+    public ParallelReplay(ReplayPartitionKey partitionKey, int parallelism, int queueCapacity,
+                          EventContext context, EventListener listener) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+
+        this.partitionKey = partitionKey;
+        this.context = context;
+        this.listener = listener;
+
+        for (int i = 0; i < parallelism; i++) {
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+        }
+    }
+
+    /**
+     * Starts the reader and the workers.
+     *
+     * @param source feeds the events of the range, in id order, to the given consumer
+     * @return this replay as a handle
+     */
+    public ReplayHandle start(Consumer<Consumer<EventEntity>> source) {
+        List<CompletableFuture<Void>> stages = new ArrayList<>();
+
+        for (int i = 0; i < queues.size(); i++) {
+            BlockingQueue<EventEntity> queue = queues.get(i);
+            CompletableFuture<Void> worker = new CompletableFuture<>();
+            startThread("event-replay-worker-" + i, () -> work(queue, worker));
+            stages.add(worker);
+        }
+
+        CompletableFuture<Void> reader = new CompletableFuture<>();
+        startThread("event-replay-reader", () -> read(source, reader));
+        stages.add(reader);
+
+        CompletableFuture.allOf(stages.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                completion.complete(null);
+            } else {
+                completion.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure);
+            }
+        });
+
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    @Override
+    public long getEventsRead() {
+        return eventsRead.get();
+    }
+
+    @Override
+    public long getEventsDelivered() {
+        return eventsDelivered.sum();
+    }
+
+    @Override
+    public boolean isReadComplete() {
+        return readComplete;
+    }
+
+    private void read(Consumer<Consumer<EventEntity>> source, CompletableFuture<Void> reader) {
+        try {
+            source.accept(event -> {
+                if (aborted) {
+                    throw new ReplayAbortedException();
+                }
+                eventsRead.incrementAndGet();
+                put(queues.get(partitionOf(event)), event);
+            });
+            readComplete = true;
+            reader.complete(null);
+        } catch (ReplayAbortedException e) {
+            // Either a worker failed and reports it, or the reader itself was interrupted
+            if (aborted) {
+                reader.complete(null);
+            } else {
+                aborted = true;
+                reader.completeExceptionally(new InterruptedException("Parallel replay reader was interrupted"));
+            }
+        } catch (Throwable e) {
+            log.error("Parallel replay failed while reading events", e);
+            aborted = true;
+            reader.completeExceptionally(e);
+        } finally {
+            queues.forEach(queue -> put(queue, END_OF_REPLAY));
+        }
+    }
+
+    private void work(BlockingQueue<EventEntity> queue, CompletableFuture<Void> worker) {
+        Throwable failure = null;
+
+        try {
+            EventEntity event;
+            while ((event = queue.take()) != END_OF_REPLAY) {
+                // After a failure, keep draining so the reader is never blocked on a full queue
+                if (aborted) {
+                    continue;
+                }
+
+                try {
+                    listener.onEvent(context, event);
+                    eventsDelivered.increment();
+                } catch (Throwable e) {
+                    log.error("Parallel replay listener failed on event {}", event.getId(), e);
+                    aborted = true;
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            aborted = true;
+            failure = e;
+        }
+
+        if (failure != null) {
+            worker.completeExceptionally(failure);
+        } else {
+            worker.complete(null);
+        }
+    }
+
+    private int partitionOf(EventEntity event) {
+        String key = partitionKey.keyOf(event);
+        return key == null ? 0 : Math.floorMod(key.hashCode(), queues.size());
+    }
+
+    private static void put(BlockingQueue<EventEntity> queue, EventEntity event) {
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReplayAbortedException();
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static class ReplayAbortedException extends RuntimeException {
+        ReplayAbortedException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package tw.yukina.thinkorbit.service.event.retention;
+
+import jakarta.persistence.*;
+import lombok.*;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.time.Instant;
+
+/**
+ * Number of events of one type, source and tier that occurred within a time bucket and were
+ * deleted by retention. There is one row per bucket, which {@link RetentionService} keeps unique
+ * with an index treating null keys as equal.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class EventRollupEntity {
+    public static final String ID_SEQUENCE = "event_rollup_entity_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
+    private Long id;
+
+    private String type;
+
+    private String source;
+
+    @Enumerated(EnumType.STRING)
+    private SemanticTier semanticTier;
+
+    private Instant bucketStart;
+
+    /**
+     * End of the bucket, exclusive.
+     */
+    private Instant bucketEnd;
+
+    private long eventCount;
+}
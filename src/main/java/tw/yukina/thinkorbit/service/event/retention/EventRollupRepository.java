@@ -0,0 +1,12 @@
+package tw.yukina.thinkorbit.service.event.retention;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface EventRollupRepository extends JpaRepository<EventRollupEntity, Long> {
+    List<EventRollupEntity> findByTypeAndBucketStartGreaterThanEqualOrderByBucketStart(String type, Instant from);
+}
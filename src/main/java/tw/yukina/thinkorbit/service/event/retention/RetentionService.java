@@ -0,0 +1,311 @@
+package tw.yukina.thinkorbit.service.event.retention;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.idempotency.IdempotencyKeysReleased;
+import tw.yukina.thinkorbit.service.event.store.PooledIdAllocator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes events past the age their retention policy allows, optionally rolling them up into
+ * per-type, per-source counts first.
+ * <p>
+ * Retention runs in the background in small batches, each one a short transaction that deletes
+ * the oldest expired rows and returns them for the rollup. Rows locked by another transaction
+ * are skipped and picked up by a later run, so retention never waits on live publishing.
+ * <p>
+ * The idempotency keys of deleted events are released with them and announced with an
+ * {@link IdempotencyKeysReleased} event once the batch commits.
+ * <p>
+ * Deleted events are gone for replays too: a snapshot participant whose events may expire needs
+ * snapshots to be restorable.
+ */
+@Slf4j
+@Service
+@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(name = "event-bus.store.type", havingValue = "jdbc", matchIfMissing = true)
+public class RetentionService implements ApplicationRunner {
+
+    private static final String ROLLUP_INDEX = "event_rollup_entity_bucket_idx";
+
+    // Concurrent batches and nodes adding to the same bucket serialize on its row instead of
+    // inserting it twice
+    private static final String ROLLUP_UPSERT_SQL = "insert into event_rollup_entity "
+            + "(id, type, source, semantic_tier, bucket_start, bucket_end, event_count) values (?, ?, ?, ?, ?, ?, ?) "
+            + "on conflict (type, source, semantic_tier, bucket_start, bucket_end) "
+            + "do update set event_count = event_rollup_entity.event_count + excluded.event_count";
+    private static final Comparator<RollupKey> ROLLUP_ORDER = Comparator
+            .comparing(RollupKey::type, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(RollupKey::source, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(RollupKey::tier, Comparator.nullsFirst(Comparator.<SemanticTier>naturalOrder()))
+            .thenComparing(RollupKey::bucketStart);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PooledIdAllocator rollupIdAllocator;
+    private final EventBusConfiguration.Retention configuration;
+    private final List<ExpiringPolicy> policies;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running = true;
+
+    public RetentionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            ApplicationEventPublisher eventPublisher, EventBusConfiguration configuration) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.rollupIdAllocator = new PooledIdAllocator(jdbcTemplate,
+                EventRollupEntity.ID_SEQUENCE, EventRollupEntity.ID_ALLOCATION_SIZE);
+        this.configuration = configuration.getRetention();
+        this.policies = resolve(this.configuration.getPolicies());
+    }
+
+    /**
+     * Creates the unique index rollups are added up on, merging the duplicate rows that rollups
+     * written before it existed may have left. Its keys may be null and must still be unique, which
+     * takes PostgreSQL 15 or later.
+     */
+    @PostConstruct
+    void createIndexes() {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class,
+                    ROLLUP_INDEX))) {
+                return;
+            }
+
+            int merged = jdbcTemplate.update("update event_rollup_entity r set event_count = d.total from ("
+                    + "select min(id) as id, sum(event_count) as total from event_rollup_entity"
+                    + " group by type, source, semantic_tier, bucket_start, bucket_end having count(*) > 1) d"
+                    + " where r.id = d.id");
+            if (merged > 0) {
+                jdbcTemplate.update("delete from event_rollup_entity r where exists (select 1 from event_rollup_entity o"
+                        + " where o.id < r.id and o.type is not distinct from r.type and o.source is not distinct from r.source"
+                        + " and o.semantic_tier is not distinct from r.semantic_tier and o.bucket_start = r.bucket_start"
+                        + " and o.bucket_end = r.bucket_end)");
+                log.info("Merged the duplicate rows of {} rollup buckets", merged);
+            }
+            jdbcTemplate.execute("create unique index " + ROLLUP_INDEX + " on event_rollup_entity"
+                    + " (type, source, semantic_tier, bucket_start, bucket_end) nulls not distinct");
+        });
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!configuration.isEnabled() || policies.isEmpty()) {
+            return;
+        }
+
+        long intervalMillis = configuration.getInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::expireAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deletes every expired event, one batch at a time.
+     *
+     * @return the number of events deleted
+     */
+    public synchronized long expireAll() {
+        Instant now = Instant.now();
+        long total = 0;
+
+        for (ExpiringPolicy policy : policies) {
+            try {
+                long deleted = expire(policy, now.minus(policy.policy().getMaxAge()));
+                if (deleted > 0) {
+                    log.info("Retention deleted {} events of {}", deleted, policy);
+                }
+                total += deleted;
+            } catch (RuntimeException e) {
+                log.error("Retention failed for {}", policy, e);
+            }
+        }
+
+        return total;
+    }
+
+    private long expire(ExpiringPolicy policy, Instant cutoff) {
+        int batchSize = Math.max(1, configuration.getBatchSize());
+        long total = 0;
+
+        while (running) {
+            List<String> releasedKeys = new ArrayList<>();
+            Integer deleted = transactionTemplate.execute(status -> deleteBatch(policy, cutoff, batchSize, releasedKeys));
+            if (!releasedKeys.isEmpty()) {
+                eventPublisher.publishEvent(new IdempotencyKeysReleased(releasedKeys));
+            }
+            total += deleted != null ? deleted : 0;
+            if (deleted == null || deleted < batchSize) {
+                break;
+            }
+        }
+
+        return total;
+    }
+
+    private int deleteBatch(ExpiringPolicy policy, Instant cutoff, int batchSize, List<String> releasedKeys) {
+        List<Object> args = new ArrayList<>();
+        args.add(OffsetDateTime.ofInstant(cutoff, ZoneOffset.UTC));
+        args.addAll(policy.args());
+        args.add(batchSize);
+
+        // The idempotency keys of deleted events are released with them, so they can be used again
+        String sql = "with deleted as (delete from event_entity where id in (select id from event_entity where occurred_at < ?"
+                + policy.where()
+                + " order by id limit ? for update skip locked)"
+                + " returning id, type, source, semantic_tier, occurred_at, idempotency_key),"
+                + " released as (delete from event_idempotency_key where (idempotency_key, event_id) in"
+                + " (select idempotency_key, id from deleted where idempotency_key is not null))"
+                + " select type, source, semantic_tier, occurred_at, idempotency_key from deleted";
+
+        Map<RollupKey, Long> counts = new HashMap<>();
+        Duration bucketWidth = policy.policy().getRollupInterval();
+        List<Integer> deleted = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            String idempotencyKey = rs.getString("idempotency_key");
+            if (idempotencyKey != null) {
+                releasedKeys.add(idempotencyKey);
+            }
+            if (policy.policy().isRollup()) {
+                String tier = rs.getString("semantic_tier");
+                Instant occurredAt = rs.getObject("occurred_at", OffsetDateTime.class).toInstant();
+                RollupKey key = new RollupKey(rs.getString("type"), rs.getString("source"),
+                        tier != null ? SemanticTier.valueOf(tier) : null, bucketStart(occurredAt, bucketWidth));
+                counts.merge(key, 1L, Long::sum);
+            }
+            return rowNum;
+        }, args.toArray());
+
+        // In a fixed order, so concurrent batches lock shared buckets without deadlocking
+        counts.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(ROLLUP_ORDER))
+                .forEach(entry -> addToRollup(entry.getKey(), bucketWidth, entry.getValue()));
+        return deleted.size();
+    }
+
+    private void addToRollup(RollupKey key, Duration bucketWidth, long count) {
+        OffsetDateTime bucketStart = OffsetDateTime.ofInstant(key.bucketStart(), ZoneOffset.UTC);
+        OffsetDateTime bucketEnd = OffsetDateTime.ofInstant(key.bucketStart().plus(bucketWidth), ZoneOffset.UTC);
+        String tier = key.tier() != null ? key.tier().name() : null;
+
+        jdbcTemplate.update(ROLLUP_UPSERT_SQL, rollupIdAllocator.nextId(), key.type(), key.source(), tier,
+                bucketStart, bucketEnd, count);
+    }
+
+    private static Instant bucketStart(Instant occurredAt, Duration bucketWidth) {
+        long widthMillis = Math.max(1, bucketWidth.toMillis());
+        return Instant.ofEpochMilli(Math.floorDiv(occurredAt.toEpochMilli(), widthMillis) * widthMillis);
+    }
+
+    /**
+     * Turns the configured policies into SQL predicates. Each expiring policy excludes the events
+     * that a more specific policy overlapping it claims, whether that policy expires them or
+     * keeps them forever.
+     */
+    private static List<ExpiringPolicy> resolve(List<EventBusConfiguration.RetentionPolicy> configured) {
+        List<EventBusConfiguration.RetentionPolicy> policies = new ArrayList<>();
+        for (EventBusConfiguration.RetentionPolicy policy : configured) {
+            boolean duplicate = policies.stream().anyMatch(existing ->
+                    Objects.equals(existing.getType(), policy.getType()) && existing.getTier() == policy.getTier());
+            if (duplicate) {
+                log.warn("Ignoring duplicate retention policy for type {} and tier {}", policy.getType(), policy.getTier());
+            } else {
+                policies.add(policy);
+            }
+        }
+        policies.sort(Comparator.comparingInt(RetentionService::specificity).reversed());
+
+        List<ExpiringPolicy> expiring = new ArrayList<>();
+        for (EventBusConfiguration.RetentionPolicy policy : policies) {
+            if (policy.getMaxAge() == null) {
+                continue;
+            }
+
+            StringBuilder where = new StringBuilder();
+            List<Object> args = new ArrayList<>();
+            String match = match(policy, args);
+            if (!match.isEmpty()) {
+                where.append(" and ").append(match);
+            }
+
+            for (EventBusConfiguration.RetentionPolicy other : policies) {
+                if (specificity(other) > specificity(policy) && overlaps(policy, other)) {
+                    where.append(" and not coalesce(").append(match(other, args)).append(", false)");
+                }
+            }
+
+            expiring.add(new ExpiringPolicy(policy, where.toString(), args));
+        }
+        return List.copyOf(expiring);
+    }
+
+    private static String match(EventBusConfiguration.RetentionPolicy policy, List<Object> args) {
+        List<String> conditions = new ArrayList<>();
+        if (policy.getType() != null) {
+            conditions.add("type = ?");
+            args.add(policy.getType());
+        }
+        if (policy.getTier() != null) {
+            conditions.add("semantic_tier = ?");
+            args.add(policy.getTier().name());
+        }
+        return String.join(" and ", conditions);
+    }
+
+    private static int specificity(EventBusConfiguration.RetentionPolicy policy) {
+        return (policy.getType() != null ? 2 : 0) + (policy.getTier() != null ? 1 : 0);
+    }
+
+    private static boolean overlaps(EventBusConfiguration.RetentionPolicy a, EventBusConfiguration.RetentionPolicy b) {
+        boolean typesOverlap = a.getType() == null || b.getType() == null || a.getType().equals(b.getType());
+        boolean tiersOverlap = a.getTier() == null || b.getTier() == null || a.getTier() == b.getTier();
+        return typesOverlap && tiersOverlap;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private record ExpiringPolicy(EventBusConfiguration.RetentionPolicy policy, String where, List<Object> args) {
+        @Override
+        public String toString() {
+            return "policy(type=" + policy.getType() + ", tier=" + policy.getTier() + ", maxAge=" + policy.getMaxAge() + ")";
+        }
+    }
+
+    private record RollupKey(String type, String source, SemanticTier tier, Instant bucketStart) {
+    }
+}
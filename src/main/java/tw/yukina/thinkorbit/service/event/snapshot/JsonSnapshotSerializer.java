@@ -0,0 +1,42 @@
+package tw.yukina.thinkorbit.service.event.snapshot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Snapshot serializer that stores the state as JSON.
+ */
+public class JsonSnapshotSerializer<T> implements SnapshotSerializer<T> {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private final JavaType stateType;
+
+    public JsonSnapshotSerializer(Class<T> stateType) {
+        this.stateType = objectMapper.constructType(stateType);
+    }
+
+    public JsonSnapshotSerializer(TypeReference<T> stateType) {
+        this.stateType = objectMapper.constructType(stateType);
+    }
+
+    @Override
+    public String serialize(T state) {
+        try {
+            return objectMapper.writeValueAsString(state);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize snapshot", e);
+        }
+    }
+
+    @Override
+    public T deserialize(String data) {
+        try {
+            return objectMapper.readValue(data, stateType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not deserialize snapshot", e);
+        }
+    }
+}
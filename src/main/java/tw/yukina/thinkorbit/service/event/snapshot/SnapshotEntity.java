@@ -0,0 +1,31 @@
+package tw.yukina.thinkorbit.service.event.snapshot;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString(exclude = "data")
+public class SnapshotEntity {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    private String name;
+
+    /**
+     * Id of the last event applied to the state, the point the tail replay resumes after.
+     */
+    private Long lastEventId;
+
+    private Instant createdAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String data;
+}
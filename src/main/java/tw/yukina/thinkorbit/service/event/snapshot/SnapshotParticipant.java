@@ -0,0 +1,47 @@
+package tw.yukina.thinkorbit.service.event.snapshot;
+
+import tw.yukina.thinkorbit.service.event.EventFilter;
+import tw.yukina.thinkorbit.service.event.entity.EventContext;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+/**
+ * A stateful service whose in-memory state is periodically snapshotted.
+ * <p>
+ * At startup the latest snapshot is restored and only the events after it are replayed
+ * through {@link #applyEvent}, so startup time does not grow with the event log. Live events are
+ * then delivered through it as well, synchronously; a participant does not subscribe itself.
+ */
+public interface SnapshotParticipant<T> {
+    /**
+     * @return a stable name identifying this participant's snapshots
+     */
+    String getSnapshotName();
+
+    SnapshotSerializer<T> getSnapshotSerializer();
+
+    /**
+     * Captures the current state and the position replay resumes after. Every event up to the
+     * position must be reflected in the state, which ids assigned out of dispatch order rule out
+     * for the highest applied id; {@link tw.yukina.thinkorbit.service.event.EventBus#dispatchedWatermark}
+     * is such a position for state kept by synchronous listeners. The state may reflect later
+     * events too.
+     */
+    SnapshotState<T> captureSnapshot();
+
+    /**
+     * Replaces the current state with a restored one.
+     */
+    void restoreSnapshot(T state);
+
+    /**
+     * @return the filter selecting the events that rebuild this participant's state; an
+     * {@link tw.yukina.thinkorbit.service.event.EventCriteria} is applied by the event store
+     */
+    EventFilter getReplayFilter();
+
+    /**
+     * Applies a replayed or live event to the state. Events after the snapshot position may already be
+     * reflected in it, so applying an event again must leave the state unchanged.
+     */
+    void applyEvent(EventContext context, EventEntity event);
+}
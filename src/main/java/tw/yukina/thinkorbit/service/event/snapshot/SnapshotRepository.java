@@ -0,0 +1,13 @@
+package tw.yukina.thinkorbit.service.event.snapshot;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SnapshotRepository extends JpaRepository<SnapshotEntity, Long> {
+    Optional<SnapshotEntity> findFirstByNameOrderByLastEventIdDescIdDesc(String name);
+    List<SnapshotEntity> findByNameOrderByLastEventIdDescIdDesc(String name);
+}
@@ -0,0 +1,10 @@
+package tw.yukina.thinkorbit.service.event.snapshot;
+
+/**
+ * Converts the state of a {@link SnapshotParticipant} to and from its stored form.
+ */
+public interface SnapshotSerializer<T> {
+    String serialize(T state);
+
+    T deserialize(String data);
+}
@@ -0,0 +1,166 @@
+package tw.yukina.thinkorbit.service.event.snapshot;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.DeliveryMode;
+import tw.yukina.thinkorbit.service.event.EventBus;
+import tw.yukina.thinkorbit.service.event.OverflowPolicy;
+import tw.yukina.thinkorbit.service.event.ReplayLevel;
+import tw.yukina.thinkorbit.service.event.ReplayRange;
+import tw.yukina.thinkorbit.service.event.SubscriptionOptions;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores {@link SnapshotParticipant}s at startup, keeps them subscribed to their events, and
+ * snapshots them periodically.
+ * <p>
+ * Runs before the other application runners, so participants are restored before listeners
+ * registered by {@link tw.yukina.thinkorbit.service.event.ListenerScanner} start publishing.
+ * <p>
+ * A snapshot position is the bus's dispatched watermark, which only covers events published on
+ * this node. Events from cluster peers may be dispatched out of id order below it, so while the
+ * cluster is enabled no snapshots are taken and participants are rebuilt by replaying every event.
+ */
+@Slf4j
+@Service
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SnapshotService implements ApplicationRunner {
+
+    private static final String SUBSCRIPTION_PREFIX = "snapshot:";
+
+    private final SnapshotRepository snapshotRepository;
+    private final EventBus eventBus;
+    private final List<SnapshotParticipant<?>> participants;
+    private final EventBusConfiguration.Snapshot configuration;
+    private final boolean snapshotsEnabled;
+
+    private final Map<String, Long> lastSnapshotEventIds = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public SnapshotService(SnapshotRepository snapshotRepository, EventBus eventBus,
+                           List<SnapshotParticipant<?>> participants, EventBusConfiguration configuration) {
+        this.snapshotRepository = snapshotRepository;
+        this.eventBus = eventBus;
+        this.participants = participants;
+        this.configuration = configuration.getSnapshot();
+        this.snapshotsEnabled = this.configuration.isEnabled() && !configuration.getCluster().isEnabled();
+
+        if (this.configuration.isEnabled() && !snapshotsEnabled) {
+            log.warn("Snapshots are disabled while the cluster is enabled; participants replay every event at startup");
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (participants.isEmpty()) {
+            return;
+        }
+
+        for (SnapshotParticipant<?> participant : participants) {
+            restore(participant, configuration.getStartupLevel());
+        }
+
+        if (!snapshotsEnabled) {
+            return;
+        }
+        long intervalMillis = configuration.getInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Restores a participant from its latest snapshot, if snapshots are enabled, and subscribes it
+     * to its events. Unless the level is SNAPSHOT_ONLY, the events after the snapshot are replayed
+     * first, or every event if there is no snapshot; the replay hands over to live delivery
+     * without missing or repeating an event.
+     */
+    public <T> void restore(SnapshotParticipant<T> participant, ReplayLevel level) {
+        String name = participant.getSnapshotName();
+        Optional<SnapshotEntity> snapshot = snapshotsEnabled
+                ? snapshotRepository.findFirstByNameOrderByLastEventIdDescIdDesc(name)
+                : Optional.empty();
+
+        Long fromEventId = null;
+        if (snapshot.isPresent()) {
+            participant.restoreSnapshot(participant.getSnapshotSerializer().deserialize(snapshot.get().getData()));
+            lastSnapshotEventIds.put(name, snapshot.get().getLastEventId());
+            if (snapshot.get().getLastEventId() != null) {
+                fromEventId = snapshot.get().getLastEventId() + 1;
+            }
+            log.info("Restored snapshot of {} at event {}", name, snapshot.get().getLastEventId());
+        }
+
+        if (level == ReplayLevel.SNAPSHOT_ONLY) {
+            // Synchronous, so an event is applied before the watermark a snapshot is taken at passes it
+            eventBus.subscribe(participant.getReplayFilter(), participant::applyEvent,
+                    new SubscriptionOptions(SUBSCRIPTION_PREFIX + name, DeliveryMode.SYNC, 0, OverflowPolicy.BLOCK));
+            return;
+        }
+
+        ReplayRange range = new ReplayRange(fromEventId, null, level);
+        eventBus.subscribeFrom(range, participant.getReplayFilter(), participant::applyEvent);
+        log.info("Replayed events of {} after {}", name, fromEventId != null ? fromEventId - 1 : "the beginning");
+    }
+
+    /**
+     * Writes a snapshot of every participant that applied events since its last snapshot.
+     */
+    public synchronized void snapshotAll() {
+        for (SnapshotParticipant<?> participant : participants) {
+            try {
+                snapshot(participant);
+            } catch (RuntimeException e) {
+                log.error("Failed to snapshot {}", participant.getSnapshotName(), e);
+            }
+        }
+    }
+
+    private <T> void snapshot(SnapshotParticipant<T> participant) {
+        String name = participant.getSnapshotName();
+        SnapshotState<T> state = participant.captureSnapshot();
+        if (state.lastEventId() == null || state.lastEventId().equals(lastSnapshotEventIds.get(name))) {
+            return;
+        }
+
+        snapshotRepository.save(SnapshotEntity.builder()
+                .name(name)
+                .lastEventId(state.lastEventId())
+                .createdAt(Instant.now())
+                .data(participant.getSnapshotSerializer().serialize(state.state()))
+                .build());
+        lastSnapshotEventIds.put(name, state.lastEventId());
+
+        List<SnapshotEntity> snapshots = snapshotRepository.findByNameOrderByLastEventIdDescIdDesc(name);
+        if (snapshots.size() > configuration.getRetain()) {
+            snapshotRepository.deleteAll(snapshots.subList(Math.max(1, configuration.getRetain()), snapshots.size()));
+        }
+
+        log.info("Snapshotted {} at event {}", name, state.lastEventId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            snapshotAll();
+        }
+    }
+}
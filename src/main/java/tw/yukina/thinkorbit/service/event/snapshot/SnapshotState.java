@@ -0,0 +1,11 @@
+package tw.yukina.thinkorbit.service.event.snapshot;
+
+/**
+ * A captured state together with the position replay resumes after.
+ *
+ * @param lastEventId an id at or below which every event is reflected in the state, or null if
+ *                    there is none yet
+ * @param state       a copy of the state that later changes do not affect
+ */
+public record SnapshotState<T>(Long lastEventId, T state) {
+}
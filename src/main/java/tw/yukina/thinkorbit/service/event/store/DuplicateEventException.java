@@ -0,0 +1,18 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import lombok.Getter;
+
+/**
+ * Thrown by an event store that refused an event because another event already holds its
+ * idempotency key. Nothing of the refused event was written.
+ */
+@Getter
+public class DuplicateEventException extends RuntimeException {
+
+    private final String idempotencyKey;
+
+    public DuplicateEventException(String idempotencyKey) {
+        super("An event with idempotency key " + idempotencyKey + " is already stored");
+        this.idempotencyKey = idempotencyKey;
+    }
+}
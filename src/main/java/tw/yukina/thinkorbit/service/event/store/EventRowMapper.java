@@ -0,0 +1,47 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.springframework.jdbc.core.RowMapper;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.EventStrings;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+
+/**
+ * Maps rows of the event table to detached {@link EventEntity} instances.
+ * Payloads are left encoded until a listener reads them.
+ */
+public class EventRowMapper implements RowMapper<EventEntity> {
+
+    public static final String COLUMNS = "id, occurred_at, type, source, semantic_tier, trace_id, cause_id, payload_data, payload, idempotency_key, origin";
+
+    private final PayloadCodecs payloadCodecs;
+
+    public EventRowMapper(PayloadCodecs payloadCodecs) {
+        this.payloadCodecs = payloadCodecs;
+    }
+
+    @Override
+    public EventEntity mapRow(ResultSet rs, int rowNum) throws SQLException {
+        OffsetDateTime occurredAt = rs.getObject("occurred_at", OffsetDateTime.class);
+        String semanticTier = rs.getString("semantic_tier");
+
+        return EventEntity.builder()
+                .id(rs.getLong("id"))
+                .occurredAt(occurredAt != null ? occurredAt.toInstant() : null)
+                .type(EventStrings.intern(rs.getString("type")))
+                .source(EventStrings.intern(rs.getString("source")))
+                .semanticTier(semanticTier != null ? SemanticTier.valueOf(semanticTier) : null)
+                .traceId(rs.getString("trace_id"))
+                .causeId(rs.getString("cause_id"))
+                .payloadData(rs.getBytes("payload_data"))
+                .legacyPayload(rs.getString("payload"))
+                .payloadCodecs(payloadCodecs)
+                .idempotencyKey(rs.getString("idempotency_key"))
+                .origin(EventStrings.intern(rs.getString("origin")))
+                .build();
+    }
+}
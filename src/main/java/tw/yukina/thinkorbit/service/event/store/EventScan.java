@@ -0,0 +1,82 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.EventCriteria;
+import tw.yukina.thinkorbit.service.event.ReplayRange;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.time.Instant;
+
+/**
+ * Bounds of an id-ordered scan over the event log.
+ *
+ * @param afterId  only events with a higher id are read (exclusive)
+ * @param maxId    only events with this id or lower are read (inclusive)
+ * @param fromTime only events that occurred at or after this time are read, or null for no bound
+ * @param toTime   only events that occurred before this time are read, or null for no bound
+ * @param criteria only events matching these criteria are read, or null for every event
+ */
+public record EventScan(long afterId, long maxId, @Nullable Instant fromTime, @Nullable Instant toTime,
+                        @Nullable EventCriteria criteria) {
+
+    public EventScan(long afterId, long maxId, @Nullable Instant fromTime, @Nullable Instant toTime) {
+        this(afterId, maxId, fromTime, toTime, null);
+    }
+
+    public static EventScan of(ReplayRange range) {
+        return new EventScan(
+                range.getFromEventId().map(id -> id - 1).orElse(Long.MIN_VALUE),
+                range.getToEventId().orElse(Long.MAX_VALUE),
+                range.getFromTime().orElse(null),
+                range.getToTime().orElse(null));
+    }
+
+    public EventScan withAfterId(long afterId) {
+        return new EventScan(afterId, maxId, fromTime, toTime, criteria);
+    }
+
+    public EventScan withMaxId(long maxId) {
+        return new EventScan(afterId, maxId, fromTime, toTime, criteria);
+    }
+
+    public EventScan withCriteria(@Nullable EventCriteria criteria) {
+        return new EventScan(afterId, maxId, fromTime, toTime, criteria);
+    }
+
+    public boolean hasLowerIdBound() {
+        return afterId != Long.MIN_VALUE;
+    }
+
+    public boolean isEmpty() {
+        return afterId >= maxId;
+    }
+
+    /**
+     * Whether an event falls within these bounds and matches the criteria.
+     */
+    public boolean includes(EventEntity event) {
+        long id = event.getId();
+        if (id <= afterId || id > maxId) {
+            return false;
+        }
+
+        return includesTime(event.getOccurredAt()) && matches(event);
+    }
+
+    /**
+     * Whether an event matches the criteria, regardless of the bounds.
+     */
+    public boolean matches(EventEntity event) {
+        return criteria == null || criteria.matches(event);
+    }
+
+    /**
+     * Whether an occurrence time falls within the time bounds.
+     */
+    public boolean includesTime(@Nullable Instant occurredAt) {
+        if (fromTime != null && (occurredAt == null || occurredAt.isBefore(fromTime))) {
+            return false;
+        }
+        return toTime == null || (occurredAt != null && occurredAt.isBefore(toTime));
+    }
+}
@@ -0,0 +1,94 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Durable, id-ordered event log behind the event bus.
+ * <p>
+ * The backend is selected with {@code event-bus.store.type}: {@code jdbc} keeps events in the
+ * relational database, {@code journal} in memory-mapped segment files on local disk.
+ * <p>
+ * Ids are unique and increase in the order a store allocates them, but they do not follow the
+ * order in which events become visible. Transactions commit in any order, other nodes draw ids
+ * from their own blocks of the shared sequence, and the bus dispatches events in per-source
+ * order. An event with a lower id can therefore be stored or dispatched after one with a higher
+ * id, and code that resumes from an id must not assume it has seen every id below the highest one
+ * it has seen.
+ */
+public interface EventStore {
+
+    /**
+     * Stores an event, assigning its id, and returns once it is durable. Stores that support it
+     * write inside the caller's active transaction, so the event is durable once that commits.
+     */
+    EventEntity append(EventEntity event);
+
+    /**
+     * @return whether {@link #append} writes inside the caller's active transaction, so that the
+     * event only counts as stored once that commits
+     */
+    default boolean joinsTransactions() {
+        return false;
+    }
+
+    /**
+     * Stores an event without waiting. The future completes with the event, its id assigned,
+     * once it is durable. The write never joins the caller's transaction.
+     */
+    CompletableFuture<EventEntity> appendAsync(EventEntity event);
+
+    /**
+     * Passes every event within the scan bounds and matching its criteria to the consumer,
+     * in ascending id order.
+     *
+     * @return the number of events read
+     */
+    long scan(EventScan scan, Consumer<EventEntity> consumer);
+
+    /**
+     * Narrows a scan to its latest {@code count} events within its bounds. The criteria are
+     * not considered: the latest events are counted whether they match or not, and the criteria
+     * then only filter them when the narrowed scan is read.
+     */
+    EventScan latest(EventScan scan, int count);
+
+    /**
+     * @return the event with the given id, if stored
+     */
+    Optional<EventEntity> findById(long id);
+
+    /**
+     * @return the events of a trace, in ascending id order
+     */
+    List<EventEntity> findByTraceId(String traceId);
+
+    /**
+     * @return the events whose cause id is one of the given ids, in ascending id order
+     */
+    List<EventEntity> findByCauseIds(Collection<String> causeIds);
+
+    /**
+     * @return the event published with the given idempotency key, if stored
+     */
+    Optional<EventEntity> findByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Passes the idempotency keys of the events that occurred at or after the given time to the
+     * consumer, in no particular order.
+     */
+    void forEachIdempotencyKey(Instant since, Consumer<String> consumer);
+
+    /**
+     * @return the latest occurrence time in the store, or null if it is empty
+     */
+    @Nullable
+    Instant findMaxOccurredAt();
+}
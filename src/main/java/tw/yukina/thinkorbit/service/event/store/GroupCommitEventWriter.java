@@ -0,0 +1,284 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.partition.EventPartitionManager;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group-commit writer for events.
+ * <p>
+ * Every event queued while the previous batch was being written, up to the batch size, is
+ * written with one JDBC batch insert in a single transaction. A lone event is flushed at once
+ * unless {@code event-bus.group-commit.window} asks the writer to wait for more. Ids come from the
+ * entity sequence in pooled blocks and are allocated when a batch is flushed, in batch order, and
+ * every submitter's future completes once the transaction holding its event has committed.
+ * <p>
+ * Idempotency keys are reserved in the same transaction through {@link IdempotencyKeyWriter}.
+ * An event whose key is already held is left out of the batch and its future fails with a
+ * {@link DuplicateEventException}, while the rest of the batch commits.
+ * <p>
+ * Batches run in the writer's own transaction, never in the submitter's. Callers that need the
+ * event to commit or roll back with their own transaction use {@link #writeInCurrentTransaction}.
+ * <p>
+ * On Postgres, {@code reWriteBatchedInserts=true} on the JDBC URL turns each batch into
+ * multi-row inserts.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${event-bus.group-commit.enabled:true} and '${event-bus.store.type:jdbc}'.equalsIgnoreCase('jdbc')")
+public class GroupCommitEventWriter {
+
+    private static final String INSERT_SQL = "insert into event_entity "
+            + "(id, occurred_at, type, source, semantic_tier, trace_id, cause_id, payload_data, idempotency_key, origin) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PooledIdAllocator idAllocator;
+    private final IdempotencyKeyWriter idempotencyKeys;
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    /**
+     * @param partitionManager initialized first when partitioning is enabled, so the table is
+     *                         converted before anything is written to it
+     */
+    public GroupCommitEventWriter(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  EventBusConfiguration configuration,
+                                  MeterRegistry meterRegistry,
+                                  ObjectProvider<EventPartitionManager> partitionManager) {
+        partitionManager.getIfAvailable();
+        EventBusConfiguration.GroupCommit groupCommit = configuration.getGroupCommit();
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.idAllocator = new PooledIdAllocator(jdbcTemplate, EventEntity.ID_SEQUENCE, EventEntity.ID_ALLOCATION_SIZE);
+        this.idempotencyKeys = new IdempotencyKeyWriter(jdbcTemplate);
+        this.windowNanos = groupCommit.getWindow().toNanos();
+        this.maxBatchSize = Math.max(1, groupCommit.getMaxBatchSize());
+
+        this.batchSizes = DistributionSummary.builder("eventbus.persistence.batch.size")
+                .description("Number of events written per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("eventbus.persistence.batch.flush")
+                .description("Time spent writing and committing one group commit batch")
+                .register(meterRegistry);
+
+        this.writerThread = new Thread(this::run, "event-group-commit");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues an event for the next batch. The future completes with the event, its id assigned,
+     * once the batch is committed.
+     */
+    public CompletableFuture<EventEntity> submit(EventEntity event) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Group commit writer is stopped"));
+        }
+
+        CompletableFuture<EventEntity> future = new CompletableFuture<>();
+        queue.add(new PendingWrite(event, future));
+        return future;
+    }
+
+    /**
+     * Writes an event on the connection of the caller's transaction, bypassing the batch, so the
+     * event commits or rolls back with that transaction.
+     *
+     * @throws DuplicateEventException if another event holds the event's idempotency key
+     */
+    public EventEntity writeInCurrentTransaction(EventEntity event) {
+        if (event.getId() == null) {
+            event.setId(idAllocator.nextId());
+        }
+        idempotencyKeys.reserveOrThrow(event);
+        jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, event));
+        return event;
+    }
+
+    /**
+     * Queues an event and waits until its batch is committed.
+     */
+    public EventEntity write(EventEntity event) {
+        try {
+            return submit(event).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writerThread.isAlive()) {
+            log.warn("Group commit writer did not drain within {} ms", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<PendingWrite> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + windowNanos;
+
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            if (batch.size() >= maxBatchSize) {
+                return;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+
+            PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        batchSizes.record(batch.size());
+
+        Set<PendingWrite> duplicates = new HashSet<>();
+        try {
+            for (PendingWrite write : batch) {
+                if (write.event().getId() == null) {
+                    write.event().setId(idAllocator.nextId());
+                }
+            }
+
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> {
+                duplicates.clear();
+                List<PendingWrite> inserts = withoutDuplicateKeys(batch, duplicates);
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, inserts, inserts.size(), (ps, write) -> bind(ps, write.event()));
+                }
+            }));
+        } catch (RuntimeException e) {
+            log.error("Failed to write batch of {} events", batch.size(), e);
+            batch.forEach(write -> write.future().completeExceptionally(e));
+            return;
+        }
+
+        for (PendingWrite write : batch) {
+            if (duplicates.contains(write)) {
+                write.future().completeExceptionally(new DuplicateEventException(write.event().getIdempotencyKey()));
+            } else {
+                write.future().complete(write.event());
+            }
+        }
+    }
+
+    /**
+     * Reserves the idempotency keys of the batch and returns the writes that got theirs or have
+     * none, adding the others to the duplicates.
+     */
+    private List<PendingWrite> withoutDuplicateKeys(List<PendingWrite> batch, Set<PendingWrite> duplicates) {
+        Set<Long> reserved = idempotencyKeys.reserve(batch.stream().map(PendingWrite::event).toList());
+
+        List<PendingWrite> inserts = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            EventEntity event = write.event();
+            if (event.getIdempotencyKey() != null && !reserved.contains(event.getId())) {
+                duplicates.add(write);
+            } else {
+                inserts.add(write);
+            }
+        }
+        return inserts;
+    }
+
+    private void bind(PreparedStatement ps, EventEntity event) throws SQLException {
+        ps.setLong(1, event.getId());
+        if (event.getOccurredAt() != null) {
+            ps.setObject(2, OffsetDateTime.ofInstant(event.getOccurredAt(), ZoneOffset.UTC));
+        } else {
+            ps.setNull(2, Types.TIMESTAMP_WITH_TIMEZONE);
+        }
+        ps.setString(3, event.getType());
+        ps.setString(4, event.getSource());
+        ps.setString(5, event.getSemanticTier() != null ? event.getSemanticTier().name() : null);
+        ps.setString(6, event.traceId());
+        ps.setString(7, event.causeId());
+        ps.setBytes(8, event.getPayloadData());
+        ps.setString(9, event.getIdempotencyKey());
+        ps.setString(10, event.getOrigin());
+    }
+
+    private record PendingWrite(EventEntity event, CompletableFuture<EventEntity> future) {
+    }
+}
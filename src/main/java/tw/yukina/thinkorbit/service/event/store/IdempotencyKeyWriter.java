@@ -0,0 +1,88 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reserves idempotency keys in the {@code event_idempotency_key} table on the current
+ * connection, so a reservation commits or rolls back with the events written alongside it.
+ * <p>
+ * All keys of a batch are reserved with one statement that skips those already taken and
+ * returns the events that got theirs, so a duplicate only fails its own event rather than the
+ * whole batch. Of two events in one batch sharing a key, the first gets it.
+ */
+class IdempotencyKeyWriter {
+
+    private static final String RESERVE_SQL = "insert into event_idempotency_key (idempotency_key, event_id, occurred_at) "
+            + "select * from unnest(?::varchar[], ?::bigint[], ?::timestamptz[]) "
+            + "on conflict (idempotency_key) do nothing returning event_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    IdempotencyKeyWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Reserves the keys of the keyed events, whose ids must be assigned.
+     *
+     * @return the ids of the events that now hold their key
+     */
+    Set<Long> reserve(Collection<EventEntity> events) {
+        List<EventEntity> keyed = new ArrayList<>();
+        for (EventEntity event : events) {
+            if (event.getIdempotencyKey() != null) {
+                keyed.add(event);
+            }
+        }
+        if (keyed.isEmpty()) {
+            return Set.of();
+        }
+
+        String[] keys = new String[keyed.size()];
+        Long[] ids = new Long[keyed.size()];
+        Timestamp[] occurredAt = new Timestamp[keyed.size()];
+        for (int i = 0; i < keyed.size(); i++) {
+            EventEntity event = keyed.get(i);
+            keys[i] = event.getIdempotencyKey();
+            ids[i] = event.getId();
+            occurredAt[i] = event.getOccurredAt() != null ? Timestamp.from(event.getOccurredAt()) : null;
+        }
+
+        return new HashSet<>(jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(RESERVE_SQL);
+            ps.setArray(1, connection.createArrayOf("varchar", keys));
+            ps.setArray(2, connection.createArrayOf("bigint", ids));
+            ps.setArray(3, connection.createArrayOf("timestamptz", occurredAt));
+            return ps;
+        }, (rs, rowNum) -> rs.getLong(1)));
+    }
+
+    /**
+     * Reserves the key of a single event.
+     *
+     * @return false if another event holds it
+     */
+    boolean reserve(EventEntity event) {
+        return event.getIdempotencyKey() == null || !reserve(List.of(event)).isEmpty();
+    }
+
+    /**
+     * Reserves the key of a single event.
+     *
+     * @throws DuplicateEventException if another event holds it
+     */
+    void reserveOrThrow(EventEntity event) {
+        if (!reserve(event)) {
+            throw new DuplicateEventException(event.getIdempotencyKey());
+        }
+    }
+}
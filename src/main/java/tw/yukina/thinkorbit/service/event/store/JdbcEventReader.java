@@ -0,0 +1,190 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.EventCriteria;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Reads the event log in id order with a keyset cursor.
+ * <p>
+ * Each page is a short query of the form {@code id > lastSeenId order by id limit pageSize},
+ * so deep scans cost the same per page as shallow ones, no count query is issued and the
+ * mapped events are detached rows that never enter a persistence context. Memory use is
+ * bounded by one page, whatever the size of the range.
+ * <p>
+ * The type, source, tier and trace criteria of a scan become part of the {@code where} clause,
+ * so rows they reject are never sent. Payload conditions are checked on the mapped events.
+ */
+@Component
+public class JdbcEventReader {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EventRowMapper rowMapper;
+    private final int pageSize;
+
+    public JdbcEventReader(JdbcTemplate jdbcTemplate, PayloadCodecs payloadCodecs, EventBusConfiguration configuration) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rowMapper = new EventRowMapper(payloadCodecs);
+        this.pageSize = Math.max(1, configuration.getReplay().getPageSize());
+    }
+
+    /**
+     * Passes every event within the scan bounds to the consumer, in ascending id order.
+     * The consumer runs between page queries, outside any transaction.
+     *
+     * @return the number of events read
+     */
+    public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+        long afterId = scan.afterId();
+        long count = 0;
+
+        while (afterId < scan.maxId()) {
+            List<Object> args = new ArrayList<>();
+            String sql = "select " + EventRowMapper.COLUMNS + " from event_entity"
+                    + where(scan.withAfterId(afterId), args)
+                    + " order by id limit ?";
+            args.add(pageSize);
+
+            List<EventEntity> page = jdbcTemplate.query(sql, rowMapper, args.toArray());
+            for (EventEntity event : page) {
+                if (payloadMatches(scan, event)) {
+                    consumer.accept(event);
+                }
+            }
+
+            count += page.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+
+        return count;
+    }
+
+    /**
+     * Narrows a scan to its latest {@code count} events with a reverse index scan,
+     * so the forward scan that follows still delivers them in ascending order.
+     */
+    public EventScan latest(EventScan scan, int count) {
+        if (count <= 0) {
+            return scan.withAfterId(scan.maxId());
+        }
+
+        List<Object> args = new ArrayList<>();
+        String sql = "select id from event_entity"
+                + where(scan.withCriteria(null), args)
+                + " order by id desc offset ? limit 1";
+        args.add(count - 1);
+
+        List<Long> ids = jdbcTemplate.queryForList(sql, Long.class, args.toArray());
+        return ids.isEmpty() ? scan : scan.withAfterId(ids.get(0) - 1);
+    }
+
+    public Optional<EventEntity> findById(long id) {
+        List<EventEntity> events = jdbcTemplate.query("select " + EventRowMapper.COLUMNS
+                + " from event_entity where id = ?", rowMapper, id);
+        return events.stream().findFirst();
+    }
+
+    /**
+     * Reads the events of a trace through the {@code trace_id} index.
+     */
+    public List<EventEntity> findByTraceId(String traceId) {
+        return jdbcTemplate.query("select " + EventRowMapper.COLUMNS
+                + " from event_entity where trace_id = ? order by id", rowMapper, traceId);
+    }
+
+    /**
+     * Reads the events caused by any of the given ids through the {@code cause_id} index,
+     * in one query however many ids are given.
+     */
+    public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+        if (causeIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("select " + EventRowMapper.COLUMNS
+                        + " from event_entity where cause_id = any(?) order by id", rowMapper,
+                (Object) causeIds.toArray(String[]::new));
+    }
+
+    public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+        List<EventEntity> events = jdbcTemplate.query("select " + EventRowMapper.COLUMNS
+                + " from event_entity where idempotency_key = ? order by id limit 1", rowMapper, idempotencyKey);
+        return events.stream().findFirst();
+    }
+
+    /**
+     * Reads only the key column, so no event is mapped.
+     */
+    public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("select idempotency_key from event_entity"
+                    + " where occurred_at >= ? and idempotency_key is not null");
+            statement.setObject(1, OffsetDateTime.ofInstant(since, ZoneOffset.UTC));
+            statement.setFetchSize(pageSize);
+            return statement;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+    }
+
+    private static String where(EventScan scan, List<Object> args) {
+        StringBuilder sql = new StringBuilder(" where id > ? and id <= ?");
+        args.add(scan.afterId());
+        args.add(scan.maxId());
+
+        if (scan.fromTime() != null) {
+            sql.append(" and occurred_at >= ?");
+            args.add(OffsetDateTime.ofInstant(scan.fromTime(), ZoneOffset.UTC));
+        }
+        if (scan.toTime() != null) {
+            sql.append(" and occurred_at < ?");
+            args.add(OffsetDateTime.ofInstant(scan.toTime(), ZoneOffset.UTC));
+        }
+
+        EventCriteria criteria = scan.criteria();
+        if (criteria != null) {
+            in(sql, "type", criteria.getTypes(), args);
+            in(sql, "source", criteria.getSources(), args);
+            in(sql, "semantic_tier", criteria.getTiers().stream().map(Enum::name).toList(), args);
+            if (criteria.getTraceId() != null) {
+                sql.append(" and trace_id = ?");
+                args.add(criteria.getTraceId());
+            }
+        }
+
+        return sql.toString();
+    }
+
+    private static void in(StringBuilder sql, String column, Collection<String> values, List<Object> args) {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        sql.append(" and ").append(column).append(" in (");
+        String separator = "";
+        for (String value : values) {
+            sql.append(separator).append('?');
+            separator = ", ";
+            args.add(value);
+        }
+        sql.append(')');
+    }
+
+    private static boolean payloadMatches(EventScan scan, EventEntity event) {
+        return scan.criteria() == null || scan.criteria().getPayloadConditions().isEmpty() || scan.matches(event);
+    }
+}
@@ -0,0 +1,155 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.EventRepository;
+import tw.yukina.thinkorbit.service.event.store.partition.EventPartitionManager;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Event store on the relational database: writes go through the group-commit writer when it is
+ * enabled and through {@link EventRepository} otherwise, reads through {@link JdbcEventReader}.
+ * A synchronous append made inside an active transaction is written on that transaction's
+ * connection instead of being batched, so it commits or rolls back with the caller.
+ * <p>
+ * Either way idempotency keys are reserved in the {@code event_idempotency_key} table in the
+ * transaction writing the event, and an event whose key is taken is refused with a
+ * {@link DuplicateEventException}.
+ */
+@Component
+@ConditionalOnProperty(name = "event-bus.store.type", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcEventStore implements EventStore {
+
+    private final EventRepository eventRepository;
+    private final GroupCommitEventWriter groupCommitWriter;
+    private final JdbcEventReader eventReader;
+    private final PayloadCodecs payloadCodecs;
+    private final IdempotencyKeyWriter idempotencyKeys;
+    private final TransactionTemplate transactionTemplate;
+
+    public JdbcEventStore(EventRepository eventRepository,
+                          ObjectProvider<GroupCommitEventWriter> groupCommitWriter,
+                          JdbcEventReader eventReader,
+                          PayloadCodecs payloadCodecs,
+                          JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          ObjectProvider<EventPartitionManager> partitionManager) {
+        // The table must be converted before anything is written to it
+        partitionManager.getIfAvailable();
+        this.eventRepository = eventRepository;
+        this.groupCommitWriter = groupCommitWriter.getIfAvailable();
+        this.eventReader = eventReader;
+        this.payloadCodecs = payloadCodecs;
+        this.idempotencyKeys = new IdempotencyKeyWriter(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public EventEntity append(EventEntity event) {
+        event.encodePayload(payloadCodecs);
+        if (groupCommitWriter == null) {
+            return save(event);
+        }
+
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                ? groupCommitWriter.writeInCurrentTransaction(event)
+                : groupCommitWriter.write(event);
+    }
+
+    @Override
+    public boolean joinsTransactions() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+        try {
+            event.encodePayload(payloadCodecs);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (groupCommitWriter == null) {
+            try {
+                return CompletableFuture.completedFuture(save(event));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        return groupCommitWriter.submit(event);
+    }
+
+    /**
+     * Saves the event through the repository, joining the caller's transaction if there is one.
+     * A duplicate is taken back out of the persistence context instead of failing the
+     * transaction, so a caller's transaction stays usable.
+     */
+    private EventEntity save(EventEntity event) {
+        EventEntity saved = transactionTemplate.execute(status -> {
+            EventEntity persisted = eventRepository.save(event);
+            if (!idempotencyKeys.reserve(persisted)) {
+                eventRepository.delete(persisted);
+                return null;
+            }
+            return persisted;
+        });
+        if (saved == null) {
+            throw new DuplicateEventException(event.getIdempotencyKey());
+        }
+        return saved;
+    }
+
+    @Override
+    public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+        return eventReader.scan(scan, consumer);
+    }
+
+    @Override
+    public EventScan latest(EventScan scan, int count) {
+        return eventReader.latest(scan, count);
+    }
+
+    @Override
+    public Optional<EventEntity> findById(long id) {
+        return eventReader.findById(id);
+    }
+
+    @Override
+    public List<EventEntity> findByTraceId(String traceId) {
+        return eventReader.findByTraceId(traceId);
+    }
+
+    @Override
+    public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+        return eventReader.findByCauseIds(causeIds);
+    }
+
+    @Override
+    public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+        return eventReader.findByIdempotencyKey(idempotencyKey);
+    }
+
+    @Override
+    public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        eventReader.forEachIdempotencyKey(since, consumer);
+    }
+
+    @Override
+    public Instant findMaxOccurredAt() {
+        return eventRepository.findMaxOccurredAt();
+    }
+}
@@ -0,0 +1,44 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Hands out event ids from a database sequence in blocks.
+ * <p>
+ * Follows the same "pooled" interpretation Hibernate uses for the sequence: a value {@code v}
+ * returned by {@code nextval} reserves the ids {@code (v - allocationSize, v]}, so ids allocated
+ * here never collide with ids Hibernate allocates for {@code EventRepository.save}.
+ * <p>
+ * Ids from one allocator increase, but each node and Hibernate hold their own block, so ids
+ * across allocators interleave and are not ordered by commit time.
+ */
+public class PooledIdAllocator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nextValueSql;
+    private final int allocationSize;
+
+    private long nextId = 1;
+    private long maxId = 0;
+
+    public PooledIdAllocator(JdbcTemplate jdbcTemplate, String sequenceName, int allocationSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nextValueSql = "select nextval('" + sequenceName + "')";
+        this.allocationSize = allocationSize;
+    }
+
+    /**
+     * Returns the next id, fetching a new block from the sequence when the current one is used up.
+     */
+    public synchronized long nextId() {
+        if (nextId > maxId) {
+            Long hi = jdbcTemplate.queryForObject(nextValueSql, Long.class);
+            if (hi == null) {
+                throw new IllegalStateException("Sequence returned no value");
+            }
+            maxId = hi;
+            nextId = Math.max(1, hi - allocationSize + 1);
+        }
+        return nextId++;
+    }
+}
@@ -0,0 +1,320 @@
+package tw.yukina.thinkorbit.service.event.store.journal;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.DuplicateEventException;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Event store on an append-only journal of memory-mapped segment files.
+ * <p>
+ * Appends copy the encoded event into the mapped file of the active segment, so they cost a
+ * memory copy rather than a database round trip, and replays read records straight from
+ * mapped memory. Each segment keeps a sparse id and time index, and segments whose id or
+ * time range lies outside a scan are skipped altogether. Ids are assigned by the journal and
+ * increase by one per event. Idempotency keys, trace ids and cause ids are kept in an in-memory
+ * {@link JournalKeyIndex}, rebuilt while the segments are recovered, so lookups by them read
+ * only the matching events.
+ * <p>
+ * Without {@code force-on-append}, an append is durable against a process crash as soon as it
+ * returns, and reaches the disk when the operating system writes the page back or the journal
+ * is closed. The journal directory is locked, so only one process can open it at a time.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "event-bus.store.type", havingValue = "journal")
+public class JournalEventStore implements EventStore {
+
+    private static final String LOCK_FILE = "journal.lock";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final boolean forceOnAppend;
+    private final PayloadCodecs payloadCodecs;
+
+    private final List<JournalSegment> segments = new CopyOnWriteArrayList<>();
+    private final JournalKeyIndex keyIndex = new JournalKeyIndex();
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private JournalSegment active;
+    private long lastId;
+    private boolean closed = false;
+
+    public JournalEventStore(EventBusConfiguration configuration, PayloadCodecs payloadCodecs) {
+        EventBusConfiguration.Journal journal = configuration.getStore().getJournal();
+        this.payloadCodecs = payloadCodecs;
+
+        this.directory = journal.getDirectory();
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, journal.getSegmentSize().toBytes());
+        this.indexInterval = journal.getIndexInterval();
+        this.forceOnAppend = journal.isForceOnAppend();
+
+        try {
+            Files.createDirectories(directory);
+            this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = lockChannel.tryLock();
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Event journal " + directory + " is in use by another process");
+            }
+            openSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open event journal " + directory, e);
+        }
+    }
+
+    private void openSegments() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(JournalSegment::isSegmentFile)
+                    .sorted(Comparator.comparingLong(JournalSegment::parseBaseId))
+                    .toList();
+        }
+
+        for (int i = 0; i < paths.size(); i++) {
+            JournalSegment segment = JournalSegment.open(paths.get(i), indexInterval, i == paths.size() - 1, keyIndex);
+            segments.add(segment);
+            if (!segment.isEmpty()) {
+                lastId = Math.max(lastId, segment.getLastId());
+            }
+        }
+
+        active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        log.info("Opened event journal {} with {} segments, last event id {}", directory, segments.size(), lastId);
+    }
+
+    /**
+     * @throws DuplicateEventException if the journal already holds an event with the same
+     *                                 idempotency key
+     */
+    @Override
+    public synchronized EventEntity append(EventEntity event) {
+        if (closed) {
+            throw new IllegalStateException("Event journal is closed");
+        }
+        if (event.getIdempotencyKey() != null && keyIndex.idOfIdempotencyKey(event.getIdempotencyKey()) != null) {
+            throw new DuplicateEventException(event.getIdempotencyKey());
+        }
+
+        long id = event.getId() != null ? event.getId() : lastId + 1;
+        if (id <= lastId) {
+            throw new IllegalArgumentException("Event id " + id + " is not above the last journal id " + lastId);
+        }
+
+        event.encodePayload(payloadCodecs);
+        byte[] body = JournalRecords.encode(id, event);
+        try {
+            if (active == null || !active.append(id, event.getOccurredAt(), body)) {
+                if (active != null && active.isEmpty()) {
+                    throw new IllegalArgumentException("Event of " + body.length + " bytes does not fit in a journal segment");
+                }
+                roll(id);
+                if (!active.append(id, event.getOccurredAt(), body)) {
+                    throw new IllegalArgumentException("Event of " + body.length + " bytes does not fit in a journal segment");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start a new journal segment", e);
+        }
+
+        if (forceOnAppend) {
+            active.force(active.getWritePosition() - JournalSegment.HEADER_BYTES - body.length);
+        }
+
+        lastId = id;
+        keyIndex.visit(id, event.traceId(), event.causeId(), event.getIdempotencyKey());
+        event.setId(id);
+        return event;
+    }
+
+    @Override
+    public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+        try {
+            return CompletableFuture.completedFuture(append(event));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Criteria are checked on decoded events, since records are only indexed by id and time.
+     */
+    @Override
+    public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+        Consumer<EventEntity> target = consumer;
+        consumer = event -> {
+            event.setPayloadCodecs(payloadCodecs);
+            if (scan.criteria() == null || scan.matches(event)) {
+                target.accept(event);
+            }
+        };
+
+        long count = 0;
+        for (JournalSegment segment : segments) {
+            if (segment.getBaseId() > scan.maxId()) {
+                break;
+            }
+            if (segment.overlaps(scan)) {
+                count += segment.scan(scan, consumer);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts every event within the bounds, without decoding any; as for every store, the criteria
+     * are not considered, so the narrowed scan may deliver fewer than {@code count} matching events.
+     */
+    @Override
+    public EventScan latest(EventScan scan, int count) {
+        if (count <= 0) {
+            return scan.withAfterId(scan.maxId());
+        }
+
+        // Walk segments newest first, collecting ids per segment until enough events are found
+        int remaining = count;
+        List<JournalSegment> snapshot = new ArrayList<>(segments);
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            JournalSegment segment = snapshot.get(i);
+            if (!segment.overlaps(scan)) {
+                continue;
+            }
+
+            IdList ids = new IdList();
+            segment.scanIds(scan, ids::add);
+            if (ids.size >= remaining) {
+                return scan.withAfterId(ids.values[ids.size - remaining] - 1);
+            }
+            remaining -= ids.size;
+        }
+
+        return scan;
+    }
+
+    @Override
+    public Optional<EventEntity> findById(long id) {
+        List<EventEntity> events = new ArrayList<>(1);
+        scan(new EventScan(id - 1, id, null, null), events::add);
+        return events.stream().findFirst();
+    }
+
+    @Override
+    public List<EventEntity> findByTraceId(String traceId) {
+        return findByIds(keyIndex.idsOfTrace(traceId));
+    }
+
+    @Override
+    public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+        if (causeIds.isEmpty()) {
+            return List.of();
+        }
+        return findByIds(keyIndex.idsCausedBy(causeIds));
+    }
+
+    @Override
+    public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+        Long id = keyIndex.idOfIdempotencyKey(idempotencyKey);
+        return id != null ? findById(id) : Optional.empty();
+    }
+
+    @Override
+    public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        scan(new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, since, null), event -> {
+            if (event.getIdempotencyKey() != null) {
+                consumer.accept(event.getIdempotencyKey());
+            }
+        });
+    }
+
+    private List<EventEntity> findByIds(long[] ids) {
+        List<EventEntity> events = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            findById(id).ifPresent(events::add);
+        }
+        return events;
+    }
+
+    @Override
+    public Instant findMaxOccurredAt() {
+        Instant max = null;
+        for (JournalSegment segment : segments) {
+            Instant segmentMax = segment.getMaxOccurredAt();
+            if (segmentMax != null && (max == null || segmentMax.isAfter(max))) {
+                max = segmentMax;
+            }
+        }
+        return max;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (JournalSegment segment : segments) {
+            try {
+                segment.force();
+                segment.close();
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Failed to close journal segment {}", segment.getPath(), e);
+            }
+        }
+
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("Failed to release event journal lock", e);
+        }
+    }
+
+    private void roll(long baseId) throws IOException {
+        if (active != null) {
+            active.force();
+        }
+        active = JournalSegment.create(directory, baseId, segmentSize, indexInterval);
+        segments.add(active);
+        log.debug("Started journal segment {}", active.getPath());
+    }
+
+    private static class IdList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long id) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = id;
+        }
+    }
+}
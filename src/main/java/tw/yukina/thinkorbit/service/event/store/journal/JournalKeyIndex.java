@@ -0,0 +1,71 @@
+package tw.yukina.thinkorbit.service.event.store.journal;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.LongStream;
+
+/**
+ * In-memory lookup from idempotency keys, trace ids and cause ids to event ids.
+ * <p>
+ * The journal only indexes records by id and time, so these maps are rebuilt from the record
+ * keys while segments are recovered and extended on every append. They hold ids rather than
+ * events; the events themselves are read through the segment index. Written by the single
+ * appending thread, read concurrently.
+ */
+class JournalKeyIndex implements JournalRecords.KeyVisitor {
+
+    private static final long[] NONE = new long[0];
+
+    private final Map<String, Long> idsByIdempotencyKey = new ConcurrentHashMap<>();
+    private final Map<String, long[]> idsByTraceId = new ConcurrentHashMap<>();
+    private final Map<String, long[]> idsByCauseId = new ConcurrentHashMap<>();
+
+    @Override
+    public void visit(long id, @Nullable String traceId, @Nullable String causeId, @Nullable String idempotencyKey) {
+        if (idempotencyKey != null) {
+            idsByIdempotencyKey.putIfAbsent(idempotencyKey, id);
+        }
+        if (traceId != null) {
+            idsByTraceId.merge(traceId, new long[]{id}, JournalKeyIndex::append);
+        }
+        if (causeId != null) {
+            idsByCauseId.merge(causeId, new long[]{id}, JournalKeyIndex::append);
+        }
+    }
+
+    @Nullable
+    Long idOfIdempotencyKey(String idempotencyKey) {
+        return idsByIdempotencyKey.get(idempotencyKey);
+    }
+
+    /**
+     * @return the ids of the trace's events, ascending
+     */
+    long[] idsOfTrace(String traceId) {
+        return idsByTraceId.getOrDefault(traceId, NONE);
+    }
+
+    /**
+     * @return the ids of the events caused by any of the given ids, ascending
+     */
+    long[] idsCausedBy(Collection<String> causeIds) {
+        return causeIds.stream()
+                .distinct()
+                .flatMapToLong(causeId -> LongStream.of(idsByCauseId.getOrDefault(causeId, NONE)))
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * Ids are appended in increasing order, so every list stays sorted.
+     */
+    private static long[] append(long[] ids, long[] added) {
+        long[] merged = Arrays.copyOf(ids, ids.length + 1);
+        merged[ids.length] = added[0];
+        return merged;
+    }
+}
@@ -0,0 +1,170 @@
+package tw.yukina.thinkorbit.service.event.store.journal;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.EventStrings;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Binary layout of one event in a journal segment.
+ * <p>
+ * A record body is the id and occurrence time at fixed offsets, followed by type, source,
+ * semantic tier, trace id, cause id, the encoded payload, the idempotency key and the origin
+ * node, each as a length-prefixed byte string where a length of -1 stands for null. The fixed
+ * prefix lets a scan check id and time bounds before decoding anything else. Fields added later
+ * are read only if the record has bytes left, so older records still decode.
+ */
+final class JournalRecords {
+
+    static final int ID_OFFSET = 0;
+    static final int SECONDS_OFFSET = 8;
+    static final int NANOS_OFFSET = 16;
+    static final int MIN_BODY_BYTES = 20 + 6 * 4;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private JournalRecords() {
+    }
+
+    static byte[] encode(long id, EventEntity event) {
+        byte[] type = utf8(event.getType());
+        byte[] source = utf8(event.getSource());
+        byte[] tier = utf8(event.getSemanticTier() != null ? event.getSemanticTier().name() : null);
+        byte[] traceId = utf8(event.traceId());
+        byte[] causeId = utf8(event.causeId());
+        byte[] payload = event.getPayloadData();
+        byte[] idempotencyKey = utf8(event.getIdempotencyKey());
+        byte[] origin = utf8(event.getOrigin());
+
+        ByteBuffer body = ByteBuffer.allocate(20 + sizeOf(type) + sizeOf(source) + sizeOf(tier)
+                + sizeOf(traceId) + sizeOf(causeId) + sizeOf(payload) + sizeOf(idempotencyKey) + sizeOf(origin));
+
+        Instant occurredAt = event.getOccurredAt();
+        body.putLong(id);
+        body.putLong(occurredAt != null ? occurredAt.getEpochSecond() : NO_TIME);
+        body.putInt(occurredAt != null ? occurredAt.getNano() : 0);
+        put(body, type);
+        put(body, source);
+        put(body, tier);
+        put(body, traceId);
+        put(body, causeId);
+        put(body, payload);
+        put(body, idempotencyKey);
+        put(body, origin);
+
+        return body.array();
+    }
+
+    static long id(ByteBuffer buffer, int bodyOffset) {
+        return buffer.getLong(bodyOffset + ID_OFFSET);
+    }
+
+    @Nullable
+    static Instant occurredAt(ByteBuffer buffer, int bodyOffset) {
+        long seconds = buffer.getLong(bodyOffset + SECONDS_OFFSET);
+        return seconds == NO_TIME ? null : Instant.ofEpochSecond(seconds, buffer.getInt(bodyOffset + NANOS_OFFSET));
+    }
+
+    /**
+     * Decodes a record body into a detached event. The payload is copied out of the segment
+     * but left encoded.
+     */
+    static EventEntity decode(ByteBuffer buffer, int bodyOffset, int bodyLength) {
+        ByteBuffer body = buffer.slice(bodyOffset, bodyLength);
+        long id = body.getLong();
+        body.position(20);
+
+        String type = string(body);
+        String source = string(body);
+        String tier = string(body);
+        String traceId = string(body);
+        String causeId = string(body);
+        byte[] payload = bytes(body);
+        String idempotencyKey = body.hasRemaining() ? string(body) : null;
+        String origin = body.hasRemaining() ? string(body) : null;
+
+        return EventEntity.builder()
+                .id(id)
+                .occurredAt(occurredAt(buffer, bodyOffset))
+                .type(EventStrings.intern(type))
+                .source(EventStrings.intern(source))
+                .semanticTier(tier != null ? SemanticTier.valueOf(tier) : null)
+                .traceId(traceId)
+                .causeId(causeId)
+                .payloadData(payload)
+                .idempotencyKey(idempotencyKey)
+                .origin(EventStrings.intern(origin))
+                .build();
+    }
+
+    /**
+     * Reads the lookup keys of a record body without decoding the rest of it.
+     */
+    static void readKeys(ByteBuffer buffer, int bodyOffset, int bodyLength, KeyVisitor visitor) {
+        ByteBuffer body = buffer.slice(bodyOffset, bodyLength);
+        long id = body.getLong();
+        body.position(20);
+
+        skip(body);
+        skip(body);
+        skip(body);
+        String traceId = string(body);
+        String causeId = string(body);
+        skip(body);
+        String idempotencyKey = body.hasRemaining() ? string(body) : null;
+
+        visitor.visit(id, traceId, causeId, idempotencyKey);
+    }
+
+    private static void skip(ByteBuffer body) {
+        int length = body.getInt();
+        if (length > 0) {
+            body.position(body.position() + length);
+        }
+    }
+
+    @Nullable
+    private static byte[] utf8(@Nullable String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int sizeOf(@Nullable byte[] value) {
+        return 4 + (value != null ? value.length : 0);
+    }
+
+    private static void put(ByteBuffer body, @Nullable byte[] value) {
+        if (value == null) {
+            body.putInt(-1);
+        } else {
+            body.putInt(value.length);
+            body.put(value);
+        }
+    }
+
+    @Nullable
+    private static String string(ByteBuffer body) {
+        byte[] value = bytes(body);
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    @Nullable
+    private static byte[] bytes(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] value = new byte[length];
+        body.get(value);
+        return value;
+    }
+
+    @FunctionalInterface
+    interface KeyVisitor {
+        void visit(long id, @Nullable String traceId, @Nullable String causeId, @Nullable String idempotencyKey);
+    }
+}
@@ -0,0 +1,285 @@
+package tw.yukina.thinkorbit.service.event.store.journal;
+
+import org.springframework.lang.Nullable;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped file of the journal.
+ * <p>
+ * A segment is a sequence of records, each an {@code int} body length, the CRC32C of the body
+ * and the body itself (see {@link JournalRecords}), followed by zeroes up to the end of the file.
+ * There is a single writer; readers see every record below the volatile write position, which
+ * is only advanced once a record is completely written.
+ */
+class JournalSegment implements Closeable {
+
+    static final String SUFFIX = ".segment";
+
+    static final int HEADER_BYTES = 8;
+    private static final int ZERO_CHUNK_BYTES = 64 * 1024;
+
+    private final Path path;
+    private final long baseId;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final SegmentIndex index;
+
+    private volatile int writePosition;
+    private volatile long firstId = Long.MAX_VALUE;
+    private volatile long lastId = Long.MIN_VALUE;
+    private volatile Instant minOccurredAt;
+    private volatile Instant maxOccurredAt;
+
+    private JournalSegment(Path path, long baseId, FileChannel channel, int capacity, int indexInterval) throws IOException {
+        this.path = path;
+        this.baseId = baseId;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        this.index = new SegmentIndex(indexInterval);
+    }
+
+    /**
+     * Creates an empty segment whose first record will have the given id.
+     */
+    static JournalSegment create(Path directory, long baseId, int capacity, int indexInterval) throws IOException {
+        Path path = directory.resolve(fileName(baseId));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new JournalSegment(path, baseId, channel, capacity, indexInterval);
+    }
+
+    /**
+     * Opens an existing segment and rebuilds its index. Reading stops at the first incomplete or
+     * corrupt record, which is where a crash interrupted the last append.
+     *
+     * @param active whether appends will continue in this segment, in which case everything
+     *               after the last valid record is zeroed
+     * @param keys   receives the lookup keys of every valid record
+     */
+    static JournalSegment open(Path path, int indexInterval, boolean active, JournalRecords.KeyVisitor keys) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Journal segment " + path + " is larger than 2 GB");
+        }
+
+        JournalSegment segment = new JournalSegment(path, parseBaseId(path), channel, (int) size, indexInterval);
+        segment.recover(active, keys);
+        return segment;
+    }
+
+    static boolean isSegmentFile(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    static long parseBaseId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long baseId) {
+        return String.format("%020d%s", baseId, SUFFIX);
+    }
+
+    /**
+     * Writes a record at the end of the segment.
+     *
+     * @return false if the record does not fit in the remaining space
+     */
+    boolean append(long id, @Nullable Instant occurredAt, byte[] body) {
+        int position = writePosition;
+        if ((long) position + HEADER_BYTES + body.length > capacity) {
+            return false;
+        }
+
+        buffer.putInt(position + 4, checksum(ByteBuffer.wrap(body)));
+        buffer.put(position + HEADER_BYTES, body);
+        // The length goes in last: a zero length marks the end of the segment
+        buffer.putInt(position, body.length);
+
+        track(id, occurredAt, position);
+        writePosition = position + HEADER_BYTES + body.length;
+        return true;
+    }
+
+    /**
+     * Forces the records from the given position to the end of the segment to disk.
+     */
+    void force(int fromPosition) {
+        int end = writePosition;
+        if (end > fromPosition) {
+            buffer.force(fromPosition, end - fromPosition);
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Passes the events of this segment within the scan bounds to the consumer, in id order.
+     *
+     * @return the number of events passed
+     */
+    long scan(EventScan scan, Consumer<EventEntity> consumer) {
+        return forEachRecord(scan, (bodyOffset, bodyLength) ->
+                consumer.accept(JournalRecords.decode(buffer, bodyOffset, bodyLength)));
+    }
+
+    /**
+     * Passes the ids of the events within the scan bounds to the consumer, in order, without
+     * decoding the events.
+     */
+    long scanIds(EventScan scan, LongConsumer consumer) {
+        return forEachRecord(scan, (bodyOffset, bodyLength) -> consumer.accept(JournalRecords.id(buffer, bodyOffset)));
+    }
+
+    /**
+     * Whether this segment may hold events within the scan bounds.
+     */
+    boolean overlaps(EventScan scan) {
+        long last = lastId;
+        if (last == Long.MIN_VALUE || last <= scan.afterId() || firstId > scan.maxId()) {
+            return false;
+        }
+        if (scan.fromTime() != null && (maxOccurredAt == null || maxOccurredAt.isBefore(scan.fromTime()))) {
+            return false;
+        }
+        return scan.toTime() == null || (minOccurredAt != null && minOccurredAt.isBefore(scan.toTime()));
+    }
+
+    boolean isEmpty() {
+        return writePosition == 0;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    long getBaseId() {
+        return baseId;
+    }
+
+    long getLastId() {
+        return lastId;
+    }
+
+    @Nullable
+    Instant getMaxOccurredAt() {
+        return maxOccurredAt;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long forEachRecord(EventScan scan, RecordVisitor visitor) {
+        int limit = writePosition;
+        int position = index.seek(scan.afterId(), scan.fromTime());
+        long count = 0;
+
+        while (position < limit) {
+            int bodyLength = buffer.getInt(position);
+            int bodyOffset = position + HEADER_BYTES;
+            position = bodyOffset + bodyLength;
+
+            long id = JournalRecords.id(buffer, bodyOffset);
+            if (id > scan.maxId()) {
+                break;
+            }
+            if (id <= scan.afterId() || !scan.includesTime(JournalRecords.occurredAt(buffer, bodyOffset))) {
+                continue;
+            }
+
+            visitor.visit(bodyOffset, bodyLength);
+            count++;
+        }
+
+        return count;
+    }
+
+    private void recover(boolean active, JournalRecords.KeyVisitor keys) {
+        int position = 0;
+        long previousId = Long.MIN_VALUE;
+
+        while (position + HEADER_BYTES <= capacity) {
+            int bodyLength = buffer.getInt(position);
+            int bodyOffset = position + HEADER_BYTES;
+            if (bodyLength < JournalRecords.MIN_BODY_BYTES || (long) bodyOffset + bodyLength > capacity) {
+                break;
+            }
+            if (buffer.getInt(position + 4) != checksum(buffer.slice(bodyOffset, bodyLength))) {
+                break;
+            }
+
+            long id = JournalRecords.id(buffer, bodyOffset);
+            if (id <= previousId) {
+                break;
+            }
+
+            track(id, JournalRecords.occurredAt(buffer, bodyOffset), position);
+            JournalRecords.readKeys(buffer, bodyOffset, bodyLength, keys);
+            previousId = id;
+            position = bodyOffset + bodyLength;
+        }
+
+        writePosition = position;
+
+        if (active) {
+            byte[] zeroes = new byte[ZERO_CHUNK_BYTES];
+            for (int offset = position; offset < capacity; offset += ZERO_CHUNK_BYTES) {
+                buffer.put(offset, zeroes, 0, Math.min(ZERO_CHUNK_BYTES, capacity - offset));
+            }
+        }
+    }
+
+    private void track(long id, @Nullable Instant occurredAt, int position) {
+        index.add(id, occurredAt, position);
+
+        if (firstId == Long.MAX_VALUE) {
+            firstId = id;
+        }
+        lastId = id;
+
+        if (occurredAt != null) {
+            if (minOccurredAt == null || occurredAt.isBefore(minOccurredAt)) {
+                minOccurredAt = occurredAt;
+            }
+            if (maxOccurredAt == null || occurredAt.isAfter(maxOccurredAt)) {
+                maxOccurredAt = occurredAt;
+            }
+        }
+    }
+
+    private static int checksum(ByteBuffer body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(int bodyOffset, int bodyLength);
+    }
+}
@@ -0,0 +1,83 @@
+package tw.yukina.thinkorbit.service.event.store.journal;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Sparse id and time index of one journal segment.
+ * <p>
+ * Every {@code interval}-th record gets an entry holding its id, its position and the latest
+ * occurrence time of all records before it. Ids grow and that running maximum never shrinks,
+ * so a binary search finds the last position before which nothing can match a scan's lower
+ * bounds, and the scan starts there instead of at the beginning of the segment.
+ */
+class SegmentIndex {
+
+    private final int interval;
+
+    private long[] ids = new long[16];
+    private int[] positions = new int[16];
+    private Instant[] maxOccurredBefore = new Instant[16];
+    private int size;
+
+    private int recordsSinceEntry;
+    private Instant maxOccurredAt;
+
+    SegmentIndex(int interval) {
+        this.interval = Math.max(1, interval);
+    }
+
+    synchronized void add(long id, @Nullable Instant occurredAt, int position) {
+        if (recordsSinceEntry == 0) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+                maxOccurredBefore = Arrays.copyOf(maxOccurredBefore, size * 2);
+            }
+            ids[size] = id;
+            positions[size] = position;
+            maxOccurredBefore[size] = maxOccurredAt;
+            size++;
+        }
+        recordsSinceEntry = (recordsSinceEntry + 1) % interval;
+
+        if (occurredAt != null && (maxOccurredAt == null || occurredAt.isAfter(maxOccurredAt))) {
+            maxOccurredAt = occurredAt;
+        }
+    }
+
+    /**
+     * Returns a position from which a forward scan sees every record with an id above
+     * {@code afterId} that occurred at or after {@code fromTime}.
+     */
+    synchronized int seek(long afterId, @Nullable Instant fromTime) {
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (skippable(mid, afterId, fromTime)) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return found < 0 ? 0 : positions[found];
+    }
+
+    /**
+     * Whether every record before entry {@code i} falls below one of the lower bounds.
+     * Records without an occurrence time never match a time bound.
+     */
+    private boolean skippable(int i, long afterId, @Nullable Instant fromTime) {
+        if (ids[i] - 1 <= afterId) {
+            return true;
+        }
+        return fromTime != null && (maxOccurredBefore[i] == null || maxOccurredBefore[i].isBefore(fromTime));
+    }
+}
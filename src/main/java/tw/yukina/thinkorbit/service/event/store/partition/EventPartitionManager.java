@@ -0,0 +1,248 @@
+package tw.yukina.thinkorbit.service.event.store.partition;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.idempotency.IdempotencyKeysReleased;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the event table range-partitioned by {@code occurred_at}.
+ * <p>
+ * At startup a plain {@code event_entity} table is converted in place. It is renamed to
+ * {@code event_entity_default} and attached as the default partition of a new partitioned
+ * table, so existing rows are neither copied nor rewritten. A partitioned table cannot have a
+ * unique index on {@code idempotency_key} alone, so the keys of existing rows are copied into
+ * {@code event_idempotency_key}, which keeps them unique. From then on, partitions for the
+ * current and the next few periods are created ahead of time. Rows that reached the default
+ * partition for a period without one are moved into the partition when it is created.
+ * <p>
+ * Time-bounded replays then only scan the partitions overlapping their range. When
+ * {@code drop-after} is set, partitions wholly older than it are dropped as a whole instead of
+ * being deleted row by row, releasing the idempotency keys of their events and announcing them
+ * with {@link IdempotencyKeysReleased} events.
+ * <p>
+ * The event store and the group-commit writer initialize this manager before themselves, so
+ * nothing is written to the table before it is converted.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@ConditionalOnExpression("${event-bus.partitioning.enabled:false} and '${event-bus.store.type:jdbc}'.equalsIgnoreCase('jdbc')")
+public class EventPartitionManager {
+
+    static final String TABLE = "event_entity";
+    static final String DEFAULT_PARTITION = "event_entity_default";
+    private static final String PARTITION_PREFIX = "event_entity_p";
+    private static final int RELEASE_CHUNK_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EventBusConfiguration.Partitioning configuration;
+
+    private ScheduledExecutorService scheduler;
+
+    public EventPartitionManager(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 ApplicationEventPublisher eventPublisher, EventBusConfiguration configuration) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.configuration = configuration.getPartitioning();
+    }
+
+    @PostConstruct
+    void start() {
+        transactionTemplate.executeWithoutResult(status -> {
+            convertTable();
+            createIndexes();
+        });
+        maintain();
+
+        long intervalMillis = configuration.getCheckInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::maintain, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates the partitions of the current and upcoming periods and drops expired ones.
+     */
+    public synchronized void maintain() {
+        Instant now = Instant.now();
+        PartitionPeriod period = configuration.getPeriod();
+        Set<String> existing;
+        try {
+            existing = partitions();
+        } catch (RuntimeException e) {
+            log.error("Failed to list event partitions", e);
+            return;
+        }
+
+        Instant start = period.start(now);
+        for (int i = 0; i <= Math.max(0, configuration.getAhead()); i++) {
+            Instant end = period.next(start);
+            String name = PARTITION_PREFIX + period.suffix(start);
+            if (!existing.contains(name)) {
+                try {
+                    Instant from = start;
+                    transactionTemplate.executeWithoutResult(status -> createPartition(name, from, end));
+                } catch (RuntimeException e) {
+                    log.error("Failed to create event partition {}", name, e);
+                }
+            }
+            start = end;
+        }
+
+        Duration dropAfter = configuration.getDropAfter();
+        if (dropAfter != null) {
+            dropExpired(existing, now.minus(dropAfter));
+        }
+    }
+
+    private void convertTable() {
+        String kind = jdbcTemplate.query(
+                "select relkind from pg_class where relname = ? and pg_table_is_visible(oid)",
+                rs -> rs.next() ? rs.getString(1) : null, TABLE);
+        if ("p".equals(kind)) {
+            return;
+        }
+        if (kind == null) {
+            throw new IllegalStateException("Table " + TABLE + " does not exist");
+        }
+
+        log.info("Converting {} into a table partitioned by occurred_at", TABLE);
+        jdbcTemplate.execute("alter table " + TABLE + " rename to " + DEFAULT_PARTITION);
+        jdbcTemplate.execute("create table " + TABLE + " (like " + DEFAULT_PARTITION + " including defaults)"
+                + " partition by range (occurred_at)");
+        jdbcTemplate.execute("alter table " + TABLE + " attach partition " + DEFAULT_PARTITION + " default");
+        int keys = jdbcTemplate.update("insert into event_idempotency_key (idempotency_key, event_id, occurred_at)"
+                + " select idempotency_key, id, occurred_at from " + DEFAULT_PARTITION
+                + " where idempotency_key is not null on conflict (idempotency_key) do nothing");
+        log.info("Copied {} idempotency keys into event_idempotency_key", keys);
+        // Unique constraints would have to include occurred_at, so ids stay unique through the sequence only
+        jdbcTemplate.execute("create index event_entity_id_part_idx on " + TABLE + " (id)");
+        jdbcTemplate.execute("create index event_entity_occurred_at_part_idx on " + TABLE + " (occurred_at)");
+    }
+
+    /**
+     * Creates the indexes added after the table may already have been converted.
+     */
+    private void createIndexes() {
+        jdbcTemplate.execute("create index if not exists event_entity_trace_id_part_idx on " + TABLE + " (trace_id)");
+        jdbcTemplate.execute("create index if not exists event_entity_cause_id_part_idx on " + TABLE + " (cause_id)");
+        // Carried over by the default partition from a table created while the entity declared it
+        // unique. Dropped first, so the index below never adopts it as the partition's index
+        jdbcTemplate.execute("drop index if exists event_entity_idempotency_key_idx");
+        // Not unique: a unique index on a partitioned table would have to include occurred_at,
+        // so keys stay unique through event_idempotency_key
+        jdbcTemplate.execute("create index if not exists event_entity_idempotency_key_part_idx on " + TABLE
+                + " (idempotency_key)");
+    }
+
+    private void createPartition(String name, Instant start, Instant end) {
+        String bounds = " for values from ('" + start + "') to ('" + end + "')";
+        Object[] range = {OffsetDateTime.ofInstant(start, ZoneOffset.UTC), OffsetDateTime.ofInstant(end, ZoneOffset.UTC)};
+
+        Boolean misplaced = jdbcTemplate.queryForObject("select exists (select 1 from " + DEFAULT_PARTITION
+                + " where occurred_at >= ? and occurred_at < ?)", Boolean.class, range);
+
+        if (!Boolean.TRUE.equals(misplaced)) {
+            jdbcTemplate.execute("create table " + name + " partition of " + TABLE + bounds);
+        } else {
+            // A partition cannot be created while the default partition holds rows in its range
+            jdbcTemplate.execute("create table " + name + " (like " + TABLE + " including defaults)");
+            int moved = jdbcTemplate.update("insert into " + name + " select * from " + DEFAULT_PARTITION
+                    + " where occurred_at >= ? and occurred_at < ?", range);
+            jdbcTemplate.update("delete from " + DEFAULT_PARTITION + " where occurred_at >= ? and occurred_at < ?", range);
+            jdbcTemplate.execute("alter table " + TABLE + " attach partition " + name + bounds);
+            log.info("Moved {} events from the default partition into {}", moved, name);
+        }
+
+        log.info("Created event partition {} for [{}, {})", name, start, end);
+    }
+
+    private void dropExpired(Set<String> partitions, Instant cutoff) {
+        for (String name : partitions) {
+            if (!name.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+
+            try {
+                String suffix = name.substring(PARTITION_PREFIX.length());
+                PartitionPeriod period = PartitionPeriod.ofSuffix(suffix);
+                Instant start = period.parseSuffix(suffix);
+                Instant end = period.next(start);
+                if (!end.isAfter(cutoff)) {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.execute("drop table " + name);
+                        releaseKeys(start, end);
+                    });
+                    log.info("Dropped expired event partition {}", name);
+                }
+            } catch (DateTimeParseException e) {
+                log.warn("Ignoring event partition {} with an unrecognised name", name);
+            } catch (RuntimeException e) {
+                log.error("Failed to drop event partition {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * Deletes the idempotency keys of events within the range and announces them in chunks. They
+     * are announced before the transaction commits, which only makes the bus look a key up in the
+     * store once more should it roll back.
+     */
+    private void releaseKeys(Instant start, Instant end) {
+        List<String> chunk = new ArrayList<>();
+        jdbcTemplate.query("delete from event_idempotency_key where occurred_at >= ? and occurred_at < ?"
+                + " returning idempotency_key", (RowCallbackHandler) rs -> {
+            chunk.add(rs.getString(1));
+            if (chunk.size() == RELEASE_CHUNK_SIZE) {
+                eventPublisher.publishEvent(new IdempotencyKeysReleased(List.copyOf(chunk)));
+                chunk.clear();
+            }
+        }, OffsetDateTime.ofInstant(start, ZoneOffset.UTC), OffsetDateTime.ofInstant(end, ZoneOffset.UTC));
+        if (!chunk.isEmpty()) {
+            eventPublisher.publishEvent(new IdempotencyKeysReleased(List.copyOf(chunk)));
+        }
+    }
+
+    private Set<String> partitions() {
+        return new HashSet<>(jdbcTemplate.queryForList("select child.relname from pg_inherits"
+                + " join pg_class parent on parent.oid = pg_inherits.inhparent"
+                + " join pg_class child on child.oid = pg_inherits.inhrelid"
+                + " where parent.relname = ? and pg_table_is_visible(parent.oid)", String.class, TABLE));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package tw.yukina.thinkorbit.service.event.store.partition;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Time span covered by one partition of the event table, aligned to UTC days or months.
+ */
+public enum PartitionPeriod {
+    DAILY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+    MONTHLY(DateTimeFormatter.ofPattern("yyyyMM"));
+
+    private final DateTimeFormatter suffixFormat;
+
+    PartitionPeriod(DateTimeFormatter suffixFormat) {
+        this.suffixFormat = suffixFormat;
+    }
+
+    /**
+     * Returns the start of the period containing the given time.
+     */
+    public Instant start(Instant time) {
+        LocalDate date = LocalDate.ofInstant(time, ZoneOffset.UTC);
+        if (this == MONTHLY) {
+            date = date.withDayOfMonth(1);
+        }
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    /**
+     * Returns the start of the period following the one starting at {@code start}.
+     */
+    public Instant next(Instant start) {
+        LocalDate date = LocalDate.ofInstant(start, ZoneOffset.UTC);
+        date = this == MONTHLY ? date.plusMonths(1) : date.plusDays(1);
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    /**
+     * Partition name suffix of the period starting at {@code start}.
+     */
+    public String suffix(Instant start) {
+        return suffixFormat.format(LocalDate.ofInstant(start, ZoneOffset.UTC));
+    }
+
+    /**
+     * Returns the period whose partitions carry the given suffix, which may differ from the
+     * configured one for partitions created before the period was changed.
+     */
+    public static PartitionPeriod ofSuffix(String suffix) {
+        return suffix.length() == 6 ? MONTHLY : DAILY;
+    }
+
+    /**
+     * Parses a suffix back into the start of its period.
+     */
+    public Instant parseSuffix(String suffix) {
+        LocalDate date = this == MONTHLY
+                ? LocalDate.parse(suffix + "01", DAILY.suffixFormat)
+                : LocalDate.parse(suffix, suffixFormat);
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
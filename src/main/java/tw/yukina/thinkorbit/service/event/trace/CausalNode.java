@@ -0,0 +1,22 @@
+package tw.yukina.thinkorbit.service.event.trace;
+
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.List;
+
+/**
+ * An event and the events it caused, in id order.
+ */
+public record CausalNode(EventEntity event, List<CausalNode> children) {
+
+    /**
+     * @return the number of events in this tree
+     */
+    public int size() {
+        int size = 1;
+        for (CausalNode child : children) {
+            size += child.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,181 @@
+package tw.yukina.thinkorbit.service.event.trace;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.DeliveryMode;
+import tw.yukina.thinkorbit.service.event.EventBus;
+import tw.yukina.thinkorbit.service.event.OverflowPolicy;
+import tw.yukina.thinkorbit.service.event.SubscriptionOptions;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Queries over the causal structure of events.
+ * <p>
+ * Events of one trace share a trace id, and an event's cause id is the id of the event that
+ * caused it, as set by {@link tw.yukina.thinkorbit.service.event.EventFactory#withTraceIdAndCauseId}.
+ * Traces are read through the {@code trace_id} index once and then served from a
+ * {@link TraceIndex} of recent traces, which the live event stream keeps current. Walking the
+ * causes of a traced event then only touches memory.
+ * <p>
+ * The index is fed from a mailbox, so publishers never wait on it, and a trace served from memory
+ * may lack events published a moment ago. A cause missing from it is looked up in the store.
+ */
+@Slf4j
+@Service
+public class EventTraceService {
+
+    private static final String INDEX_SUBSCRIPTION = "trace-index";
+    private static final int MAX_TREE_EVENTS = 10_000;
+
+    private final EventBus eventBus;
+    private final EventStore eventStore;
+    private final TraceIndex index;
+
+    public EventTraceService(EventBus eventBus, EventStore eventStore, EventBusConfiguration configuration) {
+        this.eventBus = eventBus;
+        this.eventStore = eventStore;
+
+        EventBusConfiguration.Trace trace = configuration.getTrace();
+        this.index = new TraceIndex(trace.getMaxTraces(), trace.getMaxEventsPerTrace(), trace.getMaxSize().toBytes());
+    }
+
+    @PostConstruct
+    void subscribe() {
+        eventBus.subscribe(event -> event.traceId() != null, (context, event) -> index.add(event),
+                new SubscriptionOptions(INDEX_SUBSCRIPTION, DeliveryMode.MAILBOX, 0, OverflowPolicy.SPILL));
+    }
+
+    /**
+     * @return the events of a trace, in id order
+     */
+    public List<EventEntity> trace(String traceId) {
+        List<EventEntity> cached = index.get(traceId);
+        if (cached != null) {
+            return cached;
+        }
+
+        TraceIndex.Entry entry = index.begin(traceId);
+        return index.complete(traceId, entry, eventStore.findByTraceId(traceId));
+    }
+
+    /**
+     * Walks from an event to the root of its causes.
+     *
+     * @return the event followed by its cause, the cause's cause and so on, or an empty list if
+     * the event does not exist
+     */
+    public List<EventEntity> causeChain(long eventId) {
+        List<EventEntity> chain = new ArrayList<>();
+        Set<Long> visited = new HashSet<>();
+
+        Optional<EventEntity> current = eventStore.findById(eventId);
+        while (current.isPresent() && visited.add(current.get().getId())) {
+            chain.add(current.get());
+            current = cause(current.get());
+        }
+
+        return chain;
+    }
+
+    /**
+     * Builds the tree of events caused, directly or not, by an event. For a traced event, the
+     * tree is built from the events of its trace; otherwise caused events are read from the
+     * store one generation at a time.
+     *
+     * @return the tree rooted at the event, or empty if the event does not exist
+     */
+    public Optional<CausalNode> causalTree(long eventId) {
+        return eventStore.findById(eventId).map(root -> {
+            Map<String, List<EventEntity>> children = root.getTraceId()
+                    .map(traceId -> childrenWithin(trace(traceId)))
+                    .orElseGet(() -> childrenFromStore(root));
+            return toTree(root, children, new HashSet<>());
+        });
+    }
+
+    private Optional<EventEntity> cause(EventEntity event) {
+        Long causeId = parseId(event.causeId());
+        if (causeId == null) {
+            return Optional.empty();
+        }
+
+        if (event.getTraceId().isPresent()) {
+            for (EventEntity traced : trace(event.getTraceId().get())) {
+                if (traced.getId().equals(causeId)) {
+                    return Optional.of(traced);
+                }
+            }
+        }
+        return eventStore.findById(causeId);
+    }
+
+    private static Map<String, List<EventEntity>> childrenWithin(List<EventEntity> events) {
+        Map<String, List<EventEntity>> children = new HashMap<>();
+        for (EventEntity event : events) {
+            event.getCauseId().ifPresent(causeId ->
+                    children.computeIfAbsent(causeId, id -> new ArrayList<>()).add(event));
+        }
+        return children;
+    }
+
+    private Map<String, List<EventEntity>> childrenFromStore(EventEntity root) {
+        Map<String, List<EventEntity>> children = new HashMap<>();
+        Set<String> generation = Set.of(String.valueOf(root.getId()));
+        int found = 0;
+
+        while (!generation.isEmpty()) {
+            if (found >= MAX_TREE_EVENTS) {
+                log.warn("Causal tree of event {} truncated at {} events", root.getId(), found);
+                break;
+            }
+
+            Set<String> next = new HashSet<>();
+            for (EventEntity event : eventStore.findByCauseIds(generation)) {
+                String key = String.valueOf(event.getId());
+                if (!children.containsKey(key)) {
+                    children.computeIfAbsent(event.getCauseId().orElseThrow(), id -> new ArrayList<>()).add(event);
+                    children.put(key, new ArrayList<>());
+                    next.add(key);
+                    found++;
+                }
+            }
+            generation = next;
+        }
+
+        return children;
+    }
+
+    private static CausalNode toTree(EventEntity event, Map<String, List<EventEntity>> children, Set<Long> visited) {
+        visited.add(event.getId());
+
+        List<CausalNode> nodes = new ArrayList<>();
+        for (EventEntity child : children.getOrDefault(String.valueOf(event.getId()), List.of())) {
+            if (!visited.contains(child.getId())) {
+                nodes.add(toTree(child, children, visited));
+            }
+        }
+        return new CausalNode(event, List.copyOf(nodes));
+    }
+
+    private static Long parseId(String causeId) {
+        if (causeId == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(causeId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package tw.yukina.thinkorbit.service.event.trace;
+
+import tw.yukina.thinkorbit.service.event.cache.HotTailCache;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Events of recently active traces, in memory and kept current by the live event stream.
+ * <p>
+ * A trace is indexed as soon as one of its events is published, but its older events may only
+ * be in the store, so it is only answered from memory once it has been read from the store. A
+ * read starts by {@link #begin(String) registering} the trace, so every event is either read
+ * from the store or added live afterwards, and events that are both are kept once. The least
+ * recently used traces are evicted once there are too many or their estimated heap size exceeds
+ * its limit, and so are traces with too many events.
+ */
+class TraceIndex {
+
+    private final int maxTraces;
+    private final int maxEventsPerTrace;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> traces = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    TraceIndex(int maxTraces, int maxEventsPerTrace, long maxBytes) {
+        this.maxTraces = Math.max(1, maxTraces);
+        this.maxEventsPerTrace = Math.max(1, maxEventsPerTrace);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * Adds a published event to its trace.
+     */
+    synchronized void add(EventEntity event) {
+        String traceId = event.traceId();
+        if (traceId == null) {
+            return;
+        }
+
+        Entry entry = entry(traceId);
+        put(entry, event, true);
+        if (entry.events.size() > maxEventsPerTrace) {
+            remove(traceId);
+        }
+        evictOverSize();
+    }
+
+    /**
+     * @return the events of a trace in id order, or null if the trace was not read from the store yet
+     */
+    synchronized List<EventEntity> get(String traceId) {
+        Entry entry = traces.get(traceId);
+        return entry != null && entry.complete ? List.copyOf(entry.events.values()) : null;
+    }
+
+    /**
+     * Registers a trace before it is read from the store.
+     */
+    synchronized Entry begin(String traceId) {
+        return entry(traceId);
+    }
+
+    /**
+     * Merges the stored events of a trace with those published since {@link #begin(String)}.
+     * The trace is then answered from memory, unless it was evicted in the meantime.
+     *
+     * @return the events of the trace in id order
+     */
+    synchronized List<EventEntity> complete(String traceId, Entry entry, List<EventEntity> stored) {
+        boolean indexed = traces.get(traceId) == entry;
+        for (EventEntity event : stored) {
+            put(entry, event, indexed);
+        }
+
+        List<EventEntity> events = List.copyOf(entry.events.values());
+        if (indexed) {
+            if (events.size() > maxEventsPerTrace) {
+                remove(traceId);
+            } else {
+                entry.complete = true;
+                evictOverSize();
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return the estimated heap size of the indexed events
+     */
+    synchronized long size() {
+        return bytes;
+    }
+
+    /**
+     * Adds an event unless the entry holds it already, counting its size while the entry is indexed.
+     */
+    private void put(Entry entry, EventEntity event, boolean indexed) {
+        if (entry.events.putIfAbsent(event.getId(), event) == null && indexed) {
+            long size = HotTailCache.estimateSize(event);
+            entry.bytes += size;
+            bytes += size;
+        }
+    }
+
+    private Entry entry(String traceId) {
+        Entry entry = traces.get(traceId);
+        if (entry == null) {
+            entry = new Entry();
+            traces.put(traceId, entry);
+            if (traces.size() > maxTraces) {
+                remove(traces.keySet().iterator().next());
+            }
+        }
+        return entry;
+    }
+
+    private void evictOverSize() {
+        while (bytes > maxBytes && !traces.isEmpty()) {
+            remove(traces.keySet().iterator().next());
+        }
+    }
+
+    private void remove(String traceId) {
+        Entry entry = traces.remove(traceId);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    static class Entry {
+        private final Map<Long, EventEntity> events = new TreeMap<>();
+        private long bytes;
+        private boolean complete = false;
+    }
+}
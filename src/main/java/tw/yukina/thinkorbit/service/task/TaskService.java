@@ -1,24 +1,42 @@
 package tw.yukina.thinkorbit.service.task;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import tw.yukina.thinkorbit.service.event.EventBus;
-import tw.yukina.thinkorbit.service.event.OnEvent;
+import tw.yukina.thinkorbit.service.event.EventCriteria;
+import tw.yukina.thinkorbit.service.event.EventFilter;
 import tw.yukina.thinkorbit.service.event.entity.EventContext;
 import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.snapshot.JsonSnapshotSerializer;
+import tw.yukina.thinkorbit.service.event.snapshot.SnapshotParticipant;
+import tw.yukina.thinkorbit.service.event.snapshot.SnapshotSerializer;
+import tw.yukina.thinkorbit.service.event.snapshot.SnapshotState;
 import tw.yukina.thinkorbit.service.intent.Intent;
 import tw.yukina.thinkorbit.service.intent.IntentMapping;
 import tw.yukina.thinkorbit.service.task.intent.CreateTask;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Keeps the tasks created so far.
+ * <p>
+ * Tasks are only added by applying created_task events, which the snapshot service replays after
+ * restoring a snapshot and then delivers live, so the state never runs ahead of the event log.
+ * Events are applied by task id, so applying one twice is harmless.
+ */
 @Slf4j
 @Service
-public class TaskService {
+public class TaskService implements SnapshotParticipant<List<Task>> {
 
-    private final List<Task> tasks = new ArrayList<>();
+    private static final SnapshotSerializer<List<Task>> SNAPSHOT_SERIALIZER =
+            new JsonSnapshotSerializer<>(new TypeReference<List<Task>>() {
+            });
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
 
     private final EventBus eventBus;
 
@@ -30,30 +48,68 @@ public class TaskService {
     private void createTaskRoute(Intent<CreateTask> intent) {
         log.info("Creating task with intent: {}", intent.getPayload().getName());
 
-        Task task = new Task();
-        task.setId("task-" + System.currentTimeMillis());
-        task.setName(intent.getPayload().getName());
-
-        tasks.add(task);
-
         EventEntity event = EventEntity.builder()
                 .type(TaskEvent.CREATED_TASK.getEventName())
                 .source(this.getClass().getSimpleName())
-                .payload(Map.of("taskId", task.getId(), "taskName", task.getName()))
+                .payload(Map.of("taskId", "task-" + System.currentTimeMillis(),
+                        "taskName", intent.getPayload().getName()))
                 .build();
 
+        // The task is added by the created_task listener
         eventBus.publish(event);
     }
 
     public List<Task> getTasks() {
-        return List.copyOf(tasks);
+        synchronized (tasks) {
+            return List.copyOf(tasks.values());
+        }
     }
 
-    @OnEvent(type = "created_task")
-    public void handleOrderCreated(EventContext context, EventEntity event) {
-        System.out.println("Received task created event: " + event.getPayload());
-        if (context.isReplay()) {
-            System.out.println("This is a replayed event");
+    @Override
+    public String getSnapshotName() {
+        return "tasks";
+    }
+
+    @Override
+    public SnapshotSerializer<List<Task>> getSnapshotSerializer() {
+        return SNAPSHOT_SERIALIZER;
+    }
+
+    /**
+     * Live events are applied synchronously, so every event up to the bus's dispatched watermark
+     * has been applied, and the state copied after reading it holds them all, and possibly later
+     * ones too.
+     */
+    @Override
+    public SnapshotState<List<Task>> captureSnapshot() {
+        long position = eventBus.dispatchedWatermark();
+        synchronized (tasks) {
+            return new SnapshotState<>(position > 0 ? position : null, new ArrayList<>(tasks.values()));
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(List<Task> state) {
+        synchronized (tasks) {
+            tasks.clear();
+            state.forEach(task -> tasks.put(task.getId(), task));
+        }
+    }
+
+    @Override
+    public EventFilter getReplayFilter() {
+        return EventCriteria.builder().type(TaskEvent.CREATED_TASK.getEventName()).build();
+    }
+
+    @Override
+    public void applyEvent(EventContext context, EventEntity event) {
+        log.debug("Applying task created event: {}", event.getPayload());
+        Task task = new Task();
+        task.setId((String) event.getPayload().get("taskId"));
+        task.setName((String) event.getPayload().get("taskName"));
+
+        synchronized (tasks) {
+            tasks.putIfAbsent(task.getId(), task);
         }
     }
 }
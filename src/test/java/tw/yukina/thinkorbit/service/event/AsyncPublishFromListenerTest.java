@@ -0,0 +1,142 @@
+package tw.yukina.thinkorbit.service.event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Listeners delivered by the publish pipeline publishing asynchronously themselves.
+ */
+class AsyncPublishFromListenerTest {
+
+    private static final int CHAIN_LENGTH = 50;
+
+    private final List<EventEntity> delivered = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<EventEntity>> published = new CopyOnWriteArrayList<>();
+    private StandardEventBus eventBus;
+
+    @AfterEach
+    void tearDown() {
+        if (eventBus != null) {
+            eventBus.close();
+        }
+    }
+
+    @Test
+    void listenerRepublishingIntoAFullRingDoesNotStallTheDispatchThread() throws Exception {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getAsync().setRingBufferSize(2);
+        configuration.getIdempotency().setEnabled(false);
+        eventBus = new StandardEventBus(new IdAssigningStore(), new EventBusMetrics(new SimpleMeterRegistry()),
+                configuration);
+        eventBus.subscribe(EventCriteria.builder().type("chain").build(), (context, event) -> {
+            delivered.add(event);
+            // Two at a time, so the listener alone would fill the ring
+            for (int i = 0; i < 2 && delivered.size() + published.size() < CHAIN_LENGTH; i++) {
+                published.add(eventBus.publishAsync(event("chain")));
+            }
+        }, new SubscriptionOptions("republishing", DeliveryMode.SYNC, 0, OverflowPolicy.BLOCK));
+
+        // Keep the ring full from outside while the listener publishes
+        List<CompletableFuture<EventEntity>> external = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            external.add(eventBus.publishAsync(event("chain")));
+        }
+
+        CompletableFuture.allOf(external.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (delivered.size() < external.size() + published.size() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        CompletableFuture.allOf(published.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertThat(published).isNotEmpty().allSatisfy(future -> assertThat(future).isCompleted());
+        assertThat(delivered).hasSize(external.size() + published.size());
+        assertThat(delivered).extracting(EventEntity::getId).doesNotHaveDuplicates();
+    }
+
+    private static EventEntity event(String type) {
+        EventEntity event = new EventEntity();
+        event.setType(type);
+        event.setSource("chain");
+        event.setSemanticTier(SemanticTier.INTERNAL);
+        event.setOccurredAt(Instant.now());
+        return event;
+    }
+
+    /**
+     * Store that keeps nothing and only numbers the events appended to it, from any thread.
+     */
+    private static class IdAssigningStore implements EventStore {
+
+        private final AtomicLong nextId = new AtomicLong(1);
+
+        @Override
+        public EventEntity append(EventEntity event) {
+            event.setId(nextId.getAndIncrement());
+            return event;
+        }
+
+        @Override
+        public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+            return CompletableFuture.completedFuture(append(event));
+        }
+
+        @Override
+        public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+            return 0;
+        }
+
+        @Override
+        public EventScan latest(EventScan scan, int count) {
+            return scan;
+        }
+
+        @Override
+        public Optional<EventEntity> findById(long id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<EventEntity> findByTraceId(String traceId) {
+            return List.of();
+        }
+
+        @Override
+        public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+            return List.of();
+        }
+
+        @Override
+        public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        }
+
+        @Override
+        public Instant findMaxOccurredAt() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package tw.yukina.thinkorbit.service.event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.EventContext;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatchUpSubscriptionTest {
+
+    private static final EventContext REPLAY = EventContext.replay(null);
+
+    private final List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+    private final List<Boolean> replayFlags = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void holdsLiveEventsUntilTheReplayIsDone() {
+        CatchUpSubscription catchUp = new CatchUpSubscription(event -> true, this::record, Long.MIN_VALUE, null);
+
+        catchUp.onEvent(EventContext.LIVE, event(5));
+        catchUp.onEvent(EventContext.LIVE, event(4));
+        catchUp.onReplayed(REPLAY, event(1));
+        catchUp.onReplayed(REPLAY, event(2));
+        catchUp.onReplayed(REPLAY, event(3));
+
+        assertThat(delivered).containsExactly(1L, 2L, 3L);
+
+        catchUp.goLive();
+        catchUp.onEvent(EventContext.LIVE, event(6));
+
+        assertThat(delivered).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(replayFlags).containsExactly(true, true, true, false, false, false);
+    }
+
+    @Test
+    void skipsBufferedEventsTheReplayAlreadyDelivered() {
+        CatchUpSubscription catchUp = new CatchUpSubscription(event -> true, this::record, 2, null);
+
+        // 3 and 4 were in flight when the subscription was registered, so both paths see them
+        catchUp.onEvent(EventContext.LIVE, event(4));
+        catchUp.onEvent(EventContext.LIVE, event(3));
+        catchUp.onEvent(EventContext.LIVE, event(5));
+        for (long id = 1; id <= 4; id++) {
+            catchUp.onReplayed(REPLAY, event(id));
+        }
+        catchUp.goLive();
+
+        assertThat(delivered).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void appliesTheFilterToReplayedEvents() {
+        CatchUpSubscription catchUp = new CatchUpSubscription(event -> event.getId() % 2 == 0, this::record,
+                Long.MIN_VALUE, null);
+
+        for (long id = 1; id <= 4; id++) {
+            catchUp.onReplayed(REPLAY, event(id));
+        }
+        catchUp.goLive();
+
+        assertThat(delivered).containsExactly(2L, 4L);
+    }
+
+    @Test
+    void deliversEveryEventOnceInOrderWhileLiveEventsKeepArriving() throws Exception {
+        long replayed = 500;
+        long total = 2_000;
+        long duplicateMark = replayed - 50;
+        CatchUpSubscription catchUp = new CatchUpSubscription(event -> true, this::record, duplicateMark, null);
+        CountDownLatch publishing = new CountDownLatch(1);
+
+        // Events above the mark were in flight at registration and are published live as well
+        Thread publisher = new Thread(() -> {
+            for (long id = duplicateMark + 1; id <= total; id++) {
+                catchUp.onEvent(EventContext.LIVE, event(id));
+                if (id == replayed) {
+                    publishing.countDown();
+                }
+            }
+        }, "event-test-publisher");
+        publisher.start();
+
+        assertThat(publishing.await(10, TimeUnit.SECONDS)).isTrue();
+        for (long id = 1; id <= replayed; id++) {
+            catchUp.onReplayed(REPLAY, event(id));
+        }
+        catchUp.goLive();
+        publisher.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertThat(delivered).containsExactly(LongStream.rangeClosed(1, total).boxed().toArray(Long[]::new));
+    }
+
+    @Test
+    void skipsReplayedEventsArrivingLiveUntilTheWatermarkPassesThem() {
+        AtomicLong watermark = new AtomicLong(0);
+        CatchUpSubscription catchUp = new CatchUpSubscription(event -> true, this::record, 0, watermark::get);
+
+        // 1 was still being dispatched, so the replay read it from the store before it arrived live
+        catchUp.onReplayed(REPLAY, event(1));
+        catchUp.onReplayed(REPLAY, event(2));
+        catchUp.goLive();
+        catchUp.onEvent(EventContext.LIVE, event(1));
+        watermark.set(2);
+        catchUp.onEvent(EventContext.LIVE, event(3));
+
+        assertThat(delivered).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void publishHeldBetweenPersistAndDispatchAcrossTheSwitchoverIsDeliveredOnce() throws Exception {
+        HoldingStore store = new HoldingStore();
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getAsync().setEnabled(false);
+        configuration.getIdempotency().setEnabled(false);
+        StandardEventBus eventBus = new StandardEventBus(store, new EventBusMetrics(new SimpleMeterRegistry()),
+                configuration);
+        try {
+            // Gets the lower id, but is dispatched after a later publish
+            Thread held = new Thread(() -> eventBus.publish(event("held", "a")), "event-test-held");
+            held.start();
+            assertThat(store.persisted.await(5, TimeUnit.SECONDS)).isTrue();
+            eventBus.publish(event("after", "b"));
+
+            eventBus.subscribeFrom(new ReplayRange(null, null, ReplayLevel.SEMANTIC_REPLAY), EventCriteria.any(),
+                    this::record);
+            store.release.countDown();
+            held.join(TimeUnit.SECONDS.toMillis(5));
+            eventBus.publish(event("later", "b"));
+
+            assertThat(delivered).containsExactly(1L, 2L, 3L);
+            assertThat(replayFlags).containsExactly(true, true, false);
+        } finally {
+            store.release.countDown();
+            eventBus.close();
+        }
+    }
+
+    private void record(EventContext context, EventEntity event) {
+        delivered.add(event.getId());
+        replayFlags.add(context.isReplay());
+    }
+
+    private static EventEntity event(String type, String source) {
+        return EventEntity.builder()
+                .type(type)
+                .source(source)
+                .semanticTier(SemanticTier.INTERNAL)
+                .occurredAt(Instant.now())
+                .build();
+    }
+
+    private static EventEntity event(long id) {
+        return EventEntity.builder()
+                .id(id)
+                .type("catch-up.test")
+                .source("test")
+                .occurredAt(Instant.now())
+                .build();
+    }
+
+    /**
+     * Store that numbers and keeps events, and holds the publish of the event typed "held" after
+     * storing it until released.
+     */
+    private static class HoldingStore implements EventStore {
+
+        final CountDownLatch persisted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        private final AtomicLong nextId = new AtomicLong(1);
+        private final List<EventEntity> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public EventEntity append(EventEntity event) {
+            event.setId(nextId.getAndIncrement());
+            events.add(event);
+            if (event.getType().equals("held")) {
+                persisted.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return event;
+        }
+
+        @Override
+        public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+            return CompletableFuture.completedFuture(append(event));
+        }
+
+        @Override
+        public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+            List<EventEntity> matching = events.stream()
+                    .filter(scan::includes)
+                    .sorted(Comparator.comparing(EventEntity::getId))
+                    .toList();
+            matching.forEach(consumer);
+            return matching.size();
+        }
+
+        @Override
+        public EventScan latest(EventScan scan, int count) {
+            return scan;
+        }
+
+        @Override
+        public Optional<EventEntity> findById(long id) {
+            return events.stream().filter(event -> event.getId() == id).findFirst();
+        }
+
+        @Override
+        public List<EventEntity> findByTraceId(String traceId) {
+            return List.of();
+        }
+
+        @Override
+        public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+            return List.of();
+        }
+
+        @Override
+        public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        }
+
+        @Override
+        public Instant findMaxOccurredAt() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package tw.yukina.thinkorbit.service.event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the heap allocated per publish between persisting an event and delivering it to its
+ * listeners.
+ * <p>
+ * The store only assigns ids, so what is measured is the bus itself: sequencing, the dispatched
+ * watermark, hot tail, subscription lookup, delivery and metrics. Events are created outside the
+ * measured sections. In steady state all that should remain is the boxed id the store assigns to
+ * each event, 16 bytes per publish; the limit leaves room for that and little else, well below
+ * what one context or lambda per delivery would cost.
+ */
+class DispatchAllocationTest {
+
+    private static final int LISTENERS = 8;
+    private static final int BATCH_SIZE = 10_000;
+    private static final int WARMUP_BATCHES = 30;
+    private static final int MEASURED_BATCHES = 20;
+    private static final double MAX_BYTES_PER_PUBLISH = 48;
+
+    private StandardEventBus eventBus;
+
+    @AfterEach
+    void tearDown() {
+        if (eventBus != null) {
+            eventBus.close();
+        }
+    }
+
+    @Test
+    void synchronousPublishAllocatesOnlyTheAssignedId() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getAsync().setEnabled(false);
+        configuration.getIdempotency().setEnabled(false);
+        eventBus = new StandardEventBus(new IdAssigningStore(), new EventBusMetrics(new SimpleMeterRegistry()),
+                configuration);
+
+        long[] checksum = {0};
+        for (int i = 0; i < LISTENERS; i++) {
+            eventBus.subscribe(EventCriteria.builder().type("allocation.tick").build(),
+                    (context, event) -> checksum[0] += event.sourceSequence(),
+                    new SubscriptionOptions("listener-" + i, DeliveryMode.SYNC, 0, OverflowPolicy.BLOCK));
+        }
+
+        for (int batch = 0; batch < WARMUP_BATCHES; batch++) {
+            publish(createEvents());
+        }
+
+        long allocated = 0;
+        for (int batch = 0; batch < MEASURED_BATCHES; batch++) {
+            EventEntity[] events = createEvents();
+
+            long startBytes = threads.getCurrentThreadAllocatedBytes();
+            publish(events);
+            allocated += threads.getCurrentThreadAllocatedBytes() - startBytes;
+        }
+
+        long published = (long) MEASURED_BATCHES * BATCH_SIZE;
+        assertThat(checksum[0]).isPositive();
+        assertThat((double) allocated / published).as("bytes allocated per publish")
+                .isLessThanOrEqualTo(MAX_BYTES_PER_PUBLISH);
+    }
+
+    private static EventEntity[] createEvents() {
+        EventEntity[] events = new EventEntity[BATCH_SIZE];
+        Instant now = Instant.now();
+        for (int i = 0; i < events.length; i++) {
+            EventEntity event = new EventEntity();
+            event.setType("allocation.tick");
+            event.setSource("allocation");
+            event.setSemanticTier(SemanticTier.INTERNAL);
+            event.setOccurredAt(now);
+            events[i] = event;
+        }
+        return events;
+    }
+
+    private void publish(EventEntity[] events) {
+        for (EventEntity event : events) {
+            eventBus.publish(event);
+        }
+    }
+
+    /**
+     * Store that keeps nothing and only numbers the events appended to it.
+     */
+    private static class IdAssigningStore implements EventStore {
+
+        private long nextId = 1;
+
+        @Override
+        public EventEntity append(EventEntity event) {
+            event.setId(nextId++);
+            return event;
+        }
+
+        @Override
+        public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+            return CompletableFuture.completedFuture(append(event));
+        }
+
+        @Override
+        public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+            return 0;
+        }
+
+        @Override
+        public EventScan latest(EventScan scan, int count) {
+            return scan;
+        }
+
+        @Override
+        public Optional<EventEntity> findById(long id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<EventEntity> findByTraceId(String traceId) {
+            return List.of();
+        }
+
+        @Override
+        public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+            return List.of();
+        }
+
+        @Override
+        public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        }
+
+        @Override
+        public Instant findMaxOccurredAt() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaries;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaryRepository;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class EventCriteriaTest {
+
+    private final PayloadCodecs payloadCodecs =
+            new PayloadCodecs(new PayloadDictionaries(mock(PayloadDictionaryRepository.class)));
+
+    @Test
+    void rejectsOnTypeSourceAndTierWithoutDecodingThePayload() {
+        EventCriteria byType = EventCriteria.builder().type("order.shipped").payloadEquals("n", 1).build();
+        EventCriteria bySource = EventCriteria.builder().source("warehouse").payloadEquals("n", 1).build();
+        EventCriteria byTier = EventCriteria.builder().tier(SemanticTier.AMBIENT).payloadEquals("n", 1).build();
+
+        for (EventCriteria criteria : new EventCriteria[]{byType, bySource, byTier}) {
+            EventEntity event = loaded();
+
+            assertThat(criteria.matches(event)).isFalse();
+            assertThat(event.isPayloadDecoded()).isFalse();
+        }
+    }
+
+    @Test
+    void decodesThePayloadOnceForPayloadConditions() {
+        EventEntity event = loaded();
+
+        assertThat(EventCriteria.builder().type("order.placed").payloadEquals("n", 1).build().matches(event)).isTrue();
+        assertThat(event.isPayloadDecoded()).isTrue();
+        assertThat(event.getPayload()).isSameAs(event.getPayload());
+    }
+
+    @Test
+    void leavesThePayloadEncodedWithoutPayloadConditions() {
+        EventEntity event = loaded();
+
+        assertThat(EventCriteria.builder().type("order.placed").source("shop").build().matches(event)).isTrue();
+        assertThat(event.isPayloadDecoded()).isFalse();
+    }
+
+    /**
+     * An event as a store loads it, with its payload still encoded.
+     */
+    private EventEntity loaded() {
+        return EventEntity.builder()
+                .id(1L)
+                .type("order.placed")
+                .source("shop")
+                .semanticTier(SemanticTier.INTERNAL)
+                .occurredAt(Instant.now())
+                .payloadData(payloadCodecs.encode("order.placed", Map.of("n", 1)))
+                .payloadCodecs(payloadCodecs)
+                .build();
+    }
+}
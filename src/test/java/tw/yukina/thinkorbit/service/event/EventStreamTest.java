@@ -0,0 +1,199 @@
+package tw.yukina.thinkorbit.service.event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Live event streams of the bus, driven by subscriber demand.
+ */
+class EventStreamTest {
+
+    private static final int BUFFER_SIZE = 3;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private StandardEventBus eventBus;
+
+    @BeforeEach
+    void setUp() {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getAsync().setEnabled(false);
+        configuration.getIdempotency().setEnabled(false);
+        configuration.getDispatch().setStreamBufferSize(BUFFER_SIZE);
+        eventBus = new StandardEventBus(new IdAssigningStore(), new EventBusMetrics(registry), configuration);
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventBus.close();
+    }
+
+    @Test
+    void deliversMatchingEventsAsTheSubscriberRequestsThem() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        eventBus.stream(EventCriteria.builder().type("order.placed").build()).subscribe(subscriber);
+
+        subscriber.request(1);
+        eventBus.publish(event("order.placed"));
+        eventBus.publish(event("order.shipped"));
+        eventBus.publish(event("order.placed"));
+
+        assertThat(subscriber.ids()).containsExactly(1L);
+
+        subscriber.request(1);
+
+        assertThat(subscriber.ids()).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void dropsTheOldestEventsOnceASlowSubscriberFillsTheBuffer() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        eventBus.stream(EventCriteria.any()).subscribe(subscriber);
+
+        for (int i = 0; i < BUFFER_SIZE + 2; i++) {
+            eventBus.publish(event("order.placed"));
+        }
+        subscriber.request(Long.MAX_VALUE);
+
+        assertThat(subscriber.ids()).containsExactly(3L, 4L, 5L);
+        assertThat(registry.get("eventbus.stream.dropped").counter().count()).isEqualTo(2);
+
+        eventBus.publish(event("order.placed"));
+
+        assertThat(subscriber.ids()).containsExactly(3L, 4L, 5L, 6L);
+    }
+
+    @Test
+    void cancellingTheStreamUnsubscribesItFromTheBus() {
+        RecordingSubscriber cancelled = new RecordingSubscriber();
+        RecordingSubscriber remaining = new RecordingSubscriber();
+        eventBus.stream(EventCriteria.any()).subscribe(cancelled);
+        eventBus.stream(EventCriteria.any()).subscribe(remaining);
+        cancelled.request(Long.MAX_VALUE);
+        remaining.request(Long.MAX_VALUE);
+
+        eventBus.publish(event("order.placed"));
+        cancelled.cancel();
+        eventBus.publish(event("order.placed"));
+        eventBus.close();
+
+        assertThat(cancelled.ids()).containsExactly(1L);
+        assertThat(cancelled.completed).isFalse();
+        assertThat(remaining.ids()).containsExactly(1L, 2L);
+        assertThat(remaining.completed).isTrue();
+    }
+
+    private static EventEntity event(String type) {
+        EventEntity event = new EventEntity();
+        event.setType(type);
+        event.setSource("shop");
+        event.setSemanticTier(SemanticTier.INTERNAL);
+        event.setOccurredAt(Instant.now());
+        return event;
+    }
+
+    /**
+     * Subscriber requesting nothing until told to, recording what it receives.
+     */
+    private static class RecordingSubscriber extends BaseSubscriber<EventEntity> {
+
+        private final List<EventEntity> received = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        protected void hookOnNext(EventEntity event) {
+            received.add(event);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            completed = true;
+        }
+
+        List<Long> ids() {
+            return received.stream().map(EventEntity::getId).toList();
+        }
+    }
+
+    /**
+     * Store that keeps nothing and only numbers the events appended to it.
+     */
+    private static class IdAssigningStore implements EventStore {
+
+        private final AtomicLong nextId = new AtomicLong(1);
+
+        @Override
+        public EventEntity append(EventEntity event) {
+            event.setId(nextId.getAndIncrement());
+            return event;
+        }
+
+        @Override
+        public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+            return CompletableFuture.completedFuture(append(event));
+        }
+
+        @Override
+        public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+            return 0;
+        }
+
+        @Override
+        public EventScan latest(EventScan scan, int count) {
+            return scan;
+        }
+
+        @Override
+        public Optional<EventEntity> findById(long id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<EventEntity> findByTraceId(String traceId) {
+            return List.of();
+        }
+
+        @Override
+        public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+            return List.of();
+        }
+
+        @Override
+        public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        }
+
+        @Override
+        public Instant findMaxOccurredAt() {
+            return null;
+        }
+    }
+}
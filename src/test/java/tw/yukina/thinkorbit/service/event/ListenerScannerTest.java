@@ -0,0 +1,138 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationContext;
+import tw.yukina.thinkorbit.service.event.entity.EventContext;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.EventView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ListenerScannerTest {
+
+    private final EventBus eventBus = mock(EventBus.class);
+    private final Listeners listeners = new Listeners();
+
+    @Test
+    void bindsParametersByTheArgumentTheyCanTake() {
+        Map<String, EventListener> registered = scan();
+        EventEntity event = new EventEntity();
+
+        registered.values().forEach(listener -> listener.onEvent(EventContext.LIVE, event));
+
+        assertThat(listeners.received).containsOnlyKeys("none", "entity", "view", "context",
+                "contextThenEntity", "entityThenContext", "object", "objects");
+        assertThat(listeners.received.get("none")).isEmpty();
+        assertThat(listeners.received.get("entity")).containsExactly(event);
+        assertThat(listeners.received.get("view")).containsExactly(event);
+        assertThat(listeners.received.get("context")).containsExactly(EventContext.LIVE);
+        assertThat(listeners.received.get("contextThenEntity")).containsExactly(EventContext.LIVE, event);
+        assertThat(listeners.received.get("entityThenContext")).containsExactly(event, EventContext.LIVE);
+    }
+
+    @Test
+    void bindsObjectParametersToTheEventThenTheContext() {
+        Map<String, EventListener> registered = scan();
+        EventEntity event = new EventEntity();
+
+        registered.get("Listeners.object").onEvent(EventContext.LIVE, event);
+        registered.get("Listeners.objects").onEvent(EventContext.LIVE, event);
+
+        // A single Object could take either argument and gets the event; a pair gets the context first
+        assertThat(listeners.received.get("object")).containsExactly(event);
+        assertThat(listeners.received.get("objects")).containsExactly(EventContext.LIVE, event);
+    }
+
+    @Test
+    void skipsMethodsWithUnsupportedSignatures() {
+        assertThat(scan()).doesNotContainKeys("Listeners.unsupported", "Listeners.tooMany");
+    }
+
+    private Map<String, EventListener> scan() {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeanDefinitionNames()).thenReturn(new String[]{"listeners"});
+        when(applicationContext.getBean("listeners")).thenReturn(listeners);
+
+        new ListenerScanner(eventBus, applicationContext).run(null);
+
+        ArgumentCaptor<EventListener> listenerCaptor = ArgumentCaptor.forClass(EventListener.class);
+        ArgumentCaptor<SubscriptionOptions> optionsCaptor = ArgumentCaptor.forClass(SubscriptionOptions.class);
+        verify(eventBus, times(8)).subscribe(any(), listenerCaptor.capture(), optionsCaptor.capture());
+
+        Map<String, EventListener> registered = new HashMap<>();
+        for (int i = 0; i < listenerCaptor.getAllValues().size(); i++) {
+            registered.put(optionsCaptor.getAllValues().get(i).name(), listenerCaptor.getAllValues().get(i));
+        }
+        return registered;
+    }
+
+    static class Listeners {
+
+        private final Map<String, List<Object>> received = new HashMap<>();
+
+        @OnEvent(type = "test")
+        void none() {
+            record("none");
+        }
+
+        @OnEvent(type = "test")
+        void entity(EventEntity event) {
+            record("entity", event);
+        }
+
+        @OnEvent(type = "test")
+        void view(EventView event) {
+            record("view", event);
+        }
+
+        @OnEvent(type = "test")
+        void context(EventContext context) {
+            record("context", context);
+        }
+
+        @OnEvent(type = "test")
+        void contextThenEntity(EventContext context, EventEntity event) {
+            record("contextThenEntity", context, event);
+        }
+
+        @OnEvent(type = "test")
+        void entityThenContext(EventEntity event, EventContext context) {
+            record("entityThenContext", event, context);
+        }
+
+        @OnEvent(type = "test")
+        void object(Object argument) {
+            record("object", argument);
+        }
+
+        @OnEvent(type = "test")
+        void objects(Object first, Object second) {
+            record("objects", first, second);
+        }
+
+        @OnEvent(type = "test")
+        void unsupported(String text) {
+            record("unsupported", text);
+        }
+
+        @OnEvent(type = "test")
+        void tooMany(EventContext context, EventEntity event, Object extra) {
+            record("tooMany", context, event, extra);
+        }
+
+        private void record(String method, Object... arguments) {
+            received.put(method, new ArrayList<>(List.of(arguments)));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package tw.yukina.thinkorbit.service.event;
+
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubscriptionIndexTest {
+
+    private final SubscriptionIndex index = new SubscriptionIndex();
+
+    @Test
+    void callsEveryMatchingSubscriptionExactlyOnce() {
+        add("type", EventCriteria.builder().type("order").build());
+        add("type-source", EventCriteria.builder().type("order").source("shop").build());
+        add("type-source-tier", EventCriteria.builder().type("order").source("shop").tier(SemanticTier.INTERNAL).build());
+        add("type-two-tiers", EventCriteria.builder().type("order").tier(SemanticTier.INTERNAL).tier(SemanticTier.AMBIENT).build());
+        add("fallback-lambda", event -> event.getType().equals("order"));
+        add("fallback-two-types", EventCriteria.builder().type("order").type("refund").build());
+        add("other-tier", EventCriteria.builder().type("order").tier(SemanticTier.AMBIENT).build());
+        add("other-source", EventCriteria.builder().type("order").source("warehouse").build());
+        add("other-type", EventCriteria.builder().type("refund").build());
+        add("fallback-rejecting", event -> false);
+
+        assertThat(matching(event("order", "shop", SemanticTier.INTERNAL))).containsExactlyInAnyOrder(
+                "type", "type-source", "type-source-tier", "type-two-tiers", "fallback-lambda", "fallback-two-types");
+    }
+
+    @Test
+    void callsAnySourceThenSourceThenFallbackSubscriptions() {
+        add("fallback", event -> true);
+        add("source-1", EventCriteria.builder().type("order").source("shop").build());
+        add("any-source-1", EventCriteria.builder().type("order").build());
+        add("source-2", EventCriteria.builder().type("order").source("shop").build());
+        add("any-source-2", EventCriteria.builder().type("order").build());
+
+        assertThat(matching(event("order", "shop", SemanticTier.INTERNAL)))
+                .containsExactly("any-source-1", "any-source-2", "source-1", "source-2", "fallback");
+    }
+
+    @Test
+    void eventWithoutTierOnlyReachesSubscriptionsAcceptingAnyTier() {
+        add("any-tier", EventCriteria.builder().type("order").build());
+        add("internal", EventCriteria.builder().type("order").tier(SemanticTier.INTERNAL).build());
+
+        assertThat(matching(event("order", "shop", null))).containsExactly("any-tier");
+    }
+
+    @Test
+    void removedSubscriptionIsNoLongerCalled() {
+        EventSubscription indexed = add("indexed", EventCriteria.builder().type("order").build());
+        EventSubscription fallback = add("fallback", event -> true);
+        add("kept", EventCriteria.builder().type("order").build());
+
+        assertThat(index.remove(indexed)).isTrue();
+        assertThat(index.remove(fallback)).isTrue();
+        assertThat(index.remove(fallback)).isFalse();
+
+        assertThat(matching(event("order", "shop", SemanticTier.INTERNAL))).containsExactly("kept");
+    }
+
+    private EventSubscription add(String name, EventFilter filter) {
+        EventSubscription subscription = new EventSubscription(name, filter, (context, event) -> {
+        }, null);
+        index.add(subscription);
+        return subscription;
+    }
+
+    private List<String> matching(EventEntity event) {
+        List<String> names = new ArrayList<>();
+        index.forEachMatching(event, (subscription, matched) -> names.add(subscription.name()));
+        return names;
+    }
+
+    private static EventEntity event(String type, String source, SemanticTier tier) {
+        EventEntity event = new EventEntity();
+        event.setType(type);
+        event.setSource(source);
+        event.setSemanticTier(tier);
+        return event;
+    }
+}
@@ -0,0 +1,164 @@
+package tw.yukina.thinkorbit.service.event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaries;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaryRepository;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.EventRepository;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.GroupCommitEventWriter;
+import tw.yukina.thinkorbit.service.event.store.JdbcEventReader;
+import tw.yukina.thinkorbit.service.event.store.JdbcEventStore;
+import tw.yukina.thinkorbit.service.event.store.PostgresStoreTest;
+import tw.yukina.thinkorbit.service.event.store.partition.EventPartitionManager;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Publishes inside the caller's transaction against Postgres, through the group-commit writer and
+ * through the repository.
+ */
+class TransactionalPublishTest extends PostgresStoreTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    private final List<EventEntity> delivered = new CopyOnWriteArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private GroupCommitEventWriter writer;
+    private StandardEventBus eventBus;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        jdbcTemplate.update("delete from event_entity");
+        jdbcTemplate.update("delete from event_idempotency_key");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (eventBus != null) {
+            eventBus.close();
+        }
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void rolledBackPublishLeavesNoTrace() {
+        startBus(true);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventBus.publish(keyed("order-1"));
+            assertThat(delivered).isEmpty();
+            status.setRollbackOnly();
+        });
+
+        assertThat(delivered).isEmpty();
+        assertThat(replayAll()).isEmpty();
+        assertThat(eventBus.dispatchedWatermark()).isZero();
+
+        eventBus.publish(keyed("order-1"));
+
+        assertThat(delivered).extracting(EventEntity::getIdempotencyKey).containsExactly("order-1");
+        assertThat(replayAll()).containsExactly(delivered.get(0).getId());
+        assertThat(jdbcTemplate.queryForObject("select count(*) from event_entity", Long.class)).isEqualTo(1L);
+    }
+
+    @Test
+    void rolledBackRepositoryPublishLeavesNoTrace() {
+        startBus(false);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventBus.publish(keyed("order-1"));
+            status.setRollbackOnly();
+        });
+        eventBus.publish(keyed("order-1"));
+
+        assertThat(delivered).extracting(EventEntity::getIdempotencyKey).containsExactly("order-1");
+        assertThat(replayAll()).containsExactly(delivered.get(0).getId());
+    }
+
+    @Test
+    void committedPublishesAreDispatchedInOrderAfterCommit() {
+        startBus(true);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventBus.publish(keyed("order-1"));
+            eventBus.publish(keyed("order-2"));
+            assertThat(delivered).isEmpty();
+        });
+
+        assertThat(delivered).extracting(EventEntity::getIdempotencyKey).containsExactly("order-1", "order-2");
+        assertThat(replayAll()).containsExactlyElementsOf(delivered.stream().map(EventEntity::getId).toList());
+        assertThat(eventBus.publishAsync(keyed("order-1")).join().getId()).isEqualTo(delivered.get(0).getId());
+        assertThat(delivered).hasSize(2);
+    }
+
+    private void startBus(boolean groupCommit) {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getAsync().setEnabled(false);
+        PayloadCodecs payloadCodecs = new PayloadCodecs(new PayloadDictionaries(mock(PayloadDictionaryRepository.class)));
+
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        if (groupCommit) {
+            writer = new GroupCommitEventWriter(jdbcTemplate, transactionManager, configuration, new SimpleMeterRegistry(),
+                    beans.getBeanProvider(EventPartitionManager.class));
+            beans.registerSingleton("groupCommitEventWriter", writer);
+        }
+        JdbcEventStore store = new JdbcEventStore(eventRepository, beans.getBeanProvider(GroupCommitEventWriter.class),
+                new JdbcEventReader(jdbcTemplate, payloadCodecs, configuration), payloadCodecs, jdbcTemplate,
+                transactionManager, beans.getBeanProvider(EventPartitionManager.class));
+
+        eventBus = new StandardEventBus(store, new EventBusMetrics(new SimpleMeterRegistry()), configuration);
+        eventBus.loadStoreState();
+        eventBus.subscribe(EventCriteria.builder().type("order.placed").build(), (context, event) -> delivered.add(event),
+                new SubscriptionOptions("orders", DeliveryMode.SYNC, 0, OverflowPolicy.BLOCK));
+    }
+
+    private List<Long> replayAll() {
+        List<Long> ids = new ArrayList<>();
+        eventBus.replay(new ReplayRange(null, null, ReplayLevel.SEMANTIC_REPLAY), EventCriteria.any(),
+                (context, event) -> ids.add(event.getId()));
+        return ids;
+    }
+
+    private static EventEntity keyed(String idempotencyKey) {
+        return EventEntity.builder()
+                .type("order.placed")
+                .source("shop")
+                .semanticTier(SemanticTier.INTERNAL)
+                .occurredAt(Instant.now())
+                .idempotencyKey(idempotencyKey)
+                .payload(Map.of("order", idempotencyKey))
+                .build();
+    }
+}
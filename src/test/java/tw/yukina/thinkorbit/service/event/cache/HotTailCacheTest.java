@@ -0,0 +1,142 @@
+package tw.yukina.thinkorbit.service.event.cache;
+
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotTailCacheTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00Z");
+    private static final EventScan ALL = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+
+    @Test
+    void emptyCacheHasNoFloor() {
+        HotTailCache cache = new HotTailCache(10, 1 << 20);
+
+        HotTailCache.Tail tail = cache.snapshot();
+
+        assertThat(tail.floorId()).isEqualTo(Long.MAX_VALUE);
+        assertThat(tail.events(Long.MIN_VALUE, ALL)).isEmpty();
+    }
+
+    @Test
+    void evictsOldestBeyondMaxEvents() {
+        HotTailCache cache = new HotTailCache(3, 1 << 20);
+        for (long id = 1; id <= 5; id++) {
+            cache.add(event(id, T0.plusSeconds(id)));
+        }
+
+        HotTailCache.Tail tail = cache.snapshot();
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(tail.floorId()).isEqualTo(2);
+        assertThat(tail.evictedMaxOccurredAt()).isEqualTo(T0.plusSeconds(2));
+        assertThat(tail.events(tail.floorId(), ALL)).extracting(EventEntity::getId).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    void evictsOldestBeyondMaxSize() {
+        EventEntity first = event(1, T0);
+        long size = HotTailCache.estimateSize(first);
+        HotTailCache cache = new HotTailCache(100, size * 2);
+
+        cache.add(first);
+        cache.add(event(2, T0));
+        cache.add(event(3, T0));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.estimatedBytes()).isLessThanOrEqualTo(size * 2);
+        assertThat(cache.snapshot().floorId()).isEqualTo(1);
+    }
+
+    @Test
+    void returnsEventsAddedOutOfIdOrderSortedAndWithinScan() {
+        HotTailCache cache = new HotTailCache(10, 1 << 20);
+        cache.add(event(3, T0));
+        cache.add(event(1, T0));
+        cache.add(event(2, T0));
+        cache.add(event(4, T0));
+
+        HotTailCache.Tail tail = cache.snapshot();
+
+        // Nothing evicted, so the floor is just below the lowest cached id
+        assertThat(tail.floorId()).isZero();
+        assertThat(tail.events(Long.MIN_VALUE, new EventScan(1, 3, null, null)))
+                .extracting(EventEntity::getId).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void floorNeverDropsBelowEvictedIds() {
+        HotTailCache cache = new HotTailCache(2, 1 << 20);
+        cache.add(event(5, T0));
+        cache.add(event(6, T0));
+        // Evicts 5, while 3 is still cached
+        cache.add(event(3, T0));
+
+        HotTailCache.Tail tail = cache.snapshot();
+
+        assertThat(tail.floorId()).isEqualTo(5);
+        assertThat(tail.events(tail.floorId(), ALL)).extracting(EventEntity::getId).containsExactly(6L);
+    }
+
+    @Test
+    void snapshotIsNotAffectedByLaterAdds() {
+        HotTailCache cache = new HotTailCache(2, 1 << 20);
+        cache.add(event(1, T0));
+        HotTailCache.Tail tail = cache.snapshot();
+
+        cache.add(event(2, T0));
+        cache.add(event(3, T0));
+
+        assertThat(tail.events(Long.MIN_VALUE, ALL)).extracting(EventEntity::getId).containsExactly(1L);
+    }
+
+    @Test
+    void needsStoreOnlyForTimesItMayNotHold() {
+        HotTailCache cache = new HotTailCache(1, 1 << 20);
+        cache.add(event(1, T0.plusSeconds(10)));
+        cache.add(event(2, T0.plusSeconds(20)));
+        HotTailCache.Tail tail = cache.snapshot();
+
+        assertThat(tail.needsStoreFrom(T0.plusSeconds(10), null)).isTrue();
+        assertThat(tail.needsStoreFrom(T0.plusSeconds(15), null)).isFalse();
+        assertThat(tail.needsStoreFrom(T0.plusSeconds(15), T0.plusSeconds(30))).isTrue();
+    }
+
+    @Test
+    void ignoresEventsWithoutId() {
+        HotTailCache cache = new HotTailCache(10, 1 << 20);
+
+        cache.add(EventEntity.builder().type("test").payload(Map.of()).build());
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void clearEvictsEverything() {
+        HotTailCache cache = new HotTailCache(10, 1 << 20);
+        cache.add(event(1, T0));
+        cache.add(event(2, T0));
+
+        cache.clear();
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.estimatedBytes()).isZero();
+        assertThat(cache.snapshot().floorId()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    private static EventEntity event(long id, Instant occurredAt) {
+        return EventEntity.builder()
+                .id(id)
+                .type("test")
+                .source("test")
+                .occurredAt(occurredAt)
+                .payload(Map.of("n", id))
+                .build();
+    }
+}
@@ -0,0 +1,267 @@
+package tw.yukina.thinkorbit.service.event.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaries;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaryRepository;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ClusterNodeTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final SharedStore store = new SharedStore();
+    private final PayloadCodecs payloadCodecs = new PayloadCodecs(new PayloadDictionaries(mock(PayloadDictionaryRepository.class)));
+    private final AtomicLong publisherWatermark = new AtomicLong();
+    private final List<Long> received = new CopyOnWriteArrayList<>();
+    private final List<ClusterNode> nodes = new ArrayList<>();
+
+    /**
+     * While set, the receiving node's sink records the next event and then waits on it.
+     */
+    private volatile CountDownLatch stall;
+
+    @AfterEach
+    void tearDown() {
+        CountDownLatch current = stall;
+        if (current != null) {
+            current.countDown();
+        }
+        nodes.forEach(ClusterNode::close);
+    }
+
+    @Test
+    void deliversEventsPublishedByPeerLive() throws Exception {
+        ClusterNode publisher = start("a", List.of(), 1024, 8);
+        start("b", List.of("127.0.0.1:" + publisher.getPort()), 1024, 8);
+        awaitConnected(publisher);
+
+        publish(publisher, 2, 3, 4);
+
+        awaitReceived(1, 2, 3, 4);
+        assertThat(received).containsExactly(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void catchesUpEventsPublishedWhileDisconnected() throws Exception {
+        ClusterNode publisher = start("a", List.of(), 1024, 8);
+        int port = publisher.getPort();
+        start("b", List.of("127.0.0.1:" + port), 1024, 8);
+        awaitConnected(publisher);
+
+        publisher.close();
+        // Stored by the peer while the receiving node was cut off
+        for (long id = 2; id <= 4; id++) {
+            store.append(event(id, "a"));
+        }
+        store.append(event(5, "other"));
+        publisherWatermark.set(5);
+
+        ClusterNode restarted = start("a", List.of(), port, 1024, 8);
+        publish(restarted, 6);
+
+        awaitReceived(1, 2, 3, 4, 6);
+        assertThat(received).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 6L);
+    }
+
+    @Test
+    void catchesUpEventsSentOutOfIdOrderAfterSendQueueOverflow() throws Exception {
+        ClusterNode publisher = start("a", List.of(), 2, 1);
+        SimpleMeterRegistry receiverRegistry = new SimpleMeterRegistry();
+        start("b", List.of("127.0.0.1:" + publisher.getPort()), 0, 2, 1, new EventBusMetrics(receiverRegistry));
+        awaitConnected(publisher);
+
+        // Dispatched highest id first; the receiver stalls on it, so the others overflow the queue
+        for (long id = 2; id <= 11; id++) {
+            store.append(event(id, "a"));
+        }
+        CountDownLatch release = new CountDownLatch(1);
+        stall = release;
+        publisher.publishLocal(store.find(11));
+        await(() -> received.contains(11L));
+        for (long id = 10; id >= 2; id--) {
+            publisher.publishLocal(store.find(id));
+        }
+        publisherWatermark.set(11);
+        release.countDown();
+
+        awaitReceived(LongStream.rangeClosed(1, 11).toArray());
+        assertThat(received).containsExactlyInAnyOrder(LongStream.rangeClosed(1, 11).boxed().toArray(Long[]::new));
+        assertThat(receiverRegistry.get("eventbus.cluster.events").tag("direction", "caught-up").counter().count())
+                .isPositive();
+    }
+
+    private ClusterNode start(String nodeId, List<String> peers, int sendQueueCapacity, int maxUnackedBatches)
+            throws Exception {
+        return start(nodeId, peers, 0, sendQueueCapacity, maxUnackedBatches);
+    }
+
+    private ClusterNode start(String nodeId, List<String> peers, int port, int sendQueueCapacity,
+                              int maxUnackedBatches) throws Exception {
+        return start(nodeId, peers, port, sendQueueCapacity, maxUnackedBatches,
+                new EventBusMetrics(new SimpleMeterRegistry()));
+    }
+
+    private ClusterNode start(String nodeId, List<String> peers, int port, int sendQueueCapacity,
+                              int maxUnackedBatches, EventBusMetrics metrics) throws Exception {
+        ClusterNode.Options options = new ClusterNode.Options(nodeId, "127.0.0.1", port, peers, 1,
+                Duration.ZERO, maxUnackedBatches, sendQueueCapacity, Duration.ofMillis(50));
+        ClusterNode node = new ClusterNode(options, store, metrics, payloadCodecs, this::sink, publisherWatermark::get);
+        node.start();
+        nodes.add(node);
+        return node;
+    }
+
+    private void sink(EventEntity event) {
+        received.add(event.getId());
+        CountDownLatch current = stall;
+        if (current != null) {
+            stall = null;
+            try {
+                current.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Publishes a first event and waits for it, which shows the receiving node is connected. The
+     * watermark passes it only once received, so a node connecting meanwhile catches it up.
+     */
+    private void awaitConnected(ClusterNode publisher) throws Exception {
+        long id = store.nextId();
+        publisher.publishLocal(store.append(event(id, publisher.getNodeId())));
+        await(() -> received.contains(id));
+        publisherWatermark.accumulateAndGet(id, Math::max);
+    }
+
+    private void publish(ClusterNode publisher, long... ids) {
+        for (long id : ids) {
+            publisher.publishLocal(store.append(event(id, publisher.getNodeId())));
+            publisherWatermark.accumulateAndGet(id, Math::max);
+        }
+    }
+
+    private void awaitReceived(long... ids) throws Exception {
+        await(() -> LongStream.of(ids).allMatch(received::contains));
+        // Give duplicates a chance to show up
+        Thread.sleep(200);
+    }
+
+    private static void await(BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static EventEntity event(long id, String origin) {
+        return EventEntity.builder()
+                .id(id)
+                .type("cluster.test")
+                .source("test")
+                .occurredAt(Instant.now())
+                .origin(origin)
+                .build();
+    }
+
+    /**
+     * In-memory store shared by the nodes, as the database is in a real cluster.
+     */
+    private static class SharedStore implements EventStore {
+
+        private final List<EventEntity> events = new CopyOnWriteArrayList<>();
+
+        long nextId() {
+            return events.stream().mapToLong(EventEntity::getId).max().orElse(0) + 1;
+        }
+
+        EventEntity find(long id) {
+            return findById(id).orElseThrow();
+        }
+
+        @Override
+        public EventEntity append(EventEntity event) {
+            events.add(event);
+            return event;
+        }
+
+        @Override
+        public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+            return CompletableFuture.completedFuture(append(event));
+        }
+
+        @Override
+        public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+            List<EventEntity> matching = events.stream()
+                    .filter(scan::includes)
+                    .sorted((left, right) -> Long.compare(left.getId(), right.getId()))
+                    .toList();
+            matching.forEach(consumer);
+            return matching.size();
+        }
+
+        @Override
+        public EventScan latest(EventScan scan, int count) {
+            if (count <= 0) {
+                return scan.withAfterId(scan.maxId());
+            }
+            List<Long> ids = events.stream().filter(scan::includes).map(EventEntity::getId).sorted().toList();
+            return ids.size() >= count ? scan.withAfterId(ids.get(ids.size() - count) - 1) : scan;
+        }
+
+        @Override
+        public Optional<EventEntity> findById(long id) {
+            return events.stream().filter(event -> event.getId() == id).findFirst();
+        }
+
+        @Override
+        public List<EventEntity> findByTraceId(String traceId) {
+            return List.of();
+        }
+
+        @Override
+        public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+            return List.of();
+        }
+
+        @Override
+        public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        }
+
+        @Override
+        public Instant findMaxOccurredAt() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package tw.yukina.thinkorbit.service.event.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PayloadDictionariesTest {
+
+    private static final String TYPE = "order.placed";
+
+    @Test
+    void compressesWithTrainedDictionaryAndDecodesBack() {
+        PayloadDictionaries dictionaries = new PayloadDictionaries(emptyRepository());
+        PayloadCodecs codecs = new PayloadCodecs(dictionaries);
+        dictionaries.register(train(42));
+
+        Map<String, Object> payload = payload(1001);
+        byte[] encoded = codecs.encode(TYPE, payload);
+
+        assertThat(encoded[0]).isEqualTo(PayloadCodecs.DEFLATE_MARKER);
+        assertThat(encoded.length).isLessThan(PayloadCodecs.SMILE.encode(payload).length + 1);
+        assertThat(codecs.decode(encoded)).isEqualTo(payload);
+    }
+
+    @Test
+    void encodesTypesWithoutDictionaryAsSmile() {
+        PayloadCodecs codecs = new PayloadCodecs(new PayloadDictionaries(emptyRepository()));
+
+        byte[] encoded = codecs.encode("other.type", payload(1));
+
+        assertThat(encoded[0]).isEqualTo(PayloadCodecs.SMILE_MARKER);
+        assertThat(codecs.decode(encoded)).isEqualTo(payload(1));
+    }
+
+    @Test
+    void newestVersionOfTypeIsActive() {
+        PayloadDictionaries dictionaries = new PayloadDictionaries(emptyRepository());
+        dictionaries.register(train(3));
+        dictionaries.register(train(2));
+
+        assertThat(dictionaries.active(TYPE).id()).isEqualTo(3);
+        assertThat(dictionaries.require(2).id()).isEqualTo(2);
+    }
+
+    @Test
+    void loadsUnregisteredDictionaryFromRepository() {
+        PayloadDictionary dictionary = train(7);
+        PayloadDictionaries writerDictionaries = new PayloadDictionaries(emptyRepository());
+        writerDictionaries.register(dictionary);
+        byte[] encoded = new PayloadCodecs(writerDictionaries).encode(TYPE, payload(5));
+
+        PayloadDictionaryRepository repository = mock(PayloadDictionaryRepository.class);
+        when(repository.findById(7L)).thenReturn(Optional.of(PayloadDictionaryEntity.builder()
+                .id(7L).type(TYPE).data(dictionary.data()).createdAt(dictionary.createdAt()).build()));
+        PayloadCodecs readerCodecs = new PayloadCodecs(new PayloadDictionaries(repository));
+
+        assertThat(readerCodecs.decode(encoded)).isEqualTo(payload(5));
+    }
+
+    @Test
+    void rejectsUnknownDictionary() {
+        PayloadDictionaries dictionaries = new PayloadDictionaries(emptyRepository());
+
+        assertThatThrownBy(() -> dictionaries.require(99))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("99");
+    }
+
+    private static PayloadDictionary train(long id) {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            samples.add(PayloadCodecs.SMILE.encode(payload(i)));
+        }
+        byte[] data = DictionaryTrainer.train(samples, 4096);
+        return new PayloadDictionary(id, TYPE, data, Instant.now());
+    }
+
+    private static Map<String, Object> payload(int orderNumber) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("orderNumber", orderNumber);
+        payload.put("customerTier", "gold");
+        payload.put("shippingMethod", "express-international");
+        payload.put("currency", "TWD");
+        payload.put("status", "awaiting-payment-confirmation");
+        return payload;
+    }
+
+    private static PayloadDictionaryRepository emptyRepository() {
+        PayloadDictionaryRepository repository = mock(PayloadDictionaryRepository.class);
+        when(repository.findById(anyLong())).thenReturn(Optional.empty());
+        return repository;
+    }
+}
@@ -0,0 +1,79 @@
+package tw.yukina.thinkorbit.service.event.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatchWatermarkTest {
+
+    private final DispatchWatermark watermark = new DispatchWatermark(4);
+
+    @Test
+    void startsAtZero() {
+        assertThat(watermark.get()).isZero();
+    }
+
+    @Test
+    void followsCompletedPublishesWhenNothingIsInFlight() {
+        watermark.complete(watermark.begin(), 1L);
+        watermark.complete(watermark.begin(), 2L);
+
+        assertThat(watermark.get()).isEqualTo(2);
+    }
+
+    @Test
+    void staysBelowPublishStillInFlight() {
+        watermark.complete(watermark.begin(), 1L);
+        int slow = watermark.begin();
+        int fast = watermark.begin();
+
+        // The slow publish got id 2 but the fast one, with id 3, is dispatched first
+        watermark.complete(fast, 3L);
+        assertThat(watermark.get()).isEqualTo(1);
+
+        watermark.complete(slow, 2L);
+        assertThat(watermark.get()).isEqualTo(3);
+    }
+
+    @Test
+    void failedPublishReleasesItsFloor() {
+        int failed = watermark.begin();
+        int next = watermark.begin();
+        watermark.complete(next, 1L);
+        watermark.complete(failed, null);
+
+        assertThat(watermark.get()).isEqualTo(1);
+    }
+
+    @Test
+    void holdsStillWhilePublishesFindNoSlot() {
+        watermark.complete(watermark.begin(), 1L);
+        assertThat(watermark.get()).isEqualTo(1);
+
+        int[] slots = new int[4];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = watermark.begin();
+        }
+        int untracked = watermark.begin();
+        assertThat(untracked).isEqualTo(DispatchWatermark.NO_SLOT);
+
+        for (int i = 0; i < slots.length; i++) {
+            watermark.complete(slots[i], 3L + i);
+        }
+        assertThat(watermark.get()).isEqualTo(1);
+
+        watermark.complete(untracked, 2L);
+        assertThat(watermark.get()).isEqualTo(6);
+    }
+
+    @Test
+    void neverMovesBack() {
+        watermark.complete(watermark.begin(), 5L);
+        assertThat(watermark.get()).isEqualTo(5);
+
+        int stale = watermark.begin();
+        assertThat(watermark.get()).isEqualTo(5);
+        watermark.complete(stale, 6L);
+        assertThat(watermark.get()).isEqualTo(6);
+    }
+}
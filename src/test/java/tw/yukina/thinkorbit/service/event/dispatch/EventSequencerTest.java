@@ -0,0 +1,190 @@
+package tw.yukina.thinkorbit.service.event.dispatch;
+
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("unchecked")
+class EventSequencerTest {
+
+    private final EventSequencer sequencer = new EventSequencer();
+    private final List<EventEntity> dispatched = new CopyOnWriteArrayList<>();
+
+    @Test
+    void dispatchesEventsOfOneSourceInTicketOrder() throws Exception {
+        List<EventEntity> events = new ArrayList<>();
+        List<Long> tickets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            EventEntity event = event("a", "a" + i);
+            events.add(event);
+            tickets.add(sequencer.ticket(event));
+        }
+
+        List<CompletableFuture<Void>> dispatches = new ArrayList<>();
+        for (int i = events.size() - 1; i >= 0; i--) {
+            int index = i;
+            dispatches.add(CompletableFuture.runAsync(() ->
+                    sequencer.dispatch(tickets.get(index), events.get(index), dispatched::add)));
+        }
+        CompletableFuture.allOf(dispatches.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertThat(dispatched).containsExactlyElementsOf(events);
+        assertThat(dispatched).extracting(EventEntity::getSourceSequence)
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+    }
+
+    @Test
+    void dispatchesInTicketOrderWithMoreWaitersThanSlots() throws Exception {
+        int count = EventSequencer.WAITER_SLOTS * 3;
+        List<EventEntity> events = new ArrayList<>();
+        List<Long> tickets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            EventEntity event = event("a", "a" + i);
+            events.add(event);
+            tickets.add(sequencer.ticket(event));
+        }
+
+        // Each on its own thread, latest ticket first, so most of them park
+        List<Thread> threads = new ArrayList<>();
+        for (int i = count - 1; i >= 0; i--) {
+            int index = i;
+            Thread thread = new Thread(() -> sequencer.dispatch(tickets.get(index), events.get(index), dispatched::add),
+                    "event-test-dispatch-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertThat(dispatched).containsExactlyElementsOf(events);
+    }
+
+    @Test
+    void sourceIsNotHeldUpByAnotherSourcesPendingTicket() throws Exception {
+        EventEntity pending = event("a", "pending");
+        long ticket = sequencer.ticket(pending);
+
+        CompletableFuture.runAsync(() -> sequencer.dispatch(event("b", "other"), dispatched::add))
+                .get(5, TimeUnit.SECONDS);
+        sequencer.dispatch(ticket, pending, dispatched::add);
+
+        assertThat(dispatched).extracting(EventEntity::getType).containsExactly("other", "pending");
+    }
+
+    @Test
+    void skippedTicketPassesTurnOnWithoutNumbering() throws Exception {
+        EventEntity failed = event("a", "failed");
+        EventEntity next = event("a", "next");
+        long failedTicket = sequencer.ticket(failed);
+        long nextTicket = sequencer.ticket(next);
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> sequencer.dispatch(nextTicket, next, dispatched::add));
+        sequencer.skip(failedTicket, failed);
+        waiting.get(5, TimeUnit.SECONDS);
+
+        assertThat(dispatched).containsExactly(next);
+        assertThat(next.getSourceSequence()).isEqualTo(1);
+    }
+
+    @Test
+    void listenersPublishingToEachOthersSourcesDoNotDeadlock() throws Exception {
+        CountDownLatch bothDispatching = new CountDownLatch(2);
+        Consumer<EventEntity> crossPublishing = event -> {
+            dispatched.add(event);
+            if (event.getType().startsWith("first")) {
+                bothDispatching.countDown();
+                await(bothDispatching);
+                String otherSource = event.getSource().equals("a") ? "b" : "a";
+                EventEntity published = event(otherSource, "caused-by-" + event.getSource());
+                sequencer.dispatch(sequencer.ticket(published), published, dispatched::add);
+            }
+        };
+
+        CompletableFuture<Void> a = CompletableFuture.runAsync(() -> sequencer.dispatch(event("a", "first"), crossPublishing));
+        CompletableFuture<Void> b = CompletableFuture.runAsync(() -> sequencer.dispatch(event("b", "first"), crossPublishing));
+        CompletableFuture.allOf(a, b).get(5, TimeUnit.SECONDS);
+
+        assertThat(dispatched).extracting(EventEntity::getType)
+                .containsExactlyInAnyOrder("first", "first", "caused-by-a", "caused-by-b");
+    }
+
+    @Test
+    void failingListenerStillPassesTurnOn() throws Exception {
+        EventEntity failing = event("a", "failing");
+        long ticket = sequencer.ticket(failing);
+        try {
+            sequencer.dispatch(ticket, failing, event -> {
+                throw new IllegalStateException("listener failed");
+            });
+        } catch (IllegalStateException expected) {
+            // Propagated to the publisher
+        }
+
+        CompletableFuture.runAsync(() -> sequencer.dispatch(event("a", "next"), dispatched::add))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(dispatched).extracting(EventEntity::getType).containsExactly("next");
+    }
+
+    @Test
+    void eventsPublishedByListenersAreDispatchedBreadthFirst() {
+        Consumer<EventEntity>[] listener = new Consumer[1];
+        listener[0] = event -> {
+            dispatched.add(event);
+            if (event.getType().length() < 3) {
+                for (String child : List.of("1", "2")) {
+                    EventEntity published = event("a", event.getType() + child);
+                    sequencer.dispatch(sequencer.ticket(published), published, listener[0]);
+                }
+            }
+        };
+
+        sequencer.dispatch(event("a", "r"), listener[0]);
+
+        assertThat(dispatched).extracting(EventEntity::getType)
+                .containsExactly("r", "r1", "r2", "r11", "r12", "r21", "r22");
+        assertThat(dispatched).extracting(EventEntity::getSourceSequence)
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+    }
+
+    @Test
+    void deepCausalChainRunsInConstantStackSpace() {
+        int depth = 10_000;
+        Consumer<EventEntity>[] listener = new Consumer[1];
+        listener[0] = event -> {
+            dispatched.add(event);
+            if (dispatched.size() < depth) {
+                EventEntity published = event("a", "chain");
+                sequencer.dispatch(sequencer.ticket(published), published, listener[0]);
+            }
+        };
+
+        sequencer.dispatch(event("a", "chain"), listener[0]);
+
+        assertThat(dispatched).hasSize(depth);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static EventEntity event(String source, String type) {
+        EventEntity event = new EventEntity();
+        event.setSource(source);
+        event.setType(type);
+        return event;
+    }
+}
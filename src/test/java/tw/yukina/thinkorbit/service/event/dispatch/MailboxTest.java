@@ -0,0 +1,132 @@
+package tw.yukina.thinkorbit.service.event.dispatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.OverflowPolicy;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MailboxTest {
+
+    private final List<Long> delivered = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstDelivered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Mailbox mailbox;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    @Test
+    void spillDeliversExactlyTheSpilledEventsOnce() throws InterruptedException {
+        // The store holds events 1 to 6; only some of them are offered, not in id order
+        List<EventEntity> stored = LongStream.rangeClosed(1, 6).mapToObj(MailboxTest::event).toList();
+        mailbox = new Mailbox("test", 1, OverflowPolicy.SPILL, this::blockOnFirst,
+                (scan, consumer) -> stored.stream().filter(scan::includes).forEach(consumer));
+
+        mailbox.offer(event(1));
+        assertThat(firstDelivered.await(5, TimeUnit.SECONDS)).isTrue();
+        mailbox.offer(event(4));
+        mailbox.offer(event(5));
+        mailbox.offer(event(3));
+        release.countDown();
+
+        awaitDelivered(4);
+        Thread.sleep(200);
+        assertThat(delivered).containsExactly(1L, 4L, 3L, 5L);
+        assertThat(mailbox.getSpilled()).isEqualTo(2);
+    }
+
+    @Test
+    void resumesQueueingOnceSpillIsReadBack() throws InterruptedException {
+        List<EventEntity> stored = LongStream.rangeClosed(1, 10).mapToObj(MailboxTest::event).toList();
+        mailbox = new Mailbox("test", 1, OverflowPolicy.SPILL, this::blockOnFirst,
+                (scan, consumer) -> stored.stream().filter(scan::includes).forEach(consumer));
+
+        mailbox.offer(event(1));
+        assertThat(firstDelivered.await(5, TimeUnit.SECONDS)).isTrue();
+        mailbox.offer(event(2));
+        mailbox.offer(event(3));
+        release.countDown();
+        awaitDelivered(3);
+
+        mailbox.offer(event(7));
+        awaitDelivered(4);
+        assertThat(delivered).containsExactly(1L, 2L, 3L, 7L);
+        assertThat(mailbox.getSpilled()).isEqualTo(1);
+    }
+
+    @Test
+    void dropNewestKeepsQueuedEvents() throws InterruptedException {
+        mailbox = new Mailbox("test", 1, OverflowPolicy.DROP_NEWEST, this::blockOnFirst, (scan, consumer) -> {
+        });
+
+        mailbox.offer(event(1));
+        assertThat(firstDelivered.await(5, TimeUnit.SECONDS)).isTrue();
+        mailbox.offer(event(2));
+        mailbox.offer(event(3));
+        release.countDown();
+
+        awaitDelivered(2);
+        assertThat(delivered).containsExactly(1L, 2L);
+        assertThat(mailbox.getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void dropOldestKeepsNewestEvents() throws InterruptedException {
+        mailbox = new Mailbox("test", 1, OverflowPolicy.DROP_OLDEST, this::blockOnFirst, (scan, consumer) -> {
+        });
+
+        mailbox.offer(event(1));
+        assertThat(firstDelivered.await(5, TimeUnit.SECONDS)).isTrue();
+        mailbox.offer(event(2));
+        mailbox.offer(event(3));
+        release.countDown();
+
+        awaitDelivered(2);
+        assertThat(delivered).containsExactly(1L, 3L);
+        assertThat(mailbox.getDropped()).isEqualTo(1);
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(delivered).hasSizeGreaterThanOrEqualTo(count);
+    }
+
+    /**
+     * Delivery that holds the drainer on the first event until released, so later offers find
+     * the mailbox full.
+     */
+    private void blockOnFirst(EventEntity event) {
+        delivered.add(event.getId());
+        if (event.getId() == 1) {
+            firstDelivered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static EventEntity event(long id) {
+        EventEntity event = new EventEntity();
+        event.setId(id);
+        event.setType("test");
+        return event;
+    }
+}
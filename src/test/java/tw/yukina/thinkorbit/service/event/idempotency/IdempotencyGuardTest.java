@@ -0,0 +1,176 @@
+package tw.yukina.thinkorbit.service.event.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyGuardTest {
+
+    private EventStore eventStore;
+
+    @BeforeEach
+    void setUp() {
+        eventStore = mock(EventStore.class);
+        when(eventStore.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void newKeyIsClaimedWithoutLookingUpTheStore() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+
+        IdempotencyGuard.Claim claim = guard.claim(event("a"));
+
+        assertThat(claim.getResult()).isEqualTo(IdempotencyGuard.Result.NEW);
+        assertThat(claim.isDuplicate()).isFalse();
+        verify(eventStore, never()).findByIdempotencyKey(anyString());
+    }
+
+    @Test
+    void keyInFlightIsRecentAndSharesTheOriginal() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        IdempotencyGuard.Claim first = guard.claim(event("a"));
+
+        IdempotencyGuard.Claim second = guard.claim(event("a"));
+        assertThat(second.getResult()).isEqualTo(IdempotencyGuard.Result.RECENT);
+        assertThat(second.getOriginal()).isNotDone();
+
+        EventEntity persisted = event("a");
+        first.complete(persisted);
+        assertThat(second.getOriginal()).isCompletedWithValue(persisted);
+    }
+
+    @Test
+    void failedClaimReleasesTheKeyAndFailsWaitingDuplicates() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        IdempotencyGuard.Claim first = guard.claim(event("a"));
+        IdempotencyGuard.Claim waiting = guard.claim(event("a"));
+
+        first.fail(new IllegalStateException("store down"));
+
+        assertThat(waiting.getOriginal()).isCompletedExceptionally();
+        IdempotencyGuard.Claim retry = guard.claim(event("a"));
+        // The filter still holds the key, so only the store lookup tells it was never written
+        assertThat(retry.getResult()).isEqualTo(IdempotencyGuard.Result.FALSE_POSITIVE);
+        assertThat(retry.isDuplicate()).isFalse();
+    }
+
+    @Test
+    void keyEvictedFromRecentKeysIsFoundInTheStore() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 1);
+        EventEntity stored = event("a");
+        guard.claim(event("a")).complete(stored);
+        guard.claim(event("b")).complete(event("b"));
+        when(eventStore.findByIdempotencyKey("a")).thenReturn(Optional.of(stored));
+
+        IdempotencyGuard.Claim claim = guard.claim(event("a"));
+
+        assertThat(claim.getResult()).isEqualTo(IdempotencyGuard.Result.STORED);
+        assertThat(claim.getOriginal()).isCompletedWithValue(stored);
+    }
+
+    @Test
+    void keyDroppedWithOlderFilterGenerationIsNotCaught() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 10, 0.01, 1);
+        guard.claim(event("old")).complete(event("old"));
+        for (int i = 0; i < 40; i++) {
+            guard.claim(event("key-" + i)).complete(event("key-" + i));
+        }
+
+        assertThat(guard.claim(event("old")).isDuplicate()).isFalse();
+    }
+
+    @Test
+    void persistedCompletesTheOriginalBeforeThePublisherDoes() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        guard.claim(event("a"));
+        IdempotencyGuard.Claim duplicate = guard.claim(event("a"));
+
+        EventEntity persisted = event("a");
+        guard.persisted(persisted);
+
+        assertThat(duplicate.getOriginal()).isCompletedWithValue(persisted);
+    }
+
+    @Test
+    void persistedRecentKeyLoadsItsEventOnlyWhenAsked() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        EventEntity stored = event("a");
+        guard.claim(event("a")).complete(stored);
+
+        IdempotencyGuard.Claim duplicate = guard.claim(event("a"));
+        duplicate.awaitOriginal();
+
+        assertThat(duplicate.getResult()).isEqualTo(IdempotencyGuard.Result.RECENT);
+        verify(eventStore, never()).findByIdempotencyKey(anyString());
+
+        when(eventStore.findByIdempotencyKey("a")).thenReturn(Optional.of(stored));
+        assertThat(duplicate.getOriginal()).isCompletedWithValue(stored);
+    }
+
+    @Test
+    void recentKeyWhoseEventIsGoneIsForgottenWhenLoaded() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        guard.claim(event("a")).complete(event("a"));
+
+        assertThat(guard.claim(event("a")).getOriginal()).isCompletedExceptionally();
+        assertThat(guard.claim(event("a")).getResult()).isEqualTo(IdempotencyGuard.Result.FALSE_POSITIVE);
+    }
+
+    @Test
+    void forgottenKeysCanBePublishedAgain() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        guard.claim(event("a")).complete(event("a"));
+
+        guard.forget(List.of("a"));
+
+        IdempotencyGuard.Claim claim = guard.claim(event("a"));
+        assertThat(claim.getResult()).isEqualTo(IdempotencyGuard.Result.FALSE_POSITIVE);
+        assertThat(claim.isDuplicate()).isFalse();
+    }
+
+    @Test
+    void forgettingLeavesKeysInFlightReserved() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        guard.claim(event("a"));
+
+        guard.forget(List.of("a"));
+
+        assertThat(guard.claim(event("a")).getResult()).isEqualTo(IdempotencyGuard.Result.RECENT);
+    }
+
+    @Test
+    void preloadedKeysAreLookedUpInTheStore() {
+        IdempotencyGuard guard = new IdempotencyGuard(eventStore, 1_000, 0.01, 100);
+        EventEntity stored = event("a");
+        doAnswer(invocation -> {
+            invocation.<Consumer<String>>getArgument(1).accept("a");
+            return null;
+        }).when(eventStore).forEachIdempotencyKey(any(), any());
+        when(eventStore.findByIdempotencyKey("a")).thenReturn(Optional.of(stored));
+        guard.preload(Instant.EPOCH);
+
+        assertThat(guard.claim(event("a")).getResult()).isEqualTo(IdempotencyGuard.Result.STORED);
+    }
+
+    private static EventEntity event(String idempotencyKey) {
+        EventEntity event = new EventEntity();
+        event.setType("test");
+        event.setIdempotencyKey(idempotencyKey);
+        return event;
+    }
+}
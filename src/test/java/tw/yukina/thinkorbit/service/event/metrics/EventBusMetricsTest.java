@@ -0,0 +1,104 @@
+package tw.yukina.thinkorbit.service.event.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.ReplayHandle;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EventBusMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void tagsLatenciesByTypeSourceAndListenerAndCountsByTier() {
+        EventBusMetrics metrics = new EventBusMetrics(registry);
+        EventEntity event = event("order.placed", "shop", SemanticTier.INTERNAL);
+
+        metrics.recordPublish(event, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordPersist(event, TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.recordDelivery("OrderListener.onPlaced", event, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertThat(registry.get("eventbus.publish").tags("type", "order.placed", "source", "shop").timer()
+                .totalTime(TimeUnit.MILLISECONDS)).isEqualTo(3);
+        assertThat(registry.get("eventbus.persist").tags("type", "order.placed", "source", "shop").timer()
+                .totalTime(TimeUnit.MILLISECONDS)).isEqualTo(2);
+        assertThat(registry.get("eventbus.dispatch").tag("listener", "OrderListener.onPlaced").timer()
+                .totalTime(TimeUnit.MILLISECONDS)).isEqualTo(1);
+        assertThat(registry.get("eventbus.events.published").tag("tier", "internal").counter().count()).isEqualTo(1);
+        assertThat(registry.get("eventbus.events.delivered")
+                .tags("listener", "OrderListener.onPlaced", "tier", "internal").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void reusesMetersAcrossEventsAndTagsMissingValuesAsNone() {
+        EventBusMetrics metrics = new EventBusMetrics(registry);
+
+        metrics.recordPublish(event("order.placed", "shop", SemanticTier.INTERNAL), 1);
+        int meters = registry.getMeters().size();
+        metrics.recordPublish(event("order.placed", "shop", SemanticTier.INTERNAL), 1);
+        metrics.recordPublish(event("order.placed", null, null), 1);
+
+        assertThat(registry.get("eventbus.publish").tags("type", "order.placed", "source", "shop").timer().count())
+                .isEqualTo(2);
+        assertThat(registry.get("eventbus.publish").tags("type", "order.placed", "source", "none").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("eventbus.events.published").tag("tier", "none").counter().count()).isEqualTo(1);
+        assertThat(registry.getMeters()).hasSize(meters + 2);
+    }
+
+    @Test
+    void typesBeyondTheCapRecordNothing() {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getMetrics().setMaxTypeTags(2);
+        registry.config().meterFilter(new EventBusMeterFilters().eventBusTypeTagLimit(configuration));
+        EventBusMetrics metrics = new EventBusMetrics(registry);
+
+        for (String type : new String[]{"a", "b", "c", "d"}) {
+            metrics.recordPublish(event(type, "shop", SemanticTier.INTERNAL), 1);
+        }
+
+        assertThat(registry.find("eventbus.publish").timers())
+                .extracting(timer -> timer.getId().getTag("type"))
+                .containsExactlyInAnyOrder("a", "b");
+        assertThat(registry.get("eventbus.events.published").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void gaugesReplaysInProgressAndTheParallelBacklog() {
+        EventBusMetrics metrics = new EventBusMetrics(registry);
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        ReplayHandle handle = mock(ReplayHandle.class);
+        when(handle.completion()).thenReturn(completion);
+        when(handle.getEventsRead()).thenReturn(10L);
+        when(handle.getEventsDelivered()).thenReturn(4L);
+
+        metrics.replayStarted();
+        metrics.trackReplay(handle);
+
+        assertThat(registry.get("eventbus.replay.active").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("eventbus.replay.backlog").gauge().value()).isEqualTo(6);
+
+        completion.complete(null);
+        metrics.replayFinished();
+
+        assertThat(registry.get("eventbus.replay.active").gauge().value()).isZero();
+        assertThat(registry.get("eventbus.replay.backlog").gauge().value()).isZero();
+    }
+
+    private static EventEntity event(String type, String source, SemanticTier tier) {
+        EventEntity event = new EventEntity();
+        event.setType(type);
+        event.setSource(source);
+        event.setSemanticTier(tier);
+        return event;
+    }
+}
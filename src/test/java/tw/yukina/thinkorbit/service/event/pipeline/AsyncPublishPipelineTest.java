@@ -0,0 +1,133 @@
+package tw.yukina.thinkorbit.service.event.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncPublishPipelineTest {
+
+    private final AtomicLong ids = new AtomicLong();
+    private final List<EventEntity> dispatched = new CopyOnWriteArrayList<>();
+    private AsyncPublishPipeline pipeline;
+
+    @AfterEach
+    void shutdown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void persistsThenDispatchesInSubmitOrder() throws Exception {
+        pipeline = new AsyncPublishPipeline(16, this::assignId, dispatched::add);
+
+        List<CompletableFuture<EventEntity>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(pipeline.submit(event("e" + i)));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertThat(dispatched).extracting(EventEntity::getType)
+                .containsExactlyElementsOf(futures.stream().map(f -> f.join().getType()).toList());
+        assertThat(dispatched).allSatisfy(event -> assertThat(event.getId()).isNotNull());
+    }
+
+    @Test
+    void failedPersistCompletesFutureExceptionallyWithoutDispatch() {
+        pipeline = new AsyncPublishPipeline(8,
+                event -> CompletableFuture.failedFuture(new IllegalStateException("disk full")),
+                dispatched::add);
+
+        CompletableFuture<EventEntity> future = pipeline.submit(event("lost"));
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("disk full");
+        assertThat(dispatched).isEmpty();
+    }
+
+    @Test
+    void shutdownDrainsClaimedEventsAndRejectsLaterOnes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = new AsyncPublishPipeline(8, event -> {
+            await(release);
+            return assignId(event);
+        }, dispatched::add);
+
+        List<CompletableFuture<EventEntity>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> pipeline.submit(event("drain"))).thenCompose(f -> f));
+        }
+        Thread.sleep(50);
+
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(pipeline::shutdown);
+        Thread.sleep(50);
+        release.countDown();
+        stopped.get(10, TimeUnit.SECONDS);
+
+        long completed = futures.stream().filter(f -> !f.isCompletedExceptionally()).count();
+        assertThat(futures).allSatisfy(future -> assertThat(future).isDone());
+        assertThat(dispatched).hasSize((int) completed);
+        assertThat(pipeline.submit(event("late"))).isCompletedExceptionally();
+    }
+
+    @Test
+    void submitFromTheDispatchThreadIntoAFullRingFailsInsteadOfWaiting() throws Exception {
+        List<CompletableFuture<EventEntity>> resubmitted = new CopyOnWriteArrayList<>();
+        AsyncPublishPipeline[] self = new AsyncPublishPipeline[1];
+        pipeline = new AsyncPublishPipeline(2, this::assignId, event -> {
+            dispatched.add(event);
+            if (event.getType().equals("first")) {
+                for (int i = 0; i < 4; i++) {
+                    resubmitted.add(self[0].submit(event("resubmitted")));
+                }
+            }
+        });
+        self[0] = pipeline;
+
+        pipeline.submit(event("first")).get(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(resubmitted.stream()
+                .map(future -> future.exceptionally(failure -> null))
+                .toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertThat(resubmitted).hasSize(4);
+        // The slot of the event being dispatched is still taken, so only one more fits
+        assertThat(resubmitted.get(0)).isCompleted();
+        assertThat(resubmitted.subList(1, 4)).allSatisfy(future -> assertThatThrownBy(future::join)
+                .hasCauseInstanceOf(RejectedExecutionException.class));
+        assertThat(dispatched).extracting(EventEntity::getType).containsExactly("first", "resubmitted");
+    }
+
+    private CompletableFuture<EventEntity> assignId(EventEntity event) {
+        event.setId(ids.incrementAndGet());
+        return CompletableFuture.completedFuture(event);
+    }
+
+    private static EventEntity event(String type) {
+        EventEntity event = new EventEntity();
+        event.setType(type);
+        event.setSource("test");
+        return event;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
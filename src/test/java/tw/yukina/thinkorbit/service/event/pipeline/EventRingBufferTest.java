@@ -0,0 +1,55 @@
+package tw.yukina.thinkorbit.service.event.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventRingBufferTest {
+
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        assertThat(new EventRingBuffer(1000).getCapacity()).isEqualTo(1024);
+        assertThat(new EventRingBuffer(8).getCapacity()).isEqualTo(8);
+    }
+
+    @Test
+    void highestPublishedStopsAtFirstGap() {
+        EventRingBuffer ringBuffer = new EventRingBuffer(8);
+        long first = ringBuffer.next();
+        long second = ringBuffer.next();
+        long third = ringBuffer.next();
+
+        ringBuffer.publish(first);
+        ringBuffer.publish(third);
+
+        assertThat(ringBuffer.highestPublished(first, third)).isEqualTo(first);
+
+        ringBuffer.publish(second);
+
+        assertThat(ringBuffer.highestPublished(first, third)).isEqualTo(third);
+        assertThat(ringBuffer.highestPublished(third + 1, third)).isEqualTo(third);
+    }
+
+    @Test
+    void producerWaitsForSlowestGatingSequence() throws Exception {
+        EventRingBuffer ringBuffer = new EventRingBuffer(2);
+        AtomicLong consumed = new AtomicLong(-1);
+        ringBuffer.addGatingSequence(consumed);
+
+        ringBuffer.publish(ringBuffer.next());
+        ringBuffer.publish(ringBuffer.next());
+
+        CompletableFuture<Long> wrapped = CompletableFuture.supplyAsync(ringBuffer::next);
+        Thread.sleep(50);
+        assertThat(wrapped).isNotDone();
+
+        consumed.set(0);
+
+        assertThat(wrapped.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(ringBuffer.get(2)).isSameAs(ringBuffer.get(0));
+    }
+}
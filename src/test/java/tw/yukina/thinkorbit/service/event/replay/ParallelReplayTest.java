@@ -0,0 +1,99 @@
+package tw.yukina.thinkorbit.service.event.replay;
+
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.ReplayLevel;
+import tw.yukina.thinkorbit.service.event.ReplayPartitionKey;
+import tw.yukina.thinkorbit.service.event.entity.EventContext;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParallelReplayTest {
+
+    private static final EventContext CONTEXT = EventContext.replay(ReplayLevel.SEMANTIC_REPLAY);
+
+    private final Map<String, List<Long>> deliveredByKey = new ConcurrentHashMap<>();
+
+    @Test
+    void deliversEventsOfOneKeyInIdOrder() throws Exception {
+        List<EventEntity> events = new ArrayList<>();
+        for (long id = 1; id <= 2_000; id++) {
+            events.add(event(id, "trace-" + (id % 13)));
+        }
+        ParallelReplay replay = new ParallelReplay(ReplayPartitionKey.TRACE_ID, 4, 8, CONTEXT, (context, event) -> {
+            // Uneven work, so workers drift apart
+            if (ThreadLocalRandom.current().nextInt(20) == 0) {
+                Thread.yield();
+            }
+            deliveredByKey.computeIfAbsent(event.traceId(), key -> new ArrayList<>()).add(event.getId());
+        });
+
+        replay.start(feed(events)).completion().get(10, TimeUnit.SECONDS);
+
+        assertThat(replay.getEventsRead()).isEqualTo(events.size());
+        assertThat(replay.getEventsDelivered()).isEqualTo(events.size());
+        assertThat(deliveredByKey).hasSize(13);
+        deliveredByKey.forEach((key, ids) -> assertThat(ids).as(key).isSorted());
+        assertThat(deliveredByKey.values().stream().mapToInt(List::size).sum()).isEqualTo(events.size());
+    }
+
+    @Test
+    void deliversEventsWithoutKeyInIdOrderOnOneWorker() throws Exception {
+        List<EventEntity> events = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            events.add(event(id, null));
+        }
+        List<String> threads = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        ParallelReplay replay = new ParallelReplay(ReplayPartitionKey.TRACE_ID, 4, 8, CONTEXT, (context, event) -> {
+            threads.add(Thread.currentThread().getName());
+            ids.add(event.getId());
+        });
+
+        replay.start(feed(events)).completion().get(10, TimeUnit.SECONDS);
+
+        assertThat(ids).isSorted().hasSize(events.size());
+        assertThat(threads).containsOnly("event-replay-worker-0");
+    }
+
+    @Test
+    void firstListenerFailureAbortsTheReplay() {
+        List<EventEntity> events = new ArrayList<>();
+        for (long id = 1; id <= 1_000; id++) {
+            events.add(event(id, "trace-" + (id % 3)));
+        }
+        ParallelReplay replay = new ParallelReplay(ReplayPartitionKey.TRACE_ID, 2, 4, CONTEXT, (context, event) -> {
+            if (event.getId() == 10) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+
+        assertThatThrownBy(() -> replay.start(feed(events)).completion().get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("listener failed");
+        assertThat(replay.getEventsDelivered()).isLessThan(events.size());
+    }
+
+    private static Consumer<Consumer<EventEntity>> feed(List<EventEntity> events) {
+        return consumer -> events.forEach(consumer);
+    }
+
+    private static EventEntity event(long id, String traceId) {
+        EventEntity event = new EventEntity();
+        event.setId(id);
+        event.setType("replay.test");
+        event.setSource("test");
+        event.setTraceId(traceId);
+        return event;
+    }
+}
@@ -0,0 +1,196 @@
+package tw.yukina.thinkorbit.service.event.retention;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.idempotency.IdempotencyKeysReleased;
+import tw.yukina.thinkorbit.service.event.store.PostgresStoreTest;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetentionServiceTest extends PostgresStoreTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Object> released = new CopyOnWriteArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("delete from event_entity");
+        jdbcTemplate.update("delete from event_idempotency_key");
+        jdbcTemplate.update("delete from event_rollup_entity");
+    }
+
+    @Test
+    void eachEventFollowsItsMostSpecificPolicy() {
+        RetentionService retention = createService(10,
+                policy(null, SemanticTier.INTERNAL, Duration.ofDays(1), false),
+                policy("audit", null, null, false),
+                policy("metric", SemanticTier.INTERNAL, Duration.ofHours(1), false));
+        Instant now = Instant.now();
+
+        insert("order", SemanticTier.INTERNAL, now.minus(2, ChronoUnit.DAYS), null);
+        long oldAudit = insert("audit", SemanticTier.INTERNAL, now.minus(2, ChronoUnit.DAYS), null);
+        insert("metric", SemanticTier.INTERNAL, now.minus(2, ChronoUnit.HOURS), null);
+        long recentMetric = insert("metric", SemanticTier.INTERNAL, now.minus(30, ChronoUnit.MINUTES), null);
+        long recentOrder = insert("order", SemanticTier.INTERNAL, now.minus(2, ChronoUnit.HOURS), null);
+        long unmatched = insert("order", SemanticTier.AMBIENT, now.minus(2, ChronoUnit.DAYS), null);
+
+        assertThat(retention.expireAll()).isEqualTo(2);
+
+        assertThat(remainingIds()).containsExactly(oldAudit, recentMetric, recentOrder, unmatched);
+    }
+
+    @Test
+    void deletesInBatchesUntilNothingIsExpired() {
+        RetentionService retention = createService(2, policy("order", null, Duration.ofHours(1), false));
+        Instant old = Instant.now().minus(2, ChronoUnit.HOURS);
+        for (int i = 0; i < 5; i++) {
+            insert("order", SemanticTier.INTERNAL, old, null);
+        }
+
+        assertThat(retention.expireAll()).isEqualTo(5);
+        assertThat(remainingIds()).isEmpty();
+    }
+
+    @Test
+    void releasesIdempotencyKeysOfDeletedEvents() {
+        RetentionService retention = createService(10, policy("order", null, Duration.ofHours(1), false));
+        Instant now = Instant.now();
+        insert("order", SemanticTier.INTERNAL, now.minus(2, ChronoUnit.HOURS), "expired-key");
+        insert("order", SemanticTier.INTERNAL, now, "live-key");
+
+        retention.expireAll();
+
+        assertThat(jdbcTemplate.queryForList("select idempotency_key from event_idempotency_key", String.class))
+                .containsExactly("live-key");
+        assertThat(released).containsExactly(new IdempotencyKeysReleased(List.of("expired-key")));
+    }
+
+    @Test
+    void rollsUpDeletedEventsPerBucketAcrossRuns() {
+        RetentionService retention = createService(2, policy("metric", null, Duration.ofHours(1), true, Duration.ofHours(1)));
+        Instant bucketStart = Instant.now().minus(3, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        for (int i = 0; i < 3; i++) {
+            insert("metric", SemanticTier.INTERNAL, bucketStart.plus(i, ChronoUnit.MINUTES), null);
+        }
+        insert("metric", SemanticTier.PERIPHERAL, bucketStart, null);
+
+        retention.expireAll();
+        insert("metric", SemanticTier.INTERNAL, bucketStart.plus(30, ChronoUnit.MINUTES), null);
+        retention.expireAll();
+
+        List<Map<String, Object>> rollups = jdbcTemplate.queryForList(
+                "select semantic_tier, event_count from event_rollup_entity order by semantic_tier");
+        assertThat(rollups).hasSize(2);
+        assertThat(rollups.get(0)).containsEntry("semantic_tier", "INTERNAL").containsEntry("event_count", 4L);
+        assertThat(rollups.get(1)).containsEntry("semantic_tier", "PERIPHERAL").containsEntry("event_count", 1L);
+        assertThat(jdbcTemplate.queryForList("select bucket_start from event_rollup_entity", OffsetDateTime.class))
+                .extracting(OffsetDateTime::toInstant).containsOnly(bucketStart);
+    }
+
+    @Test
+    void concurrentRunnersAddToOneRollupRow() throws Exception {
+        Instant bucketStart = Instant.now().minus(3, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        for (int i = 0; i < 40; i++) {
+            insert("metric", SemanticTier.INTERNAL, bucketStart.plus(i, ChronoUnit.SECONDS), null);
+        }
+        List<RetentionService> runners = List.of(
+                createService(1, policy("metric", null, Duration.ofHours(1), true, Duration.ofHours(1))),
+                createService(1, policy("metric", null, Duration.ofHours(1), true, Duration.ofHours(1))));
+
+        List<CompletableFuture<Long>> runs = runners.stream()
+                .map(runner -> CompletableFuture.supplyAsync(runner::expireAll))
+                .toList();
+        long deleted = 0;
+        for (CompletableFuture<Long> run : runs) {
+            deleted += run.get(30, TimeUnit.SECONDS);
+        }
+
+        assertThat(deleted).isEqualTo(40);
+        assertThat(jdbcTemplate.queryForList("select event_count from event_rollup_entity", Long.class))
+                .containsExactly(40L);
+    }
+
+    @Test
+    void mergesDuplicateRollupsWhenCreatingTheIndex() {
+        jdbcTemplate.execute("drop index if exists event_rollup_entity_bucket_idx");
+        OffsetDateTime bucketStart = OffsetDateTime.of(2026, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        for (long id = 1; id <= 3; id++) {
+            jdbcTemplate.update("insert into event_rollup_entity (id, type, source, semantic_tier, bucket_start,"
+                    + " bucket_end, event_count) values (?, 'metric', null, 'INTERNAL', ?, ?, ?)",
+                    id, bucketStart, bucketStart.plusHours(1), id);
+        }
+
+        createService(10);
+
+        assertThat(jdbcTemplate.queryForList("select event_count from event_rollup_entity", Long.class))
+                .containsExactly(6L);
+        assertThat(jdbcTemplate.queryForObject("select to_regclass('event_rollup_entity_bucket_idx') is not null",
+                Boolean.class)).isTrue();
+    }
+
+    private RetentionService createService(int batchSize, EventBusConfiguration.RetentionPolicy... policies) {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getRetention().setBatchSize(batchSize);
+        configuration.getRetention().setPolicies(List.of(policies));
+        RetentionService retention = new RetentionService(jdbcTemplate, transactionManager, released::add, configuration);
+        retention.createIndexes();
+        return retention;
+    }
+
+    private static EventBusConfiguration.RetentionPolicy policy(String type, SemanticTier tier, Duration maxAge,
+                                                                boolean rollup) {
+        return policy(type, tier, maxAge, rollup, Duration.ofDays(1));
+    }
+
+    private static EventBusConfiguration.RetentionPolicy policy(String type, SemanticTier tier, Duration maxAge,
+                                                                boolean rollup, Duration rollupInterval) {
+        EventBusConfiguration.RetentionPolicy policy = new EventBusConfiguration.RetentionPolicy();
+        policy.setType(type);
+        policy.setTier(tier);
+        policy.setMaxAge(maxAge);
+        policy.setRollup(rollup);
+        policy.setRollupInterval(rollupInterval);
+        return policy;
+    }
+
+    private long insert(String type, SemanticTier tier, Instant occurredAt, String idempotencyKey) {
+        long id = nextId++;
+        OffsetDateTime time = OffsetDateTime.ofInstant(occurredAt, ZoneOffset.UTC);
+        jdbcTemplate.update("insert into event_entity (id, occurred_at, type, source, semantic_tier, idempotency_key) "
+                + "values (?, ?, ?, ?, ?, ?)", id, time, type, "test", tier.name(), idempotencyKey);
+        if (idempotencyKey != null) {
+            jdbcTemplate.update("insert into event_idempotency_key (idempotency_key, event_id, occurred_at) "
+                    + "values (?, ?, ?)", idempotencyKey, id, time);
+        }
+        return id;
+    }
+
+    private List<Long> remainingIds() {
+        return jdbcTemplate.queryForList("select id from event_entity order by id", Long.class);
+    }
+}
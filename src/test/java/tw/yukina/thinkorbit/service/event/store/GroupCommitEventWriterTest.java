@@ -0,0 +1,165 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.store.partition.EventPartitionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+class GroupCommitEventWriterTest extends PostgresStoreTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private GroupCommitEventWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("delete from event_entity");
+        jdbcTemplate.update("delete from event_idempotency_key");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void writesConcurrentSubmissionsInSharedBatches() {
+        writer = createWriter(Duration.ofMillis(20));
+
+        List<CompletableFuture<EventEntity>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            futures.add(writer.submit(event("batched")));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(count()).isEqualTo(500);
+        assertThat(futures).extracting(future -> future.join().getId()).doesNotHaveDuplicates();
+        assertThat(meterRegistry.get("eventbus.persistence.batch.size").summary().count()).isLessThan(500);
+    }
+
+    @Test
+    void allocatesIdsInBatchOrder() {
+        writer = createWriter(Duration.ofMillis(20));
+
+        List<CompletableFuture<EventEntity>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(writer.submit(event("ordered")));
+        }
+
+        List<Long> ids = futures.stream().map(future -> future.join().getId()).toList();
+        assertThat(ids).isSorted();
+    }
+
+    @Test
+    void flushesLoneWriteWithoutWaitingForMore() {
+        writer = createWriter(Duration.ZERO);
+        writer.write(event("warmup"));
+
+        assertTimeout(Duration.ofMillis(500), () -> writer.write(event("lone")));
+        assertThat(count()).isEqualTo(2);
+    }
+
+    @Test
+    void writeInCurrentTransactionRollsBackWithCaller() {
+        writer = createWriter(Duration.ZERO);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            writer.writeInCurrentTransaction(event("rolled-back"));
+            status.setRollbackOnly();
+        });
+        EventEntity committed = transaction.execute(status -> writer.writeInCurrentTransaction(event("committed")));
+
+        assertThat(jdbcTemplate.queryForList("select type from event_entity", String.class))
+                .containsExactly("committed");
+        assertThat(committed.getId()).isNotNull();
+    }
+
+    @Test
+    void duplicateKeyFailsOnlyItsOwnWrite() {
+        writer = createWriter(Duration.ofMillis(20));
+        writer.write(keyed("stored", "a"));
+
+        CompletableFuture<EventEntity> fresh = writer.submit(keyed("fresh", "b"));
+        CompletableFuture<EventEntity> stored = writer.submit(keyed("again", "a"));
+        CompletableFuture<EventEntity> sameBatch = writer.submit(keyed("same-batch", "b"));
+
+        assertThat(fresh.join().getId()).isNotNull();
+        assertThatThrownBy(stored::join).hasCauseInstanceOf(DuplicateEventException.class);
+        assertThatThrownBy(sameBatch::join).hasCauseInstanceOf(DuplicateEventException.class);
+        assertThat(jdbcTemplate.queryForList("select type from event_entity order by id", String.class))
+                .containsExactly("stored", "fresh");
+    }
+
+    @Test
+    void duplicateInCurrentTransactionLeavesTransactionUsable() {
+        writer = createWriter(Duration.ZERO);
+        writer.write(keyed("stored", "a"));
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            assertThatThrownBy(() -> writer.writeInCurrentTransaction(keyed("again", "a")))
+                    .isInstanceOf(DuplicateEventException.class);
+            writer.writeInCurrentTransaction(keyed("other", "b"));
+        });
+
+        assertThat(jdbcTemplate.queryForList("select type from event_entity order by id", String.class))
+                .containsExactly("stored", "other");
+    }
+
+    private GroupCommitEventWriter createWriter(Duration window) {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getGroupCommit().setWindow(window);
+        return new GroupCommitEventWriter(jdbcTemplate, transactionManager, configuration, meterRegistry,
+                new DefaultListableBeanFactory().getBeanProvider(EventPartitionManager.class));
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("select count(*) from event_entity", Long.class);
+    }
+
+    private static EventEntity keyed(String type, String idempotencyKey) {
+        EventEntity event = event(type);
+        event.setIdempotencyKey(idempotencyKey);
+        return event;
+    }
+
+    private static EventEntity event(String type) {
+        EventEntity event = new EventEntity();
+        event.setOccurredAt(Instant.now());
+        event.setType(type);
+        event.setSource("test");
+        event.setSemanticTier(SemanticTier.INTERNAL);
+        return event;
+    }
+}
@@ -0,0 +1,234 @@
+package tw.yukina.thinkorbit.service.event.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.EventCriteria;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaries;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionary;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaryRepository;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class JdbcEventReaderTest extends PostgresStoreTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00Z");
+    private static final int PAGE_SIZE = 3;
+    private static final EventScan ALL = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+    private PayloadDictionaries dictionaries;
+    private PayloadCodecs payloadCodecs;
+    private JdbcEventReader reader;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("delete from event_entity");
+
+        dictionaries = new PayloadDictionaries(mock(PayloadDictionaryRepository.class));
+        payloadCodecs = new PayloadCodecs(dictionaries);
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getReplay().setPageSize(PAGE_SIZE);
+        reader = new JdbcEventReader(jdbcTemplate, payloadCodecs, configuration);
+
+        // Inserted out of id order, as concurrent writers commit them
+        for (long id : new long[]{5, 1, 9, 3, 7, 2, 10, 4, 8, 6}) {
+            insert(id, id % 2 == 0 ? "order.placed" : "order.shipped", id <= 5 ? "shop" : "warehouse");
+        }
+    }
+
+    @Test
+    void scansEveryPageInIdOrder() {
+        List<Long> ids = new ArrayList<>();
+
+        long count = reader.scan(new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null), event -> ids.add(event.getId()));
+
+        assertThat(count).isEqualTo(10);
+        assertThat(ids).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+    }
+
+    @Test
+    void keepsToIdBounds() {
+        assertThat(scan(new EventScan(2, 7, null, null))).containsExactly(3L, 4L, 5L, 6L, 7L);
+        assertThat(scan(new EventScan(7, 7, null, null))).isEmpty();
+    }
+
+    @Test
+    void keepsToTimeBounds() {
+        EventScan scan = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, T0.plusSeconds(3), T0.plusSeconds(6));
+
+        assertThat(scan(scan)).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    void appliesCriteriaInTheQuery() {
+        EventScan scan = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null)
+                .withCriteria(EventCriteria.builder().type("order.placed").source("warehouse").build());
+
+        List<Long> ids = new ArrayList<>();
+        long read = reader.scan(scan, event -> ids.add(event.getId()));
+
+        assertThat(ids).containsExactly(6L, 8L, 10L);
+        assertThat(read).isEqualTo(3);
+    }
+
+    @Test
+    void checksPayloadConditionsOnMappedEvents() {
+        EventScan scan = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null)
+                .withCriteria(EventCriteria.builder().type("order.shipped").payloadEquals("n", 7).build());
+
+        assertThat(scan(scan)).containsExactly(7L);
+    }
+
+    @Test
+    void pushesEveryTypeAndSourceIntoTheQuery() {
+        EventScan scan = ALL.withCriteria(EventCriteria.builder()
+                .type("order.placed").type("order.shipped").source("shop").build());
+
+        assertRead(scan, 5, 1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void pushesTheTierIntoTheQuery() {
+        insert(11, "order.placed", "shop", SemanticTier.AMBIENT, null);
+        insert(12, "order.placed", "shop", SemanticTier.PERIPHERAL, null);
+
+        assertRead(ALL.withCriteria(EventCriteria.builder().tier(SemanticTier.AMBIENT).build()), 1, 11L);
+        assertRead(ALL.withCriteria(EventCriteria.builder()
+                .tier(SemanticTier.AMBIENT).tier(SemanticTier.PERIPHERAL).build()), 2, 11L, 12L);
+    }
+
+    @Test
+    void pushesTheTraceIntoTheQuery() {
+        insert(11, "order.placed", "shop", SemanticTier.INTERNAL, "trace-1");
+        insert(12, "order.shipped", "shop", SemanticTier.INTERNAL, "trace-1");
+        insert(13, "order.placed", "shop", SemanticTier.INTERNAL, "trace-2");
+
+        assertRead(ALL.withCriteria(EventCriteria.builder().traceId("trace-1").build()), 2, 11L, 12L);
+        assertRead(ALL.withCriteria(EventCriteria.builder().traceId("trace-1").type("order.placed").build()), 1, 11L);
+    }
+
+    @Test
+    void readsEveryRowForPayloadConditionsAlone() {
+        // Payloads are encoded, so the query cannot filter on them
+        EventScan scan = ALL.withCriteria(EventCriteria.builder().payloadEquals("n", 7).build());
+
+        assertRead(scan, 10, 7L);
+    }
+
+    @Test
+    void latestCountsEventsWhateverTheCriteria() {
+        EventScan placed = ALL.withCriteria(EventCriteria.builder().type("order.placed").build());
+
+        // The latest four are 7 to 10, of which only two match
+        assertThat(scan(reader.latest(placed, 4))).containsExactly(8L, 10L);
+    }
+
+    @Test
+    void narrowsToTheLatestEvents() {
+        EventScan all = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+
+        assertThat(scan(reader.latest(all, 4))).containsExactly(7L, 8L, 9L, 10L);
+        assertThat(scan(reader.latest(new EventScan(Long.MIN_VALUE, 5, null, null), 2))).containsExactly(4L, 5L);
+        assertThat(scan(reader.latest(all, 20))).hasSize(10);
+        assertThat(scan(reader.latest(all, 0))).isEmpty();
+    }
+
+    @Test
+    void mapsRowsWithEncodedPayload() {
+        EventEntity event = reader.findById(4).orElseThrow();
+
+        assertThat(event.getType()).isEqualTo("order.placed");
+        assertThat(event.getSource()).isEqualTo("shop");
+        assertThat(event.getSemanticTier()).isEqualTo(SemanticTier.INTERNAL);
+        assertThat(event.getOccurredAt()).isEqualTo(T0.plusSeconds(4));
+        assertThat(((Number) event.getPayload().get("n")).longValue()).isEqualTo(4);
+    }
+
+    @Test
+    void decodesLegacyJsonRowsNextToBinaryOnes() {
+        // Rows written before payload_data existed keep their JSON in the payload column
+        Map<String, Object> deflated = Map.of("n", 14, "note", "deflated");
+        PayloadDictionary dictionary = new PayloadDictionary(1, "order.placed",
+                PayloadCodecs.SMILE.encode(Map.of("n", 0, "note", "deflated")), T0);
+        dictionaries.register(dictionary);
+
+        insertPayload(11, null, "{\"n\": 11, \"note\": \"legacy\"}");
+        insertPayload(12, withMarker(PayloadCodecs.JSON_MARKER,
+                PayloadCodecs.JSON.encode(Map.of("n", 12, "note", "json"))), null);
+        insertPayload(13, withMarker(PayloadCodecs.SMILE_MARKER,
+                PayloadCodecs.SMILE.encode(Map.of("n", 13, "note", "smile"))), null);
+        insertPayload(14, withMarker(PayloadCodecs.DEFLATE_MARKER,
+                payloadCodecs.getDeflate().compress(PayloadCodecs.SMILE.encode(deflated), dictionary)), null);
+
+        List<EventEntity> events = new ArrayList<>();
+        reader.scan(new EventScan(10, Long.MAX_VALUE, null, null), events::add);
+
+        assertThat(events).extracting(EventEntity::getId).containsExactly(11L, 12L, 13L, 14L);
+        assertThat(events).extracting(EventEntity::isPayloadDecoded).containsOnly(false);
+        assertThat(events).extracting(event -> ((Number) event.getPayload().get("n")).longValue())
+                .containsExactly(11L, 12L, 13L, 14L);
+        assertThat(events).extracting(event -> event.getPayload().get("note"))
+                .containsExactly("legacy", "json", "smile", "deflated");
+    }
+
+    /**
+     * Checks the delivered ids and the number of rows the query returned for them.
+     */
+    private void assertRead(EventScan scan, long rows, Long... delivered) {
+        List<Long> ids = new ArrayList<>();
+        long read = reader.scan(scan, event -> ids.add(event.getId()));
+
+        assertThat(ids).containsExactly(delivered);
+        assertThat(read).as("rows read").isEqualTo(rows);
+    }
+
+    private List<Long> scan(EventScan scan) {
+        List<Long> ids = new ArrayList<>();
+        reader.scan(scan, event -> ids.add(event.getId()));
+        return ids;
+    }
+
+    private void insertPayload(long id, byte[] payloadData, String legacyPayload) {
+        jdbcTemplate.update("insert into event_entity (id, occurred_at, type, source, semantic_tier, payload_data, "
+                        + "payload) values (?, ?, 'order.placed', 'shop', ?, ?, ?)",
+                id, OffsetDateTime.ofInstant(T0.plusSeconds(id), ZoneOffset.UTC), SemanticTier.INTERNAL.name(),
+                payloadData, legacyPayload);
+    }
+
+    private static byte[] withMarker(byte marker, byte[] body) {
+        byte[] data = new byte[body.length + 1];
+        data[0] = marker;
+        System.arraycopy(body, 0, data, 1, body.length);
+        return data;
+    }
+
+    private void insert(long id, String type, String source) {
+        insert(id, type, source, SemanticTier.INTERNAL, null);
+    }
+
+    private void insert(long id, String type, String source, SemanticTier tier, String traceId) {
+        jdbcTemplate.update("insert into event_entity (id, occurred_at, type, source, semantic_tier, trace_id, "
+                        + "payload_data) values (?, ?, ?, ?, ?, ?, ?)",
+                id, OffsetDateTime.ofInstant(T0.plusSeconds(id), ZoneOffset.UTC), type, source,
+                tier.name(), traceId, payloadCodecs.encode(type, Map.of("n", id)));
+    }
+}
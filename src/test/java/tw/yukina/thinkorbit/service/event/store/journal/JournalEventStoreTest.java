@@ -0,0 +1,180 @@
+package tw.yukina.thinkorbit.service.event.store.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.EventCriteria;
+import tw.yukina.thinkorbit.service.event.codec.PayloadCodecs;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaries;
+import tw.yukina.thinkorbit.service.event.codec.PayloadDictionaryRepository;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class JournalEventStoreTest {
+
+    private static final EventScan ALL = new EventScan(Long.MIN_VALUE, Long.MAX_VALUE, null, null);
+
+    @TempDir
+    Path directory;
+
+    private final PayloadCodecs codecs = new PayloadCodecs(new PayloadDictionaries(mock(PayloadDictionaryRepository.class)));
+    private JournalEventStore store;
+
+    @AfterEach
+    void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void scansEventsInIdOrderAcrossSegments() {
+        store = open();
+        for (int i = 0; i < 100; i++) {
+            store.append(event("e" + i, null, null, null));
+        }
+
+        List<EventEntity> events = scan();
+
+        assertThat(events).extracting(EventEntity::getId).containsExactlyElementsOf(
+                Stream.iterate(1L, id -> id + 1).limit(100).toList());
+        assertThat(events.get(42).getPayload()).isEqualTo(Map.of("index", "e42"));
+        assertThat(segmentFiles()).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    void truncatesCorruptTailOnRecoveryAndContinuesAfterIt() throws IOException {
+        store = open();
+        for (int i = 0; i < 10; i++) {
+            store.append(event("e" + i, null, null, null));
+        }
+        store.close();
+
+        corruptLastRecord(segmentFiles().get(segmentFiles().size() - 1));
+
+        store = open();
+        assertThat(scan()).extracting(EventEntity::getId).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+
+        EventEntity appended = store.append(event("after-recovery", null, null, null));
+        assertThat(appended.getId()).isEqualTo(10L);
+        assertThat(scan()).last().extracting(EventEntity::getType).isEqualTo("after-recovery");
+    }
+
+    @Test
+    void rebuildsKeyLookupsOnRecovery() {
+        store = open();
+        store.append(event("root", "trace-1", null, "key-1"));
+        EventEntity child = store.append(event("child", "trace-1", "1", null));
+        store.append(event("unrelated", "trace-2", null, "key-2"));
+        store.append(event("grandchild", "trace-1", String.valueOf(child.getId()), null));
+        store.close();
+
+        store = open();
+
+        assertThat(store.findByIdempotencyKey("key-1")).get().extracting(EventEntity::getType).isEqualTo("root");
+        assertThat(store.findByIdempotencyKey("missing")).isEmpty();
+        assertThat(store.findByTraceId("trace-1")).extracting(EventEntity::getType)
+                .containsExactly("root", "child", "grandchild");
+        assertThat(store.findByCauseIds(List.of("1", String.valueOf(child.getId()))))
+                .extracting(EventEntity::getType).containsExactly("child", "grandchild");
+
+        store.append(event("late", "trace-2", null, "key-3"));
+        assertThat(store.findByTraceId("trace-2")).extracting(EventEntity::getType).containsExactly("unrelated", "late");
+        assertThat(store.findByIdempotencyKey("key-3")).isPresent();
+    }
+
+    @Test
+    void latestCountsEventsWhateverTheCriteria() {
+        store = open();
+        for (int i = 1; i <= 10; i++) {
+            store.append(event(i % 2 == 0 ? "even" : "odd", null, null, null));
+        }
+        EventScan evens = ALL.withCriteria(EventCriteria.builder().type("even").build());
+
+        List<EventEntity> events = new ArrayList<>();
+        store.scan(store.latest(evens, 4), events::add);
+
+        // The latest four are 7 to 10, of which only two match
+        assertThat(events).extracting(EventEntity::getId).containsExactly(8L, 10L);
+    }
+
+    private JournalEventStore open() {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        EventBusConfiguration.Journal journal = configuration.getStore().getJournal();
+        journal.setDirectory(directory);
+        journal.setSegmentSize(DataSize.ofKilobytes(4));
+        journal.setIndexInterval(4);
+        return new JournalEventStore(configuration, codecs);
+    }
+
+    private List<EventEntity> scan() {
+        List<EventEntity> events = new ArrayList<>();
+        store.scan(ALL, events::add);
+        return events;
+    }
+
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegmentFile)
+                    .sorted(Comparator.comparingLong(JournalSegment::parseBaseId))
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Flips a byte in the body of the last record, as a torn write would leave it.
+     */
+    private static void corruptLastRecord(Path segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long position = 0;
+            long last = -1;
+            while (position + JournalSegment.HEADER_BYTES <= file.length()) {
+                file.seek(position);
+                int length = file.readInt();
+                if (length <= 0) {
+                    break;
+                }
+                last = position;
+                position += JournalSegment.HEADER_BYTES + length;
+            }
+
+            long target = last + JournalSegment.HEADER_BYTES + JournalRecords.MIN_BODY_BYTES;
+            file.seek(target);
+            int value = file.read();
+            file.seek(target);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    private static EventEntity event(String type, String traceId, String causeId, String idempotencyKey) {
+        EventEntity event = new EventEntity();
+        event.setOccurredAt(Instant.now());
+        event.setType(type);
+        event.setSource("journal-test");
+        event.setSemanticTier(SemanticTier.INTERNAL);
+        event.setTraceId(traceId);
+        event.setCauseId(causeId);
+        event.setIdempotencyKey(idempotencyKey);
+        event.setPayload(Map.of("index", type));
+        return event;
+    }
+}
@@ -0,0 +1,170 @@
+package tw.yukina.thinkorbit.service.event.store.partition;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.idempotency.IdempotencyKeysReleased;
+import tw.yukina.thinkorbit.service.event.store.DuplicateEventException;
+import tw.yukina.thinkorbit.service.event.store.GroupCommitEventWriter;
+import tw.yukina.thinkorbit.service.event.store.PostgresStoreTest;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventPartitionManagerTest extends PostgresStoreTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Object> released = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private EventPartitionManager manager;
+    private GroupCommitEventWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        resetToPlainTable();
+        jdbcTemplate.update("delete from event_idempotency_key");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void convertsTableKeepingRowsAndIdempotencyKeys() {
+        Instant occurredAt = Instant.now().minus(Duration.ofDays(10));
+        insertRow(1, occurredAt, "a");
+
+        EventBusConfiguration configuration = configuration(null);
+        manager = start(configuration);
+
+        assertThat(relkind()).isEqualTo("p");
+        assertThat(jdbcTemplate.queryForList("select tableoid::regclass::text from event_entity where id = 1", String.class))
+                .containsExactly(EventPartitionManager.DEFAULT_PARTITION);
+        assertThat(jdbcTemplate.queryForObject("select event_id from event_idempotency_key where idempotency_key = 'a'", Long.class))
+                .isEqualTo(1L);
+
+        writer = new GroupCommitEventWriter(jdbcTemplate, transactionManager, configuration, new SimpleMeterRegistry(),
+                new DefaultListableBeanFactory().getBeanProvider(EventPartitionManager.class));
+        assertThatThrownBy(() -> writer.write(keyed("a"))).isInstanceOf(DuplicateEventException.class);
+        EventEntity fresh = writer.write(keyed("b"));
+
+        assertThat(jdbcTemplate.queryForObject("select tableoid::regclass::text from event_entity where id = ?",
+                String.class, fresh.getId())).startsWith("event_entity_p");
+        assertThat(jdbcTemplate.queryForObject("select count(*) from event_entity where idempotency_key = 'a'", Long.class))
+                .isEqualTo(1L);
+    }
+
+    @Test
+    void conversionIsSkippedOnceTableIsPartitioned() {
+        manager = start(configuration(null));
+        manager.shutdown();
+        insertRow(1, Instant.now(), "a");
+
+        manager = start(configuration(null));
+
+        assertThat(relkind()).isEqualTo("p");
+        assertThat(jdbcTemplate.queryForObject("select count(*) from event_entity", Long.class)).isEqualTo(1L);
+    }
+
+    @Test
+    void dropsExpiredPartitionsAndReleasesTheirKeys() {
+        manager = start(configuration(Duration.ofDays(7)));
+
+        Instant start = PartitionPeriod.DAILY.start(Instant.now().minus(Duration.ofDays(30)));
+        String name = "event_entity_p" + PartitionPeriod.DAILY.suffix(start);
+        jdbcTemplate.execute("create table " + name + " partition of event_entity for values from ('" + start
+                + "') to ('" + PartitionPeriod.DAILY.next(start) + "')");
+        insertRow(1, start.plus(Duration.ofHours(1)), "expired");
+        insertRow(2, Instant.now(), "kept");
+
+        manager.maintain();
+
+        assertThat(jdbcTemplate.queryForObject("select to_regclass(?)::text", String.class, name)).isNull();
+        assertThat(jdbcTemplate.queryForList("select idempotency_key from event_idempotency_key", String.class))
+                .containsExactly("kept");
+        assertThat(released).containsExactly(new IdempotencyKeysReleased(List.of("expired")));
+    }
+
+    private EventPartitionManager start(EventBusConfiguration configuration) {
+        EventPartitionManager started = new EventPartitionManager(jdbcTemplate, transactionManager, released::add,
+                configuration);
+        started.start();
+        return started;
+    }
+
+    private static EventBusConfiguration configuration(Duration dropAfter) {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getPartitioning().setEnabled(true);
+        configuration.getPartitioning().setDropAfter(dropAfter);
+        return configuration;
+    }
+
+    /**
+     * Inserts an event and the reservation of its key, as the store writes them.
+     */
+    private void insertRow(long id, Instant occurredAt, String idempotencyKey) {
+        OffsetDateTime time = OffsetDateTime.ofInstant(occurredAt, ZoneOffset.UTC);
+        jdbcTemplate.update("insert into event_entity (id, occurred_at, type, source, semantic_tier, idempotency_key)"
+                + " values (?, ?, 'test', 'test', 'INTERNAL', ?)", id, time, idempotencyKey);
+        if (relkind().equals("p")) {
+            jdbcTemplate.update("insert into event_idempotency_key (idempotency_key, event_id, occurred_at) values (?, ?, ?)",
+                    idempotencyKey, id, time);
+        }
+    }
+
+    private String relkind() {
+        return jdbcTemplate.query("select relkind from pg_class where relname = 'event_entity' and pg_table_is_visible(oid)",
+                rs -> rs.next() ? rs.getString(1) : null);
+    }
+
+    /**
+     * Undoes the conversion of an earlier test, which Hibernate does not recreate between tests.
+     */
+    private void resetToPlainTable() {
+        if ("p".equals(relkind())) {
+            jdbcTemplate.execute("alter table event_entity rename to event_entity_partitioned");
+            jdbcTemplate.execute("create table event_entity (like event_entity_partitioned including defaults)");
+            jdbcTemplate.execute("drop table event_entity_partitioned cascade");
+        } else {
+            jdbcTemplate.update("delete from event_entity");
+        }
+    }
+
+    private static EventEntity keyed(String idempotencyKey) {
+        EventEntity event = new EventEntity();
+        event.setOccurredAt(Instant.now());
+        event.setType("test");
+        event.setSource("test");
+        event.setSemanticTier(SemanticTier.INTERNAL);
+        event.setIdempotencyKey(idempotencyKey);
+        return event;
+    }
+}
@@ -0,0 +1,182 @@
+package tw.yukina.thinkorbit.service.event.trace;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.StandardEventBus;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.entity.SemanticTier;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventTraceServiceTest {
+
+    private final MemoryStore store = new MemoryStore();
+    private StandardEventBus eventBus;
+    private EventTraceService traceService;
+
+    @BeforeEach
+    void setUp() {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getAsync().setEnabled(false);
+        configuration.getIdempotency().setEnabled(false);
+        eventBus = new StandardEventBus(store, new EventBusMetrics(new SimpleMeterRegistry()), configuration);
+        traceService = new EventTraceService(eventBus, store, configuration);
+        traceService.subscribe();
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventBus.close();
+    }
+
+    @Test
+    void walksATraceReadFromTheStore() {
+        EventEntity root = store.append(event("t1", null));
+        EventEntity a = store.append(event("t1", root));
+        EventEntity b = store.append(event("t1", root));
+        EventEntity c = store.append(event("t1", a));
+
+        CausalNode tree = traceService.causalTree(root.getId()).orElseThrow();
+
+        assertThat(tree.size()).isEqualTo(4);
+        assertThat(tree.children()).extracting(CausalNode::event).containsExactly(a, b);
+        assertThat(tree.children().get(0).children()).extracting(CausalNode::event).containsExactly(c);
+        assertThat(traceService.causeChain(c.getId())).containsExactly(c, a, root);
+        assertThat(store.traceReads).hasValue(1);
+    }
+
+    @Test
+    void walksATraceGrownLiveAfterItWasRead() throws Exception {
+        EventEntity root = store.append(event("t2", null));
+        assertThat(traceService.trace("t2")).containsExactly(root);
+
+        EventEntity d = event("t2", root);
+        eventBus.publish(d);
+        EventEntity e = event("t2", d);
+        eventBus.publish(e);
+        awaitTraceSize("t2", 3);
+
+        CausalNode tree = traceService.causalTree(root.getId()).orElseThrow();
+
+        assertThat(tree.children()).extracting(CausalNode::event).containsExactly(d);
+        assertThat(tree.children().get(0).children()).extracting(CausalNode::event).containsExactly(e);
+        assertThat(traceService.causeChain(e.getId())).containsExactly(e, d, root);
+        assertThat(store.traceReads).hasValue(1);
+    }
+
+    @Test
+    void causalTreeOfAnUntracedEventIsReadFromTheStore() {
+        EventEntity root = store.append(event(null, null));
+        EventEntity child = store.append(event(null, root));
+
+        CausalNode tree = traceService.causalTree(root.getId()).orElseThrow();
+
+        assertThat(tree.children()).extracting(CausalNode::event).containsExactly(child);
+        assertThat(traceService.causeChain(child.getId())).containsExactly(child, root);
+        assertThat(traceService.causalTree(Long.MAX_VALUE)).isEmpty();
+    }
+
+    private void awaitTraceSize(String traceId, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (traceService.trace(traceId).size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(traceService.trace(traceId)).hasSize(size);
+    }
+
+    private static EventEntity event(String traceId, EventEntity cause) {
+        return EventEntity.builder()
+                .type("trace.test")
+                .source("test")
+                .semanticTier(SemanticTier.INTERNAL)
+                .occurredAt(Instant.now())
+                .traceId(traceId)
+                .causeId(cause != null ? String.valueOf(cause.getId()) : null)
+                .build();
+    }
+
+    /**
+     * In-memory store counting how often traces are read from it.
+     */
+    private static class MemoryStore implements EventStore {
+
+        private final List<EventEntity> events = new CopyOnWriteArrayList<>();
+        private final AtomicLong nextId = new AtomicLong(1);
+        private final AtomicInteger traceReads = new AtomicInteger();
+
+        @Override
+        public EventEntity append(EventEntity event) {
+            event.setId(nextId.getAndIncrement());
+            events.add(event);
+            return event;
+        }
+
+        @Override
+        public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+            return CompletableFuture.completedFuture(append(event));
+        }
+
+        @Override
+        public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+            List<EventEntity> matching = events.stream()
+                    .filter(scan::includes)
+                    .sorted(Comparator.comparing(EventEntity::getId))
+                    .toList();
+            matching.forEach(consumer);
+            return matching.size();
+        }
+
+        @Override
+        public EventScan latest(EventScan scan, int count) {
+            return scan;
+        }
+
+        @Override
+        public Optional<EventEntity> findById(long id) {
+            return events.stream().filter(event -> event.getId() == id).findFirst();
+        }
+
+        @Override
+        public List<EventEntity> findByTraceId(String traceId) {
+            traceReads.incrementAndGet();
+            return events.stream().filter(event -> traceId.equals(event.traceId())).toList();
+        }
+
+        @Override
+        public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+            return events.stream().filter(event -> causeIds.contains(event.causeId())).toList();
+        }
+
+        @Override
+        public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        }
+
+        @Override
+        public Instant findMaxOccurredAt() {
+            return null;
+        }
+    }
+}
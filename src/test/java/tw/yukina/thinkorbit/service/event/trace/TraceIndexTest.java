@@ -0,0 +1,69 @@
+package tw.yukina.thinkorbit.service.event.trace;
+
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.service.event.cache.HotTailCache;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TraceIndexTest {
+
+    @Test
+    void evictsLeastRecentlyUsedTracesOverTheSizeLimit() {
+        long eventSize = HotTailCache.estimateSize(event(1, "a"));
+        TraceIndex index = new TraceIndex(100, 100, eventSize * 3);
+        complete(index, "a", event(1, "a"));
+        complete(index, "b", event(2, "b"));
+        index.get("a");
+
+        index.add(event(3, "c"));
+        index.add(event(4, "c"));
+
+        assertThat(index.get("a")).isNotNull();
+        assertThat(index.get("b")).isNull();
+        assertThat(index.size()).isLessThanOrEqualTo(eventSize * 3);
+    }
+
+    @Test
+    void countsAnEventBothStoredAndAddedLiveOnce() {
+        EventEntity event = event(1, "a");
+        TraceIndex index = new TraceIndex(100, 100, Long.MAX_VALUE);
+
+        TraceIndex.Entry entry = index.begin("a");
+        index.add(event);
+        index.complete("a", entry, List.of(event));
+
+        assertThat(index.get("a")).containsExactly(event);
+        assertThat(index.size()).isEqualTo(HotTailCache.estimateSize(event));
+    }
+
+    @Test
+    void evictsTracesWithTooManyEvents() {
+        TraceIndex index = new TraceIndex(100, 2, Long.MAX_VALUE);
+        complete(index, "a", event(1, "a"), event(2, "a"));
+
+        index.add(event(3, "a"));
+
+        assertThat(index.get("a")).isNull();
+        assertThat(index.size()).isZero();
+    }
+
+    private static void complete(TraceIndex index, String traceId, EventEntity... stored) {
+        index.complete(traceId, index.begin(traceId), List.of(stored));
+    }
+
+    private static EventEntity event(long id, String traceId) {
+        return EventEntity.builder()
+                .id(id)
+                .type("trace.test")
+                .source("test")
+                .occurredAt(Instant.now())
+                .traceId(traceId)
+                .payload(Map.of("n", id))
+                .build();
+    }
+}
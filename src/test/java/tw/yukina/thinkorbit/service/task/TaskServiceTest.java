@@ -0,0 +1,196 @@
+package tw.yukina.thinkorbit.service.task;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tw.yukina.thinkorbit.configuration.EventBusConfiguration;
+import tw.yukina.thinkorbit.service.event.DeliveryMode;
+import tw.yukina.thinkorbit.service.event.OverflowPolicy;
+import tw.yukina.thinkorbit.service.event.ReplayLevel;
+import tw.yukina.thinkorbit.service.event.ReplayRange;
+import tw.yukina.thinkorbit.service.event.StandardEventBus;
+import tw.yukina.thinkorbit.service.event.SubscriptionOptions;
+import tw.yukina.thinkorbit.service.event.entity.EventEntity;
+import tw.yukina.thinkorbit.service.event.metrics.EventBusMetrics;
+import tw.yukina.thinkorbit.service.event.snapshot.SnapshotState;
+import tw.yukina.thinkorbit.service.event.store.EventScan;
+import tw.yukina.thinkorbit.service.event.store.EventStore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TaskServiceTest {
+
+    private final BlockingStore store = new BlockingStore();
+    private final StandardEventBus eventBus = createEventBus(store);
+    private final TaskService taskService = new TaskService(eventBus);
+
+    @AfterEach
+    void tearDown() {
+        store.releaseA.countDown();
+        store.aAssigned.countDown();
+        eventBus.close();
+    }
+
+    @Test
+    void appliesPublishedTasksFromTheListener() {
+        subscribe(taskService);
+
+        eventBus.publish(taskCreated("task-0"));
+
+        assertThat(taskService.getTasks()).extracting(Task::getId).containsExactly("task-0");
+        assertThat(taskService.captureSnapshot().lastEventId()).isEqualTo(1);
+    }
+
+    @Test
+    void snapshotTakenWithAnEventInFlightReplaysIt() throws Exception {
+        subscribe(taskService);
+        eventBus.publish(taskCreated("task-0"));
+
+        // B takes the first ticket but A is given the lower id, and is held until B is dispatched
+        CompletableFuture<Void> publishB = CompletableFuture.runAsync(() -> eventBus.publish(taskCreated("task-b")));
+        assertThat(store.bEntered.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Void> publishA = CompletableFuture.runAsync(() -> eventBus.publish(taskCreated("task-a")));
+        publishB.get(5, TimeUnit.SECONDS);
+
+        SnapshotState<List<Task>> snapshot = taskService.captureSnapshot();
+        assertThat(snapshot.state()).extracting(Task::getId).containsExactly("task-0", "task-b");
+        assertThat(snapshot.lastEventId()).isEqualTo(1);
+
+        store.releaseA.countDown();
+        publishA.get(5, TimeUnit.SECONDS);
+
+        TaskService restored = new TaskService(eventBus);
+        restored.restoreSnapshot(snapshot.state());
+        eventBus.subscribeFrom(new ReplayRange(snapshot.lastEventId() + 1, null, ReplayLevel.SEMANTIC_REPLAY),
+                restored.getReplayFilter(), restored::applyEvent);
+
+        assertThat(restored.getTasks()).extracting(Task::getId).containsExactly("task-0", "task-b", "task-a");
+
+        // Live from then on
+        eventBus.publish(taskCreated("task-c"));
+        assertThat(restored.getTasks()).extracting(Task::getId).containsExactly("task-0", "task-b", "task-a", "task-c");
+    }
+
+    private void subscribe(TaskService service) {
+        eventBus.subscribe(service.getReplayFilter(), service::applyEvent,
+                new SubscriptionOptions("tasks", DeliveryMode.SYNC, 0, OverflowPolicy.BLOCK));
+    }
+
+    private static StandardEventBus createEventBus(EventStore store) {
+        EventBusConfiguration configuration = new EventBusConfiguration();
+        configuration.getAsync().setEnabled(false);
+        configuration.getIdempotency().setEnabled(false);
+        return new StandardEventBus(store, new EventBusMetrics(new SimpleMeterRegistry()), configuration);
+    }
+
+    private static EventEntity taskCreated(String taskId) {
+        return EventEntity.builder()
+                .type(TaskEvent.CREATED_TASK.getEventName())
+                .source(TaskService.class.getSimpleName())
+                .occurredAt(Instant.now())
+                .payload(Map.of("taskId", taskId, "taskName", taskId))
+                .build();
+    }
+
+    /**
+     * In-memory store that lets task-b in only once task-a has its id, and holds task-a there.
+     */
+    private static class BlockingStore implements EventStore {
+
+        private final List<EventEntity> events = new ArrayList<>();
+        private final CountDownLatch bEntered = new CountDownLatch(1);
+        private final CountDownLatch aAssigned = new CountDownLatch(1);
+        private final CountDownLatch releaseA = new CountDownLatch(1);
+        private long nextId = 1;
+
+        @Override
+        public EventEntity append(EventEntity event) {
+            Object taskId = event.getPayload().get("taskId");
+            if ("task-b".equals(taskId)) {
+                bEntered.countDown();
+                await(aAssigned);
+            }
+
+            synchronized (events) {
+                event.setId(nextId++);
+                events.add(event);
+            }
+
+            if ("task-a".equals(taskId)) {
+                aAssigned.countDown();
+                await(releaseA);
+            }
+            return event;
+        }
+
+        private static void await(CountDownLatch latch) {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public CompletableFuture<EventEntity> appendAsync(EventEntity event) {
+            return CompletableFuture.completedFuture(append(event));
+        }
+
+        @Override
+        public long scan(EventScan scan, Consumer<EventEntity> consumer) {
+            List<EventEntity> matching;
+            synchronized (events) {
+                matching = events.stream().filter(scan::includes).toList();
+            }
+            matching.forEach(consumer);
+            return matching.size();
+        }
+
+        @Override
+        public EventScan latest(EventScan scan, int count) {
+            return scan;
+        }
+
+        @Override
+        public Optional<EventEntity> findById(long id) {
+            synchronized (events) {
+                return events.stream().filter(event -> event.getId() == id).findFirst();
+            }
+        }
+
+        @Override
+        public List<EventEntity> findByTraceId(String traceId) {
+            return List.of();
+        }
+
+        @Override
+        public List<EventEntity> findByCauseIds(Collection<String> causeIds) {
+            return List.of();
+        }
+
+        @Override
+        public Optional<EventEntity> findByIdempotencyKey(String idempotencyKey) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void forEachIdempotencyKey(Instant since, Consumer<String> consumer) {
+        }
+
+        @Override
+        public Instant findMaxOccurredAt() {
+            return null;
+        }
+    }
+}